@@ -0,0 +1,96 @@
+package tv.lid.cinema.api3.benchmarks;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tv.lid.cinema.api3.config.Config;
+import tv.lid.cinema.api3.migrations.MigrationRunner;
+import tv.lid.cinema.api3.models.CommonModel;
+import tv.lid.cinema.api3.models.CounterRegistry;
+import tv.lid.cinema.api3.models.IdIndex;
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.ScheduleModel;
+import tv.lid.cinema.api3.storages.DatabaseStorage;
+
+// класс встроенной БД H2 для тестов производительности: своя БД на каждый набор параметров теста,
+// заполненная заданным количеством фильмов и сеансов; модели инициализируются так же, как в App
+final class BenchmarkDatabase {
+    // каталог файлов БД относительно рабочего каталога
+    private static final String HOME = "build/tmp/jmh";
+
+    // количество записей в одном пакете при заполнении
+    private static final int BATCH = 1000;
+
+    // хранилище БД
+    private final DatabaseStorage storage;
+
+    // имя файла БД
+    private final String file;
+
+    // идентификаторы созданных фильмов
+    final int[] movieIds;
+
+    // конструктор -- создание и заполнение БД
+    BenchmarkDatabase(final int movies, final int schedulesPerMovie, final String queries) throws SQLException {
+        this.file = "bench-" + movies + "-" + queries + "-" + System.nanoTime();
+
+        final Config.Database cfg = new Config.Database(
+            "h2", "", BenchmarkDatabase.HOME, this.file, "localhost", 0, "sa", "sa",
+            null, new Config.H2(Config.H2.MODE_EMBEDDED, null, null, null, null), queries
+        );
+
+        this.storage = DatabaseStorage.initialize(cfg);
+        this.storage.connect();
+
+        CommonModel.initialize(this.storage.dslContext(), cfg.useTemplates());
+        new MigrationRunner(this.storage.dslContext()).migrate();
+
+        this.movieIds = BenchmarkDatabase.seed(movies, schedulesPerMovie);
+
+        CounterRegistry.start();
+        IdIndex.load();
+    }
+
+    // заполнение БД пакетами; сеансы начинаются с 2030 года, по одному в час
+    private static int[] seed(final int movies, final int schedulesPerMovie) throws SQLException {
+        final int[] ids = new int[movies];
+
+        for (int from = 0; from < movies; from += BenchmarkDatabase.BATCH) {
+            final int to = Math.min(from + BenchmarkDatabase.BATCH, movies);
+
+            final List<MovieModel> batch = new ArrayList<>(to - from);
+            for (int i = from; i < to; ++i) {
+                batch.add(new MovieModel("Movie #" + i, (short) (80 + i % 100), (short) (1950 + i % 70)));
+            }
+            System.arraycopy(MovieModel.saveAll(batch), 0, ids, from, to - from);
+
+            final List<ScheduleModel> schedules = new ArrayList<>((to - from) * schedulesPerMovie);
+            for (int i = from; i < to; ++i) {
+                for (int j = 0; j < schedulesPerMovie; ++j) {
+                    schedules.add(new ScheduleModel(
+                        ids[i],
+                        String.format("2030-01-%02d %02d:00", 1 + j / 24 % 28, j % 24),
+                        (byte) (1 + (i + j) % 10)
+                    ));
+                }
+            }
+            ScheduleModel.saveAll(schedules);
+        }
+
+        return ids;
+    }
+
+    // закрытие БД с удалением её файлов
+    void close() throws SQLException {
+        this.storage.disconnect();
+
+        final File[] files = new File(BenchmarkDatabase.HOME).listFiles((dir, name) -> name.startsWith(this.file));
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package tv.lid.cinema.api3.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tv.lid.cinema.api3.codecs.JsonCodec;
+import tv.lid.cinema.api3.controllers.CommonController;
+import tv.lid.cinema.api3.controllers.MovieController;
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.ScheduleModel;
+
+// тест производительности кодека JSON: декодирование тел запросов и кодирование ответов,
+// в том числе страниц списков заданного размера
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    // кодек с теми же заранее подготовленными типами, что и в App
+    private final JsonCodec codec = new JsonCodec(
+        new Class<?>[] {MovieModel.class, ScheduleModel.class, MovieModel[].class, ScheduleModel[].class},
+        new Class<?>[] {CommonController.Result.class, CommonController.ListWrapper.class, MovieModel.class, ScheduleModel.class}
+    );
+
+    // контроллер для построения ответов
+    private final MovieController ctr = new MovieController();
+
+    // тела запросов с одной записью
+    private byte[] movieJson, scheduleJson;
+
+    // ответ с одной записью
+    private CommonController.Result movie;
+
+    // страница списка и пакет записей заданного размера
+    @State(Scope.Benchmark)
+    public static class Page {
+        // количество записей на странице и в пакете
+        @Param({"10", "100", "1000"})
+        public int size;
+
+        // тело запроса с пакетом фильмов
+        private byte[] json;
+
+        // ответ со страницей фильмов
+        private CommonController.Result result;
+
+        // подготовка данных
+        @Setup
+        public void setup(final CodecBenchmark bench) throws IOException {
+            final List<MovieModel> movies = CodecBenchmark.movies(this.size);
+
+            this.json   = bench.codec.bytes(movies.toArray(new MovieModel[0]));
+            this.result = bench.ctr.ok(bench.ctr.new ListWrapper(movies, this.size * 10, 10));
+        }
+    }
+
+    // подготовка данных
+    @Setup
+    public void setup() throws IOException {
+        final MovieModel movie = CodecBenchmark.movies(1).get(0);
+
+        this.movie        = this.ctr.ok(movie);
+        this.movieJson    = this.codec.bytes(movie);
+        this.scheduleJson = this.codec.bytes(new ScheduleModel(1, 1, "2030-01-01 10:00", (byte) 1));
+    }
+
+    // список фильмов заданного размера
+    private static List<MovieModel> movies(final int size) {
+        final List<MovieModel> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            movies.add(new MovieModel(i + 1, "Movie #" + i, (short) (80 + i % 100), (short) (1950 + i % 70)));
+        }
+        return movies;
+    }
+
+    @Benchmark
+    public Object decodeMovie() throws IOException {
+        return this.codec.decode(new ByteArrayInputStream(this.movieJson), MovieModel.class);
+    }
+
+    @Benchmark
+    public Object decodeSchedule() throws IOException {
+        return this.codec.decode(new ByteArrayInputStream(this.scheduleJson), ScheduleModel.class);
+    }
+
+    @Benchmark
+    public Object decodeMovieBatch(final CodecBenchmark.Page page) throws IOException {
+        return this.codec.decode(new ByteArrayInputStream(page.json), MovieModel[].class);
+    }
+
+    @Benchmark
+    public byte[] encodeMovie() throws IOException {
+        return this.codec.bytes(this.movie);
+    }
+
+    @Benchmark
+    public byte[] encodePage(final CodecBenchmark.Page page) throws IOException {
+        return this.codec.bytes(page.result);
+    }
+}
@@ -0,0 +1,132 @@
+package tv.lid.cinema.api3.benchmarks;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.ScheduleModel;
+
+// тест производительности операций моделей на встроенной БД H2, заполненной заданным количеством
+// фильмов; каждый набор параметров выполняется в отдельной JVM, поэтому кэши, счётчики и индексы
+// моделей не переходят из одного набора в другой
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+    // количество сеансов каждого фильма
+    private static final int SCHEDULES_PER_MOVIE = 4;
+
+    // количество записей на странице
+    private static final int PAGE_SIZE = 10;
+
+    // начало промежутка ближайших сеансов карточки фильма -- до первого сеанса
+    private static final LocalDateTime FROM = LocalDateTime.of(2029, 12, 31, 0, 0);
+
+    // количество фильмов в БД
+    @Param({"1000", "10000", "100000"})
+    public int movies;
+
+    // способ выполнения запросов моделей
+    @Param({"template", "dynamic"})
+    public String queries;
+
+    // БД
+    private BenchmarkDatabase db;
+
+    // подготовка БД
+    @Setup
+    public void setup() throws SQLException {
+        this.db = new BenchmarkDatabase(this.movies, SCHEDULES_PER_MOVIE, this.queries);
+    }
+
+    // закрытие БД
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.db.close();
+    }
+
+    // идентификатор случайного фильма
+    private int movieId() {
+        return this.db.movieIds[ThreadLocalRandom.current().nextInt(this.db.movieIds.length)];
+    }
+
+    // номер случайной страницы списка фильмов
+    private int page() {
+        return 1 + ThreadLocalRandom.current().nextInt(Math.max(this.movies / PAGE_SIZE, 1));
+    }
+
+    @Benchmark
+    public int movieCount() throws SQLException {
+        return MovieModel.count();
+    }
+
+    @Benchmark
+    public boolean movieExists() throws SQLException {
+        return MovieModel.exists(this.movieId());
+    }
+
+    @Benchmark
+    public Object movieFind() throws SQLException {
+        return MovieModel.find(this.movieId());
+    }
+
+    @Benchmark
+    public Object movieList() throws SQLException {
+        return MovieModel.list(this.page(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object movieSeekFirst() throws SQLException {
+        return MovieModel.seek(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object movieDetails() throws SQLException {
+        return MovieModel.details(this.movieId(), FROM, PAGE_SIZE);
+    }
+
+    // создание и удаление фильма -- размер БД не меняется
+    @Benchmark
+    public boolean movieSaveAndKill() throws SQLException {
+        return MovieModel.kill(new MovieModel("Benchmark", (short) 90, (short) 2020).save());
+    }
+
+    @Benchmark
+    public int scheduleCount() throws SQLException {
+        return ScheduleModel.count(this.movieId());
+    }
+
+    @Benchmark
+    public Object scheduleList() throws SQLException {
+        return ScheduleModel.list(this.movieId(), 1, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object scheduleSeekFirst() throws SQLException {
+        return ScheduleModel.seek(this.movieId(), null, PAGE_SIZE);
+    }
+
+    // создание и удаление сеанса -- размер БД не меняется
+    @Benchmark
+    public boolean scheduleSaveAndKill() throws SQLException {
+        return ScheduleModel.kill(new ScheduleModel(this.movieId(), "2031-06-01 12:00", (byte) 1).save());
+    }
+}
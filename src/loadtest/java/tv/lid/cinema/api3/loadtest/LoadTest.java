@@ -0,0 +1,606 @@
+package tv.lid.cinema.api3.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import tv.lid.cinema.api3.App;
+import tv.lid.cinema.api3.config.Config;
+import tv.lid.cinema.api3.migrations.MigrationRunner;
+import tv.lid.cinema.api3.storages.DatabaseStorage;
+
+// класс нагрузочного теста HTTP API: запускает App на встроенной БД H2 (либо нагружает уже
+// работающий сервер), заполняет БД через пакетные запросы и подаёт смесь запросов с заданной
+// частотой по открытой модели -- момент отправки каждого запроса назначается заранее и не зависит
+// от ответов на предыдущие; задержка отсчитывается от назначенного момента, а не от фактической
+// отправки, так что ожидание свободного соединения учитывается (поправка на coordinated omission)
+public final class LoadTest {
+    // операции смеси запросов
+    enum Operation {
+        LIST_MOVIES    ("listMovies"),
+        FIND_MOVIE     ("findMovie"),
+        LIST_SCHEDULES ("listSchedules"),
+        FIND_SCHEDULE  ("findSchedule"),
+        CREATE         ("create"),
+        MODIFY         ("modify"),
+        DELETE         ("delete");
+
+        private final String key; // имя в смеси запросов и в отчёте
+
+        private Operation(final String key) {
+            this.key = key;
+        }
+
+        public static Operation of(final String key) {
+            for (final Operation op : Operation.values()) {
+                if (op.key.equals(key)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation: " + key);
+        }
+    }
+
+    // параметры теста
+    private static final class Options {
+        String  url       = null;                 // адрес работающего сервера (null -- запуск App)
+        String  config    = "conf/loadtest.json"; // конфигурация запускаемого App
+        int     port      = 8080;                 // порт запускаемого App
+        double  rate      = 200;                  // частота запросов, в секунду
+        int     duration  = 30;                   // продолжительность измерения, с
+        int     warmup    = 5;                    // продолжительность прогрева, с
+        int     threads   = 64;                   // количество одновременных соединений
+        int     movies    = 1000;                 // количество фильмов в БД
+        int     schedules = 4;                    // количество сеансов каждого фильма
+        boolean poisson   = false;                // пуассоновский поток вместо равномерного
+        long    seed      = 42;                   // начальное значение генератора смеси
+        String  report    = null;                 // файл отчёта в JSON (null -- не нужен)
+        String  mix       = "listMovies=40,findMovie=25,listSchedules=10,findSchedule=5,create=10,modify=5,delete=5";
+
+        // разбор командной строки вида --name value
+        static Options parse(final String[] args) {
+            final Options opt = new Options();
+
+            for (int i = 0; i < args.length; i += 2) {
+                final String name  = args[i],
+                             value = i + 1 < args.length ? args[i + 1] : null;
+
+                if (value == null || !name.startsWith("--")) {
+                    throw new IllegalArgumentException("Incorrect argument: " + name);
+                }
+
+                switch (name.substring(2)) {
+                    case "url":       opt.url       = value;                        break;
+                    case "config":    opt.config    = value;                        break;
+                    case "port":      opt.port      = Integer.parseInt(value);      break;
+                    case "rate":      opt.rate      = Double.parseDouble(value);    break;
+                    case "duration":  opt.duration  = Integer.parseInt(value);      break;
+                    case "warmup":    opt.warmup    = Integer.parseInt(value);      break;
+                    case "threads":   opt.threads   = Integer.parseInt(value);      break;
+                    case "movies":    opt.movies    = Integer.parseInt(value);      break;
+                    case "schedules": opt.schedules = Integer.parseInt(value);      break;
+                    case "poisson":   opt.poisson   = Boolean.parseBoolean(value);  break;
+                    case "seed":      opt.seed      = Long.parseLong(value);        break;
+                    case "report":    opt.report    = value;                        break;
+                    case "mix":       opt.mix       = value;                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument: " + name);
+                }
+            }
+
+            if (opt.rate <= 0 || opt.duration <= 0 || opt.warmup < 0 || opt.threads <= 0 || opt.movies <= 0) {
+                throw new IllegalArgumentException("Incorrect load parameters");
+            }
+
+            return opt;
+        }
+    }
+
+    // задержки одной операции, мкс; все значения хранятся, поэтому перцентили точные
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int    size   = 0;
+
+        synchronized void add(final long value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        synchronized long[] sorted() {
+            final long[] result = Arrays.copyOf(this.values, this.size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    // результаты одной операции
+    private static final class Stats {
+        final Latencies  corrected = new Latencies(), // от назначенного момента отправки
+                         service   = new Latencies(); // от фактической отправки
+        final LongAdder  errors    = new LongAdder(),
+                         skipped   = new LongAdder();
+    }
+
+    // сводка по операции для отчёта
+    public static final class Summary {
+        @JsonProperty("count")
+        public final long count; // выполнено запросов
+
+        @JsonProperty("errors")
+        public final long errors; // из них с ошибкой
+
+        @JsonProperty("skipped")
+        public final long skipped; // пропущено (удалять нечего)
+
+        @JsonProperty("throughput")
+        public final double throughput; // запросов в секунду
+
+        @JsonProperty("p50")
+        public final double p50; // медиана, мс
+
+        @JsonProperty("p99")
+        public final double p99; // 99-й перцентиль, мс
+
+        @JsonProperty("p999")
+        public final double p999; // 99,9-й перцентиль, мс
+
+        @JsonProperty("max")
+        public final double max; // максимум, мс
+
+        @JsonProperty("serviceP99")
+        public final double serviceP99; // 99-й перцентиль без поправки, мс
+
+        // конструктор
+        private Summary(final long[] corrected, final long[] service, final long errors, final long skipped, final double seconds) {
+            this.count      = corrected.length;
+            this.errors     = errors;
+            this.skipped    = skipped;
+            this.throughput = seconds > 0 ? corrected.length / seconds : 0;
+            this.p50        = Summary.percentile(corrected, 0.5);
+            this.p99        = Summary.percentile(corrected, 0.99);
+            this.p999       = Summary.percentile(corrected, 0.999);
+            this.max        = corrected.length != 0 ? corrected[corrected.length - 1] / 1e3 : 0;
+            this.serviceP99 = Summary.percentile(service, 0.99);
+        }
+
+        // перцентиль отсортированных значений, мс
+        private static double percentile(final long[] sorted, final double p) {
+            return sorted.length != 0
+                ? sorted[Math.min((int) Math.ceil(p * sorted.length) - 1, sorted.length - 1)] / 1e3
+                : 0;
+        }
+    }
+
+    // разбор JSON
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // параметры
+    private final Options opt;
+
+    // адрес API
+    private final String base;
+
+    // идентификаторы фильмов и сеансов, созданных при заполнении
+    private final List<Integer> movieIds    = new ArrayList<>(),
+                                scheduleIds = new ArrayList<>();
+
+    // фильмы, созданные во время теста, -- удаляются операцией delete
+    private final ConcurrentLinkedDeque<Integer> created = new ConcurrentLinkedDeque<>();
+
+    // результаты по операциям
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    // момент завершения последнего измеряемого запроса
+    private final AtomicLong lastEnd = new AtomicLong();
+
+    // конструктор
+    private LoadTest(final Options opt) {
+        this.opt  = opt;
+        this.base = (opt.url != null ? opt.url : "http://localhost:" + opt.port) + "/api3";
+
+        for (final Operation op : Operation.values()) {
+            this.stats.put(op, new Stats());
+        }
+    }
+
+    // запуск App на встроенной БД: файлы БД удаляются, схема создаётся миграциями
+    private void boot() throws Exception {
+        final Config cfg = Config.load(this.opt.config);
+        if (cfg == null) {
+            throw new IllegalArgumentException("Unable to read the configuration file " + this.opt.config);
+        }
+
+        if (cfg.database.type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_H2) && cfg.database.h2.isEmbedded()) {
+            final File[] files = new File(cfg.database.home).listFiles((dir, name) -> name.startsWith(cfg.database.file + "."));
+            if (files != null) {
+                for (final File f : files) {
+                    f.delete();
+                }
+            }
+        }
+
+        final DatabaseStorage dbs = DatabaseStorage.initialize(cfg.database);
+        dbs.connect();
+        try {
+            new MigrationRunner(dbs.dslContext()).migrate();
+        } finally {
+            dbs.disconnect();
+        }
+
+        // App читает конфигурацию и порт из системных свойств
+        System.setProperty(Config.CONFIG_PROPERTY, this.opt.config);
+        System.setProperty("server.port", String.valueOf(this.opt.port));
+
+        final Thread app = new Thread(() -> App.main(new String[] {"operate"}), "api3-app");
+        app.setDaemon(true);
+        app.start();
+
+        // ожидание готовности сервера
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (true) {
+            try {
+                if (this.call("GET", "/movies", null) != null) {
+                    return;
+                }
+            } catch (IOException exc) {
+                // сервер ещё не принимает соединения
+            }
+
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The application has not started in 60 seconds");
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    // заполнение БД пакетными запросами
+    private void seed() throws IOException {
+        final int batch = 1000;
+
+        for (int from = 0; from < this.opt.movies; from += batch) {
+            final ArrayNode movies = LoadTest.MAPPER.createArrayNode();
+            for (int i = from; i < Math.min(from + batch, this.opt.movies); ++i) {
+                movies.add(LoadTest.movie(0, "Movie #" + i, i));
+            }
+            LoadTest.ids(this.call("POST", "/movies/batch", movies), this.movieIds);
+        }
+
+        final ArrayNode schedules = LoadTest.MAPPER.createArrayNode();
+        for (int i = 0; i < this.movieIds.size(); ++i) {
+            for (int j = 0; j < this.opt.schedules; ++j) {
+                schedules.add(LoadTest.MAPPER.createObjectNode()
+                    .put("id", 0)
+                    .put("movieId", this.movieIds.get(i))
+                    .put("dateAndTime", String.format("2030-01-%02d %02d:00", 1 + j / 24 % 28, j % 24))
+                    .put("auditorium", 1 + (i + j) % 10));
+
+                if (schedules.size() == batch) {
+                    LoadTest.ids(this.call("POST", "/schedules/batch", schedules), this.scheduleIds);
+                    schedules.removeAll();
+                }
+            }
+        }
+        if (schedules.size() != 0) {
+            LoadTest.ids(this.call("POST", "/schedules/batch", schedules), this.scheduleIds);
+        }
+
+        if (this.movieIds.isEmpty()) {
+            throw new IllegalStateException("Unable to seed the database");
+        }
+    }
+
+    // тело запроса с фильмом
+    private static ObjectNode movie(final int id, final String title, final int n) {
+        return LoadTest.MAPPER.createObjectNode()
+            .put("id", id)
+            .put("title", title)
+            .put("duration", 80 + n % 100)
+            .put("year", 1950 + n % 70);
+    }
+
+    // идентификаторы записей, созданных пакетным запросом
+    private static void ids(final JsonNode response, final List<Integer> ids) {
+        if (response != null) {
+            for (final JsonNode item : response.path("data")) {
+                if (item.path("code").asInt() == 200) {
+                    ids.add(item.path("data").asInt());
+                }
+            }
+        }
+    }
+
+    // выбор операции по весам смеси
+    private static Operation[] table(final String mix) {
+        final List<Operation> table = new ArrayList<>();
+
+        for (final String item : mix.split(",")) {
+            final String[]  parts  = item.trim().split("=");
+            final Operation op     = Operation.of(parts[0].trim());
+            final int       weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+
+            for (int i = 0; i < weight; ++i) {
+                table.add(op);
+            }
+        }
+
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Empty request mix");
+        }
+        return table.toArray(new Operation[0]);
+    }
+
+    // подача нагрузки: моменты отправки назначаются по расписанию, запросы выполняются в пуле потоков;
+    // если все соединения заняты, запрос ждёт в очереди, и это ожидание входит в его задержку
+    private double run() throws InterruptedException {
+        final Operation[]     table  = LoadTest.table(this.opt.mix);
+        final Random          random = new Random(this.opt.seed);
+        final ExecutorService pool   = Executors.newFixedThreadPool(this.opt.threads);
+        final double          period = 1e9 / this.opt.rate;
+
+        final long start     = System.nanoTime(),
+                   warmupEnd = start + TimeUnit.SECONDS.toNanos(this.opt.warmup),
+                   end       = warmupEnd + TimeUnit.SECONDS.toNanos(this.opt.duration);
+
+        this.lastEnd.set(warmupEnd);
+
+        for (double offset = 0; ; offset += this.opt.poisson ? -Math.log(1 - random.nextDouble()) * period : period) {
+            final long intended = start + (long) offset;
+            if (intended >= end) {
+                break;
+            }
+
+            final Operation op = table[random.nextInt(table.length)];
+
+            for (long wait; (wait = intended - System.nanoTime()) > 0; ) {
+                LockSupport.parkNanos(wait);
+            }
+
+            pool.execute(() -> this.perform(op, intended, intended >= warmupEnd));
+        }
+
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.MINUTES);
+
+        return (this.lastEnd.get() - warmupEnd) / 1e9;
+    }
+
+    // выполнение операции с учётом результата
+    private void perform(final Operation op, final long intended, final boolean measured) {
+        final Stats stats = this.stats.get(op);
+        final long  sent  = System.nanoTime();
+
+        boolean ok;
+        try {
+            final Boolean result = this.execute(op);
+            if (result == null) {
+                if (measured) {
+                    stats.skipped.increment();
+                }
+                return;
+            }
+            ok = result;
+        } catch (IOException | RuntimeException exc) {
+            ok = false;
+        }
+
+        final long done = System.nanoTime();
+
+        if (measured) {
+            stats.corrected.add(TimeUnit.NANOSECONDS.toMicros(done - intended));
+            stats.service.add(TimeUnit.NANOSECONDS.toMicros(done - sent));
+            if (!ok) {
+                stats.errors.increment();
+            }
+            this.lastEnd.accumulateAndGet(done, Math::max);
+        }
+    }
+
+    // запрос операции: true -- успешен, false -- ошибка, null -- выполнять нечего
+    private Boolean execute(final Operation op) throws IOException {
+        final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+
+        final int movieId = this.movieIds.get(rnd.nextInt(this.movieIds.size()));
+
+        switch (op) {
+            case LIST_MOVIES:
+                return LoadTest.ok(this.call("GET", "/movies/" + (1 + rnd.nextInt((this.movieIds.size() + 9) / 10)), null));
+            case FIND_MOVIE:
+                return LoadTest.ok(this.call("GET", "/movie/" + movieId, null));
+            case LIST_SCHEDULES:
+                return LoadTest.ok(this.call("GET", "/schedules/" + movieId, null));
+            case FIND_SCHEDULE:
+                if (this.scheduleIds.isEmpty()) {
+                    return null;
+                }
+                return LoadTest.ok(this.call("GET", "/schedule/" + this.scheduleIds.get(rnd.nextInt(this.scheduleIds.size())), null));
+            case CREATE: {
+                final JsonNode res = this.call("POST", "/movie", LoadTest.movie(0, "Load test", rnd.nextInt(1000)));
+                if (LoadTest.ok(res)) {
+                    this.created.add(res.path("data").asInt());
+                    return true;
+                }
+                return false;
+            }
+            case MODIFY:
+                return LoadTest.ok(this.call("PUT", "/movie", LoadTest.movie(movieId, "Movie #" + movieId + "'", rnd.nextInt(1000))));
+            case DELETE: {
+                final Integer id = this.created.pollFirst();
+                if (id == null) {
+                    return null;
+                }
+                return LoadTest.ok(this.call("DELETE", "/movie/" + id, null));
+            }
+            default:
+                return null;
+        }
+    }
+
+    // успешность ответа: код результата в теле
+    private static boolean ok(final JsonNode response) {
+        return response != null && response.path("code").asInt() == 200;
+    }
+
+    // HTTP-запрос к API; возвращает разобранное тело ответа (null -- тело пустое)
+    private JsonNode call(final String method, final String path, final JsonNode body) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL(this.base + path).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(10000);
+        conn.setReadTimeout(60000);
+
+        if (body != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = conn.getOutputStream()) {
+                LoadTest.MAPPER.writeValue(out, body);
+            }
+        }
+
+        // тело читается полностью, чтобы соединение вернулось в пул keep-alive
+        final int         status = conn.getResponseCode();
+        final InputStream stream = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        if (stream == null) {
+            return null;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = stream) {
+            final byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+        }
+
+        return status == 200 && out.size() != 0 ? LoadTest.MAPPER.readTree(out.toByteArray()) : null;
+    }
+
+    // сводка по операциям и по всем запросам вместе
+    private Map<String, Summary> summary(final double seconds) {
+        final Map<String, Summary> result = new LinkedHashMap<>();
+
+        final List<long[]> allCorrected = new ArrayList<>(),
+                           allService   = new ArrayList<>();
+        long errors = 0, skipped = 0;
+
+        for (final Operation op : Operation.values()) {
+            final Stats  stats     = this.stats.get(op);
+            final long[] corrected = stats.corrected.sorted(),
+                         service   = stats.service.sorted();
+
+            if (corrected.length == 0 && stats.skipped.sum() == 0) {
+                continue;
+            }
+
+            result.put(op.key, new Summary(corrected, service, stats.errors.sum(), stats.skipped.sum(), seconds));
+
+            allCorrected.add(corrected);
+            allService.add(service);
+            errors  += stats.errors.sum();
+            skipped += stats.skipped.sum();
+        }
+
+        result.put("all", new Summary(LoadTest.merge(allCorrected), LoadTest.merge(allService), errors, skipped, seconds));
+        return result;
+    }
+
+    // объединение значений в один отсортированный массив
+    private static long[] merge(final List<long[]> parts) {
+        final long[] result = new long[parts.stream().mapToInt((p) -> p.length).sum()];
+
+        int pos = 0;
+        for (final long[] part : parts) {
+            System.arraycopy(part, 0, result, pos, part.length);
+            pos += part.length;
+        }
+
+        Arrays.sort(result);
+        return result;
+    }
+
+    // вывод сводки в виде таблицы
+    private static void print(final Map<String, Summary> summary) {
+        System.out.println(String.format(
+            "%-14s %9s %7s %8s %10s %9s %9s %9s %9s %12s",
+            "operation", "count", "errors", "skipped", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms"
+        ));
+
+        for (final Map.Entry<String, Summary> entry : summary.entrySet()) {
+            final Summary s = entry.getValue();
+
+            System.out.println(String.format(
+                "%-14s %9d %7d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %12.2f",
+                entry.getKey(), s.count, s.errors, s.skipped, s.throughput, s.p50, s.p99, s.p999, s.max, s.serviceP99
+            ));
+        }
+    }
+
+    public static void main(final String[] args) {
+        final Options opt;
+        try {
+            opt = Options.parse(args);
+        } catch (IllegalArgumentException exc) {
+            System.out.println(exc.getMessage() + "\n\n" +
+                "Usage: LoadTest [--url http://host:port] [--config conf/loadtest.json] [--port 8080]\n" +
+                "                [--rate 200] [--duration 30] [--warmup 5] [--threads 64] [--poisson false]\n" +
+                "                [--movies 1000] [--schedules 4] [--seed 42] [--report file.json]\n" +
+                "                [--mix listMovies=40,findMovie=25,listSchedules=10,findSchedule=5,create=10,modify=5,delete=5]\n");
+            System.exit(2);
+            return;
+        }
+
+        // соединения keep-alive по числу потоков нагрузки
+        System.setProperty("http.maxConnections", String.valueOf(opt.threads));
+
+        final LoadTest test = new LoadTest(opt);
+
+        try {
+            if (opt.url == null) {
+                test.boot();
+            }
+            test.seed();
+
+            System.out.println(String.format(
+                "Seeded %d movies and %d schedules, running %.0f req/s for %d s after %d s of warm-up...\n",
+                test.movieIds.size(), test.scheduleIds.size(), opt.rate, opt.duration, opt.warmup
+            ));
+
+            final Map<String, Summary> summary = test.summary(test.run());
+            LoadTest.print(summary);
+
+            if (opt.report != null) {
+                LoadTest.MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(opt.report), summary);
+            }
+        } catch (Exception exc) {
+            System.out.println("Load test failed: " + exc + "\n\n");
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+}
@@ -1,90 +1,274 @@
 package tv.lid.cinema.api3;
 
+import io.jooby.ExecutionMode;
 import io.jooby.Jooby;
 import io.jooby.MediaType;
 
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import tv.lid.cinema.api3.codecs.JsonCodec;
 import tv.lid.cinema.api3.config.Config;
+import tv.lid.cinema.api3.controllers.AsyncDispatcher;
+import tv.lid.cinema.api3.controllers.CommonController;
 import tv.lid.cinema.api3.controllers.MovieController;
+import tv.lid.cinema.api3.controllers.ReactiveMovieController;
+import tv.lid.cinema.api3.controllers.ReactiveScheduleController;
+import tv.lid.cinema.api3.controllers.ReplicaAffinity;
+import tv.lid.cinema.api3.controllers.RequestMetrics;
+import tv.lid.cinema.api3.controllers.ResponseCache;
+import tv.lid.cinema.api3.controllers.ResponseCompressor;
 import tv.lid.cinema.api3.controllers.ScheduleController;
+import tv.lid.cinema.api3.controllers.StatsController;
+import tv.lid.cinema.api3.migrations.MigrationRunner;
 import tv.lid.cinema.api3.models.CommonModel;
+import tv.lid.cinema.api3.models.CounterRegistry;
+import tv.lid.cinema.api3.models.EntityCache;
+import tv.lid.cinema.api3.models.IdIndex;
 import tv.lid.cinema.api3.models.MovieModel;
 import tv.lid.cinema.api3.models.ScheduleModel;
 import tv.lid.cinema.api3.storages.DatabaseStorage;
+import tv.lid.cinema.api3.storages.ReactiveStorage;
+import tv.lid.cinema.api3.storages.ReplicaRouter;
+import tv.lid.cinema.api3.storages.ShardRouter;
+import tv.lid.cinema.api3.utils.VirtualThreads;
 
 // главный класс приложения
 public class App extends Jooby {
     // различные варианты запуска приложения
     private static final String CMD_OPERATE   = "operate",
                                 CMD_INSTALL   = "install",
-                                CMD_UNINSTALL = "uninstall";
-
-    // инициализация класса
-    {
-        decoder(MediaType.json, (ctx, type) -> {
-            try {
-                return (new ObjectMapper())
-                    .readValue(
-                        ctx.body().bytes(),
-                        Class.forName(type.getTypeName())
-                    );
-            } catch (ClassNotFoundException | JsonProcessingException exc) {
-                return null;
-            }
-        });
+                                CMD_UNINSTALL = "uninstall",
+                                CMD_REBALANCE = "rebalance";
+
+    // хранилище базы данных
+    private static DatabaseStorage storage = null;
+
+    // конфигурация приложения
+    private static Config config = null;
 
-        encoder(MediaType.json, (ctx, result) -> {
-            ctx.setDefaultResponseType(MediaType.json);
+    // неблокирующее хранилище базы данных (null -- не используется)
+    private static ReactiveStorage reactive = null;
 
-            try {
-                return (new ObjectMapper()).writeValueAsBytes(result);
-            } catch (JsonProcessingException exc) {
-                return null;
+    // маршрутизатор чтения по репликам БД (null -- реплики не используются)
+    private static ReplicaRouter replicas = null;
+
+    // шарды, на которых хранятся сеансы (null -- сеансы хранятся в основной БД)
+    private static ShardRouter shards = null;
+
+    // executor виртуальных потоков вместо рабочих потоков сервера (null -- не используется)
+    private static ExecutorService virtual = null;
+
+    // конструктор #1 -- с заданной конфигурацией
+    public App(final Config cfg) {
+        // кодек JSON, общий для всех запросов
+        final JsonCodec codec = new JsonCodec(
+            new Class<?>[] { // типы тел запросов
+                MovieModel.class,
+                ScheduleModel.class,
+                MovieModel[].class,
+                ScheduleModel[].class
+            },
+            new Class<?>[] { // типы ответов
+                CommonController.Result.class,
+                CommonController.ListWrapper.class,
+                MovieModel.class,
+                ScheduleModel.class
             }
-        });
+        );
+
+        decoder(MediaType.json, codec);
+        encoder(MediaType.json, codec);
+
+        // асинхронный режим: обработчики выполняются в пуле потоков для работы с БД
+        final AsyncDispatcher dispatcher = cfg.execution.isAsync()
+            ? new AsyncDispatcher(
+                cfg.execution.threads != 0 ? cfg.execution.threads : cfg.database.pool.maxSize,
+                cfg.execution.queue
+            )
+            : null;
+
+        if (dispatcher != null) {
+            onStop(dispatcher);
+        }
+
+        // режим виртуальных потоков: каждый запрос выполняется в своём виртуальном потоке,
+        // а одновременные запросы к БД ограничивает пул соединений
+        if (App.virtual != null) {
+            final ExecutorService virtual = App.virtual;
+
+            setWorker(virtual);
+            onStop(virtual::shutdown);
+        }
+
+        // сжатие ответов; неблокирующие обработчики реактивного режима отдают ответы без сжатия
+        final ResponseCompressor compressor = cfg.compression.enabled
+            ? new ResponseCompressor(codec, cfg.compression)
+            : null;
+
+        // кэш закодированных ответов со страницами списков
+        final ResponseCache responses = cfg.cache.responses > 0
+            ? new ResponseCache(codec, cfg.cache.responses)
+            : null;
+
+        // статистика и метрики
+        final StatsController stsCtr = new StatsController(App.storage, dispatcher, compressor, responses, App.replicas, App.shards);
+
+        get("/metrics", stsCtr.metrics);
 
         path("/api3", () -> {
+            if (dispatcher != null) {
+                decorator(dispatcher);
+            }
+
+            // клиент запоминается в потоке, где обработчик читает из БД
+            if (App.replicas != null) {
+                decorator(new ReplicaAffinity(App.replicas));
+            }
+
+            // время обработки учитывается там же, где выполняется обработчик
+            decorator(new RequestMetrics());
+
+            // сжатие выполняется там же, где обработчик, -- в асинхронном режиме в пуле потоков для работы с БД
+            if (compressor != null) {
+                decorator(compressor);
+            }
+
             // фильмы
-            final MovieController movCtr = new MovieController();
+            final MovieController movCtr = new MovieController(responses);
 
-            get("/movies",        movCtr.list);
-            get("/movies/{page}", movCtr.list);
-            post("/movie",        movCtr.create);
-            get("/movie/{id}",    movCtr.find);
-            put("/movie",         movCtr.modify);
-            delete("/movie/{id}", movCtr.kill);
+            if (cfg.execution.isReactive()) { // неблокирующие обработчики выполняются в потоке ввода-вывода
+                final ReactiveMovieController rmvCtr = new ReactiveMovieController();
+
+                get("/movies",         rmvCtr.list);
+                get("/movies/{page}",  rmvCtr.list);
+                post("/movie",         rmvCtr.create);
+                get("/movie/{id}",     rmvCtr.find);
+                put("/movie",          rmvCtr.modify);
+                delete("/movie/{id}",  rmvCtr.kill);
+            } else {
+                get("/movies",         movCtr.list);
+                get("/movies/{page}",  movCtr.list);
+                post("/movie",         movCtr.create);
+                get("/movie/{id}",     movCtr.find);
+                put("/movie",          movCtr.modify);
+                delete("/movie/{id}",  movCtr.kill);
+            }
+            post("/movies/batch",  movCtr.batch);
 
             // сеансы
-            final ScheduleController schCtr = new ScheduleController();
-
-            get("/schedules/{movieId}",        schCtr.list);
-            get("/schedules/{movieId}/{page}", schCtr.list);
-            post("/schedule",                  schCtr.create);
-            get("/schedule/{id}",              schCtr.find);
-            put("/schedule",                   schCtr.modify);
-            delete("/schedule/{id}",           schCtr.kill);
+            final ScheduleController schCtr = new ScheduleController(responses);
+
+            if (cfg.execution.isReactive()) { // неблокирующие обработчики выполняются в потоке ввода-вывода
+                final ReactiveScheduleController rscCtr = new ReactiveScheduleController();
+
+                get("/schedules/{movieId}",        rscCtr.list);
+                get("/schedules/{movieId}/{page}", rscCtr.list);
+                post("/schedule",                  rscCtr.create);
+                get("/schedule/{id}",              rscCtr.find);
+                put("/schedule",                   rscCtr.modify);
+                delete("/schedule/{id}",           rscCtr.kill);
+            } else {
+                get("/schedules/{movieId}",        schCtr.list);
+                get("/schedules/{movieId}/{page}", schCtr.list);
+                post("/schedule",                  schCtr.create);
+                get("/schedule/{id}",              schCtr.find);
+                put("/schedule",                   schCtr.modify);
+                delete("/schedule/{id}",           schCtr.kill);
+            }
+            get("/schedules",                  schCtr.range);
+            post("/schedules/batch",           schCtr.batch);
+
+            // статистика
+            get("/stats/pool",        stsCtr.pool);
+            get("/stats/cache",       stsCtr.cache);
+            get("/stats/responses",   stsCtr.responses);
+            get("/stats/executor",    stsCtr.executor);
+            get("/stats/compression", stsCtr.compression);
+            get("/stats/replicas",    stsCtr.replicas);
+            get("/stats/shards",      stsCtr.shards);
         });
     }
 
-    // создание таблиц в базе данных
+    // конструктор #2 -- с конфигурацией, считанной при запуске, а без неё (тесты, встраивание) --
+    // с параметрами по умолчанию
+    public App() {
+        this(App.config != null ? App.config : new Config(null, null, null, null));
+    }
+
+    // создание таблиц и индексов в базе данных либо приведение существующей схемы к текущей версии
     private static void install() throws SQLException {
-        MovieModel.createTable();
-        ScheduleModel.createTable();
+        final int cnt = new MigrationRunner(App.storage.dslContext()).migrate();
+
+        System.out.println(cnt == 0 ? "The database schema is up to date.\n\n" : "Applied " + cnt + " migration(s).\n\n");
+
+        // схема БД шардов сеансов
+        if (App.shards != null) {
+            for (final ShardRouter.Node node : App.shards.nodes()) {
+                final int scnt = MigrationRunner.shard(node.dslContext(), node.slot, App.shards.stride()).migrate();
+
+                System.out.println(scnt == 0
+                    ? "The schema of shard #" + node.slot + " is up to date.\n\n"
+                    : "Applied " + scnt + " migration(s) to shard #" + node.slot + ".\n\n");
+            }
+        }
     }
 
     // удаление таблиц из базы данных
     private static void uninstall() throws SQLException {
+        if (App.shards != null) {
+            for (final ShardRouter.Node node : App.shards.nodes()) {
+                ScheduleModel.dropShardTable(node.dslContext());
+                MigrationRunner.shard(node.dslContext(), node.slot, App.shards.stride()).reset();
+            }
+        }
+
         ScheduleModel.dropTable();
         MovieModel.dropTable();
+        new MigrationRunner(App.storage.dslContext()).reset();
+    }
+
+    // перенос сеансов на шарды их фильмов после изменения карты шардов либо при включении шардов
+    private static void rebalance() throws SQLException {
+        if (App.shards == null) {
+            System.out.println("Schedules are not sharded, nothing to rebalance.\n\n");
+            return;
+        }
+
+        System.out.println("Moved " + ScheduleModel.rebalance() + " schedule(s) to their shards.\n\n");
     }
 
     // нормальная работа приложения
-    private static void operate(final String[] args) {
-        runApp(args, App::new);
+    private static void operate(final String[] args) throws SQLException {
+        // предупреждение о неприменённых миграциях схемы
+        final int pending = new MigrationRunner(App.storage.dslContext()).pending();
+        if (pending != 0) {
+            System.out.println("There are " + pending + " pending migration(s), run the \"install\" command to apply them.\n\n");
+        }
+
+        // загрузка счётчиков записей и индексов идентификаторов
+        CounterRegistry.start();
+        IdIndex.load();
+
+        // режим виртуальных потоков доступен не на всякой JVM -- иначе обычные рабочие потоки
+        if (App.config.execution.isVirtual()) {
+            VirtualThreads.tracePinning(App.config.execution.pinning);
+            App.virtual = VirtualThreads.executor("api3-virtual-");
+
+            if (App.virtual == null) {
+                System.out.println("Virtual threads are not supported by this JVM, falling back to worker threads.\n\n");
+            }
+        }
+
+        // в асинхронном режиме обработчик лишь передаёт запрос в пул потоков для работы с БД,
+        // поэтому выполняется прямо в потоке ввода-вывода; виртуальные потоки заменяют рабочие
+        runApp(
+            args,
+            App.config.execution.isAsync()
+                ? ExecutionMode.EVENT_LOOP
+                : App.virtual != null ? ExecutionMode.WORKER : ExecutionMode.DEFAULT,
+            App::new
+        );
     }
 
     public static void main(final String[] args) {
@@ -94,6 +278,7 @@ public class App extends Jooby {
             System.out.println("Unable to interpret the configuration file! Exiting...\n\n");
             return;
         }
+        App.config = cfg;
 
         // инициализация соединения с БД и подключение
         final DatabaseStorage dbs;
@@ -102,11 +287,45 @@ public class App extends Jooby {
             // подключение к серверу БД
             dbs = DatabaseStorage.initialize(cfg.database);
             dbs.connect();
+            App.storage = dbs;
 
             // инициализация моделей
-            CommonModel.initialize(dbs.dslContext());
+            CommonModel.initialize(dbs.dslContext(), cfg.database.useTemplates());
+            EntityCache.configure(cfg.cache);
+
+            // неблокирующий доступ к БД для реактивного режима
+            if (cfg.execution.isReactive()) {
+                final ReactiveStorage rs = new ReactiveStorage(cfg.database);
+                rs.connect();
+                CommonModel.initializeReactive(rs);
+                App.reactive = rs;
+            }
+
+            // реплики для чтения
+            if (cfg.database.replicas != null && !cfg.database.replicas.nodes.isEmpty()) {
+                final ReplicaRouter rr = new ReplicaRouter(cfg.database.replicas);
+                rr.connect();
+                CommonModel.initializeReplicas(rr);
+                App.replicas = rr;
+            }
+
+            // шарды сеансов; неблокирующий доступ к ним не поддерживается
+            if (cfg.database.shards != null && !cfg.database.shards.nodes.isEmpty()) {
+                if (cfg.execution.isReactive()) {
+                    System.out.println("Sharded schedules are not supported in the reactive execution mode! Exiting...\n\n");
+                    return;
+                }
+
+                final ShardRouter sr = new ShardRouter(cfg.database.shards);
+                sr.connect(dbs.dslContext().dialect());
+                CommonModel.initializeShards(sr);
+                App.shards = sr;
+            }
         } catch (SQLException exc) {
             System.out.println("Unable to initialize the database storage! Exiting...\n\n");
+            if (exc.getMessage() != null) {
+                System.out.println(exc.getMessage() + "\n\n");
+            }
             return;
         }
 
@@ -116,6 +335,15 @@ public class App extends Jooby {
             public void run() {
                 // разрыв соединения с БД
                 try {
+                    if (App.reactive != null) {
+                        App.reactive.disconnect();
+                    }
+                    if (App.replicas != null) {
+                        App.replicas.disconnect();
+                    }
+                    if (App.shards != null) {
+                        App.shards.disconnect();
+                    }
                     dbs.disconnect();
                 } catch (SQLException exc) {
                     System.out.println("Unable to finalize the database storage!\n\n");
@@ -128,10 +356,12 @@ public class App extends Jooby {
             if (args.length == 0 || args.length == 1) {
                 if (args.length == 0 || args[0].equals(App.CMD_OPERATE)) { // обычный режим
                     App.operate(args);
-                } else if (args[0].equals(App.CMD_INSTALL)) { // создание таблиц
+                } else if (args[0].equals(App.CMD_INSTALL)) { // создание таблиц и миграции схемы
                     App.install();
                 } else if (args[0].equals(App.CMD_UNINSTALL)) { // удаление таблиц
                     App.uninstall();
+                } else if (args[0].equals(App.CMD_REBALANCE)) { // перенос сеансов по шардам
+                    App.rebalance();
                 } else {
                     throw new Exception();
                 }
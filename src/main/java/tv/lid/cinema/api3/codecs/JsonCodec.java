@@ -0,0 +1,301 @@
+package tv.lid.cinema.api3.codecs;
+
+import io.jooby.Context;
+import io.jooby.MediaType;
+import io.jooby.MessageDecoder;
+import io.jooby.MessageEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.ClassIntrospector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tv.lid.cinema.api3.controllers.CommonController;
+import tv.lid.cinema.api3.utils.Histogram;
+import tv.lid.cinema.api3.utils.Metrics;
+
+// класс кодека JSON: общий ObjectMapper и кэш reader/writer по типам
+public final class JsonCodec implements MessageDecoder, MessageEncoder {
+    // журнал ошибок потоковой записи
+    private static final Logger LOG = LoggerFactory.getLogger(JsonCodec.class);
+
+    // общий для всех запросов экземпляр ObjectMapper; сброс буфера после каждого значения
+    // отключён, чтобы при потоковой записи списка не отправлять по сетевому пакету на элемент
+    private final ObjectMapper mapper = new ObjectMapper()
+        .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    // кэш reader'ов по целевому типу
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    // кэш writer'ов по типу значения
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    // представление: копия ObjectMapper, в которой примесь аннотаций применяется к типам значений,
+    // выводимым с этой примесью, и кэш writer'ов по типу значения
+    private static final class View {
+        // типы значений, к которым применяется примесь
+        private final Set<Class<?>> types = ConcurrentHashMap.newKeySet();
+
+        // кэш writer'ов по типу значения
+        private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+        // копия ObjectMapper с примесью; примеси определяются при построении сериализатора типа,
+        // поэтому тип добавляется к множеству до получения writer'а для него
+        private final ObjectMapper mapper;
+
+        // конструктор
+        private View(final ObjectMapper mapper, final Class<?> mixIn) {
+            this.mapper = mapper.copy().setMixInResolver(new ClassIntrospector.MixInResolver() {
+                @Override
+                public Class<?> findMixInClassFor(final Class<?> cls) {
+                    return View.this.types.contains(cls) ? mixIn : null;
+                }
+
+                @Override
+                public ClassIntrospector.MixInResolver copy() {
+                    return this;
+                }
+            });
+        }
+
+        // writer для заданного типа
+        private ObjectWriter writer(final Class<?> type) {
+            return this.writers.computeIfAbsent(type, (t) -> {
+                this.types.add(t);
+                return this.mapper.writerFor(t);
+            });
+        }
+    }
+
+    // кэш представлений по примеси аннотаций
+    private final ConcurrentMap<Class<?>, JsonCodec.View> views = new ConcurrentHashMap<>();
+
+    // время декодирования и кодирования, мкс
+    private final Histogram decodeTime = Metrics.codec("decode"),
+                            encodeTime = Metrics.codec("encode");
+
+    // конструктор -- заранее готовит reader'ы для входящих типов и writer'ы для исходящих
+    public JsonCodec(final Class<?>[] inTypes, final Class<?>[] outTypes) {
+        for (final Class<?> type : inTypes) {
+            this.reader(type);
+        }
+
+        for (final Class<?> type : outTypes) {
+            this.writer(type);
+        }
+    }
+
+    // reader для заданного типа
+    private ObjectReader reader(final Type type) {
+        return this.readers.computeIfAbsent(
+            type,
+            (t) -> this.mapper.readerFor(this.mapper.getTypeFactory().constructType(t))
+        );
+    }
+
+    // writer для заданного типа
+    private ObjectWriter writer(final Class<?> type) {
+        return this.writers.computeIfAbsent(type, this.mapper::writerFor);
+    }
+
+    // writer для заданного типа с заданной примесью аннотаций (null -- без примеси)
+    private ObjectWriter writer(final Class<?> type, final Class<?> mixIn) {
+        if (mixIn == null) {
+            return this.writer(type);
+        }
+
+        return this.views.computeIfAbsent(mixIn, (m) -> new JsonCodec.View(this.mapper, m)).writer(type);
+    }
+
+    // декодирование тела запроса непосредственно из входного потока
+    @Override
+    public Object decode(final Context ctx, final Type type) {
+        try (InputStream in = ctx.body().stream()) {
+            return this.decode(in, type);
+        } catch (IOException exc) {
+            return null;
+        }
+    }
+
+    // декодирование значения заданного типа из входного потока
+    public Object decode(final InputStream in, final Type type) throws IOException {
+        final long start = System.nanoTime();
+
+        try {
+            return this.reader(type).readValue(in);
+        } finally {
+            this.decodeTime.record(Metrics.micros(start));
+        }
+    }
+
+    // потоковая запись ответа со списком записей в заданный поток
+    private void stream(final OutputStream out, final CommonController.Result result) throws IOException {
+        final CommonController.ListWrapper wrapper = (CommonController.ListWrapper) result.data;
+
+        try (JsonGenerator gen = this.mapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeNumberField("code", result.code);
+            gen.writeObjectFieldStart("data");
+            gen.writeArrayFieldStart("list");
+
+            for (final Object item : wrapper.list) {
+                this.writer(item.getClass()).writeValue(gen, item);
+            }
+
+            gen.writeEndArray();
+            gen.writeNumberField("total", wrapper.total);
+            gen.writeNumberField("pages", wrapper.pages);
+
+            if (wrapper.next != null) {
+                gen.writeStringField("next", wrapper.next);
+            }
+
+            gen.writeEndObject();
+
+            if (result.info != null) {
+                gen.writeStringField("info", result.info);
+            }
+
+            gen.writeEndObject();
+        }
+    }
+
+    // потоковая запись ответа с записями, читаемыми из БД по ходу записи, в заданный поток; при ошибке
+    // чтения незакрытые скобки не дописываются, так что оборванный ответ остаётся некорректным JSON
+    // и клиент не примет его за полный список
+    void stream(
+        final OutputStream                   out,
+        final CommonController.Result        result,
+        final CommonController.StreamWrapper wrapper
+    ) throws IOException {
+        try (
+            JsonGenerator gen = this.mapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+        ) {
+            gen.writeStartObject();
+            gen.writeNumberField("code", result.code);
+            gen.writeObjectFieldStart("data");
+            gen.writeArrayFieldStart("list");
+
+            int total = 0;
+            for (final Iterator<? extends Object> it = wrapper.stream.iterator(); it.hasNext(); ++total) {
+                final Object item = it.next();
+                this.writer(wrapper.type != null ? wrapper.type : item.getClass(), wrapper.mixIn).writeValue(gen, item);
+            }
+
+            gen.writeEndArray();
+            gen.writeNumberField("total", total);
+            gen.writeEndObject();
+
+            if (result.info != null) {
+                gen.writeStringField("info", result.info);
+            }
+
+            gen.writeEndObject();
+        }
+    }
+
+    // потоковая запись ответа с записями, читаемыми из БД по ходу записи; поток закрывается в любом случае
+    private void stream(final Context ctx, final CommonController.Result result, final CommonController.StreamWrapper wrapper) {
+        try {
+            this.stream(ctx.responseStream(), result, wrapper);
+        } catch (IOException | RuntimeException exc) {
+            // ответ уже начат, сменить код ответа невозможно -- клиент получит оборванный JSON
+            JsonCodec.LOG.error("Streaming of {} aborted", ctx.getRequestPath(), exc);
+        } finally {
+            wrapper.stream.close();
+        }
+    }
+
+    // кодирование результата в массив байтов целиком -- для ответов, которые будут сжаты
+    // (потоки записей из БД так не кодируются)
+    public byte[] bytes(final Object result) throws IOException {
+        if (result instanceof CommonController.Encoded) {
+            return ((CommonController.Encoded) result).body;
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return this.toBytes(result);
+        } finally {
+            this.encodeTime.record(Metrics.micros(start));
+        }
+    }
+
+    // кодирование результата в массив байтов
+    private byte[] toBytes(final Object result) throws IOException {
+        if (result instanceof CommonController.Result &&
+            ((CommonController.Result) result).data instanceof CommonController.ListWrapper) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            this.stream(out, (CommonController.Result) result);
+            return out.toByteArray();
+        }
+
+        return this.writer(result.getClass()).writeValueAsBytes(result);
+    }
+
+    // кодирование результата
+    @Override
+    public byte[] encode(final Context ctx, final Object result) {
+        ctx.setDefaultResponseType(MediaType.json);
+
+        // ответ из кэша уже закодирован
+        if (result instanceof CommonController.Encoded) {
+            return ((CommonController.Encoded) result).body;
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return this.write(ctx, result);
+        } finally {
+            this.encodeTime.record(Metrics.micros(start));
+        }
+    }
+
+    // кодирование результата, не закодированного заранее
+    private byte[] write(final Context ctx, final Object result) {
+        // списки записей отдаются потоком прямо в буферы сервера, без промежуточного массива байтов
+        if (result instanceof CommonController.Result &&
+            ((CommonController.Result) result).data instanceof CommonController.ListWrapper) {
+            try {
+                this.stream(ctx.responseStream(), (CommonController.Result) result);
+            } catch (IOException exc) {
+                // ответ уже начат, сообщить клиенту об ошибке невозможно -- клиент получит оборванный JSON
+                JsonCodec.LOG.error("Streaming of {} aborted", ctx.getRequestPath(), exc);
+            }
+            return null;
+        }
+
+        // записи, читаемые из БД, -- тоже
+        if (result instanceof CommonController.Result &&
+            ((CommonController.Result) result).data instanceof CommonController.StreamWrapper) {
+            final CommonController.Result res = (CommonController.Result) result;
+            this.stream(ctx, res, (CommonController.StreamWrapper) res.data);
+            return null;
+        }
+
+        try {
+            return this.writer(result.getClass()).writeValueAsBytes(result);
+        } catch (JsonProcessingException exc) {
+            return null;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package tv.lid.cinema.api3.config;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -11,8 +13,408 @@ public final class Config {
     // имя файла с настройками
     private static final String CONFIG_FILE = "config.json";
 
+    // системное свойство с именем другого файла с настройками (например, для нагрузочного теста)
+    public static final String CONFIG_PROPERTY = "api3.config";
+
+    // внутренний класс конфигурации пула соединений с базой данных
+    public static class Pool {
+        // дефолтные параметры пула соединений
+        private static final int  DEFAULT_MIN_IDLE           = 2;       // дефолтное минимальное количество простаивающих соединений
+        private static final int  DEFAULT_MAX_SIZE           = 10;      // дефолтный максимальный размер пула
+        private static final int  DEFAULT_STATEMENT_CACHE    = 250;     // дефолтный размер кэша подготовленных выражений на соединение
+
+        private static final long DEFAULT_ACQUIRE_TIMEOUT    = 30000,   // дефолтный таймаут получения соединения, мс
+                                  DEFAULT_IDLE_TIMEOUT       = 600000,  // дефолтное время простоя соединения до закрытия, мс
+                                  DEFAULT_MAX_LIFETIME       = 1800000, // дефолтное максимальное время жизни соединения, мс
+                                  DEFAULT_VALIDATION_TIMEOUT = 5000,    // дефолтный таймаут проверки соединения, мс
+                                  DEFAULT_LEAK_DETECTION     = 0;       // дефолтный порог обнаружения утечек (0 -- отключено), мс
+
+        // минимальное количество простаивающих соединений
+        @JsonProperty(value = "minIdle", required = false, defaultValue = "2")
+        public final int minIdle;
+
+        // максимальный размер пула
+        @JsonProperty(value = "maxSize", required = false, defaultValue = "10")
+        public final int maxSize;
+
+        // таймаут получения соединения из пула, мс
+        @JsonProperty(value = "acquireTimeout", required = false, defaultValue = "30000")
+        public final long acquireTimeout;
+
+        // время простоя, после которого соединение вытесняется из пула, мс
+        @JsonProperty(value = "idleTimeout", required = false, defaultValue = "600000")
+        public final long idleTimeout;
+
+        // максимальное время жизни соединения, мс
+        @JsonProperty(value = "maxLifetime", required = false, defaultValue = "1800000")
+        public final long maxLifetime;
+
+        // таймаут проверки соединения при выдаче из пула, мс
+        @JsonProperty(value = "validationTimeout", required = false, defaultValue = "5000")
+        public final long validationTimeout;
+
+        // SQL-запрос для проверки соединения (пусто -- используется Connection.isValid)
+        @JsonProperty(value = "testQuery", required = false, defaultValue = "")
+        public final String testQuery;
+
+        // порог обнаружения утечек соединений (0 -- отключено), мс
+        @JsonProperty(value = "leakDetection", required = false, defaultValue = "0")
+        public final long leakDetection;
+
+        // размер кэша подготовленных выражений драйвера на каждое соединение (0 -- отключено)
+        @JsonProperty(value = "statementCache", required = false, defaultValue = "250")
+        public final int statementCache;
+
+        // конструктор #1
+        @JsonCreator
+        public Pool(
+            @JsonProperty("minIdle")           final Integer minIdle,
+            @JsonProperty("maxSize")           final Integer maxSize,
+            @JsonProperty("acquireTimeout")    final Long    acquireTimeout,
+            @JsonProperty("idleTimeout")       final Long    idleTimeout,
+            @JsonProperty("maxLifetime")       final Long    maxLifetime,
+            @JsonProperty("validationTimeout") final Long    validationTimeout,
+            @JsonProperty("testQuery")         final String  testQuery,
+            @JsonProperty("leakDetection")     final Long    leakDetection,
+            @JsonProperty("statementCache")    final Integer statementCache
+        ) {
+            this.minIdle           = minIdle           != null ? minIdle           : DEFAULT_MIN_IDLE;
+            this.maxSize           = maxSize           != null ? maxSize           : DEFAULT_MAX_SIZE;
+            this.acquireTimeout    = acquireTimeout    != null ? acquireTimeout    : DEFAULT_ACQUIRE_TIMEOUT;
+            this.idleTimeout       = idleTimeout       != null ? idleTimeout       : DEFAULT_IDLE_TIMEOUT;
+            this.maxLifetime       = maxLifetime       != null ? maxLifetime       : DEFAULT_MAX_LIFETIME;
+            this.validationTimeout = validationTimeout != null ? validationTimeout : DEFAULT_VALIDATION_TIMEOUT;
+            this.testQuery         = testQuery         != null ? testQuery         : "";
+            this.leakDetection     = leakDetection     != null ? leakDetection     : DEFAULT_LEAK_DETECTION;
+            this.statementCache    = statementCache    != null ? statementCache    : DEFAULT_STATEMENT_CACHE;
+        }
+
+        // конструктор #2 -- все параметры по умолчанию
+        public Pool() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+    }
+
+    // внутренний класс конфигурации кэша записей
+    public static class Cache {
+        // дефолтные параметры кэша записей
+        private static final int  DEFAULT_MOVIES    = 10000, // дефолтное максимальное количество фильмов в кэше
+                                  DEFAULT_SCHEDULES = 50000; // дефолтное максимальное количество сеансов в кэше
+
+        private static final long DEFAULT_TTL       = 300,     // дефолтное время жизни записи в кэше, с
+                                  DEFAULT_RESPONSES = 8388608; // дефолтный объём кэша ответов, байт
+
+        // максимальное количество фильмов в кэше (0 -- кэш отключён)
+        @JsonProperty(value = "movies", required = false, defaultValue = "10000")
+        public final int movies;
+
+        // максимальное количество сеансов в кэше (0 -- кэш отключён)
+        @JsonProperty(value = "schedules", required = false, defaultValue = "50000")
+        public final int schedules;
+
+        // время жизни записи в кэше (0 -- не ограничено), с
+        @JsonProperty(value = "ttl", required = false, defaultValue = "300")
+        public final long ttl;
+
+        // максимальный объём кэша закодированных ответов со страницами списков (0 -- кэш отключён), байт
+        @JsonProperty(value = "responses", required = false, defaultValue = "8388608")
+        public final long responses;
+
+        // конструктор #1
+        @JsonCreator
+        public Cache(
+            @JsonProperty("movies")    final Integer movies,
+            @JsonProperty("schedules") final Integer schedules,
+            @JsonProperty("ttl")       final Long    ttl,
+            @JsonProperty("responses") final Long    responses
+        ) {
+            this.movies    = movies    != null ? movies    : DEFAULT_MOVIES;
+            this.schedules = schedules != null ? schedules : DEFAULT_SCHEDULES;
+            this.ttl       = ttl       != null ? ttl       : DEFAULT_TTL;
+            this.responses = responses != null ? responses : DEFAULT_RESPONSES;
+        }
+
+        // конструктор #2 -- все параметры по умолчанию
+        public Cache() {
+            this(null, null, null, null);
+        }
+    }
+
+    // внутренний класс конфигурации режима работы базы данных H2
+    public static class H2 {
+        // возможные режимы работы
+        public static final String MODE_SERVER   = "server",   // через собственный сервер TCP
+                                   MODE_EMBEDDED = "embedded"; // внутри процесса приложения
+
+        // дефолтные параметры режима работы
+        private static final int  DEFAULT_CACHE_SIZE   = 65536; // дефолтный размер кэша страниц, КБ
+
+        private static final long DEFAULT_WRITE_DELAY  = 500,   // дефолтная задержка записи изменений на диск, мс
+                                  DEFAULT_LOCK_TIMEOUT = 1000;  // дефолтный таймаут ожидания блокировки, мс
+
+        // режим работы
+        @JsonProperty(value = "mode", required = false, defaultValue = "server")
+        public final String mode;
+
+        // размер кэша страниц во встроенном режиме, КБ
+        @JsonProperty(value = "cacheSize", required = false, defaultValue = "65536")
+        public final int cacheSize;
+
+        // задержка записи изменений на диск во встроенном режиме, мс
+        @JsonProperty(value = "writeDelay", required = false, defaultValue = "500")
+        public final long writeDelay;
+
+        // таймаут ожидания блокировки во встроенном режиме, мс
+        @JsonProperty(value = "lockTimeout", required = false, defaultValue = "1000")
+        public final long lockTimeout;
+
+        // запуск сервера TCP во встроенном режиме -- только для внешних инструментов
+        @JsonProperty(value = "tcpServer", required = false, defaultValue = "false")
+        public final boolean tcpServer;
+
+        // конструктор #1
+        @JsonCreator
+        public H2(
+            @JsonProperty("mode")        final String  mode,
+            @JsonProperty("cacheSize")   final Integer cacheSize,
+            @JsonProperty("writeDelay")  final Long    writeDelay,
+            @JsonProperty("lockTimeout") final Long    lockTimeout,
+            @JsonProperty("tcpServer")   final Boolean tcpServer
+        ) {
+            this.mode        = mode        != null ? mode        : MODE_SERVER;
+            this.cacheSize   = cacheSize   != null ? cacheSize   : DEFAULT_CACHE_SIZE;
+            this.writeDelay  = writeDelay  != null ? writeDelay  : DEFAULT_WRITE_DELAY;
+            this.lockTimeout = lockTimeout != null ? lockTimeout : DEFAULT_LOCK_TIMEOUT;
+            this.tcpServer   = tcpServer   != null ? tcpServer   : false;
+        }
+
+        // конструктор #2 -- все параметры по умолчанию
+        public H2() {
+            this(null, null, null, null, null);
+        }
+
+        // признак встроенного режима
+        public boolean isEmbedded() {
+            return this.mode.equalsIgnoreCase(MODE_EMBEDDED);
+        }
+    }
+
+    // внутренний класс конфигурации реплик базы данных только для чтения
+    public static class Replicas {
+        // возможные способы выбора реплики
+        public static final String ROUTING_ROUND_ROBIN   = "round-robin",   // по очереди
+                                   ROUTING_LEAST_LATENCY = "least-latency"; // с наименьшей задержкой из двух случайных
+
+        // дефолтные параметры
+        private static final long DEFAULT_WINDOW = 5000; // дефолтное окно чтения своих изменений, мс
+
+        // способ выбора реплики
+        @JsonProperty(value = "routing", required = false, defaultValue = "round-robin")
+        public final String routing;
+
+        // окно после изменения, в течение которого данные читаются из основной БД: и клиентом, изменившим
+        // данные, и всеми -- для изменённых записей и списков; не меньше задержки репликации, мс
+        @JsonProperty(value = "window", required = false, defaultValue = "5000")
+        public final long window;
+
+        // реплики; тип БД должен совпадать с основной, т.к. SQL шаблонов выводится один раз
+        @JsonProperty(value = "nodes", required = false)
+        public final List<Config.Database> nodes;
+
+        // конструктор
+        @JsonCreator
+        public Replicas(
+            @JsonProperty("routing") final String                routing,
+            @JsonProperty("window")  final Long                  window,
+            @JsonProperty("nodes")   final List<Config.Database> nodes
+        ) {
+            this.routing = routing != null ? routing : ROUTING_ROUND_ROBIN;
+            this.window  = window  != null ? window  : DEFAULT_WINDOW;
+            this.nodes   = nodes   != null ? nodes   : Collections.emptyList();
+        }
+
+        // признак выбора реплики по задержке
+        public boolean isLeastLatency() {
+            return this.routing.equalsIgnoreCase(ROUTING_LEAST_LATENCY);
+        }
+    }
+
+    // внутренний класс конфигурации шарда сеансов
+    public static class Shard {
+        // дефолтные параметры
+        private static final int DEFAULT_WEIGHT = 1; // дефолтный вес
+
+        // номер шарда: идентификаторы сеансов, созданных на шарде, дают остаток номер + 1 от деления на шаг
+        // идентификаторов, поэтому номер закреплён за БД шарда и не меняется при изменении карты шардов
+        @JsonProperty(value = "slot", required = true)
+        public final int slot;
+
+        // вес: доля фильмов, сеансы которых хранятся на шарде, пропорциональна весу
+        @JsonProperty(value = "weight", required = false, defaultValue = "1")
+        public final int weight;
+
+        // БД шарда; тип БД должен совпадать с основной, т.к. SQL шаблонов выводится один раз
+        @JsonProperty(value = "database", required = true)
+        public final Config.Database database;
+
+        // конструктор
+        @JsonCreator
+        public Shard(
+            @JsonProperty("slot")     final int             slot,
+            @JsonProperty("weight")   final Integer         weight,
+            @JsonProperty("database") final Config.Database database
+        ) {
+            this.slot     = slot;
+            this.weight   = weight != null ? weight : DEFAULT_WEIGHT;
+            this.database = database;
+        }
+    }
+
+    // внутренний класс конфигурации хранения сеансов на шардах по идентификатору фильма
+    public static class Shards {
+        // дефолтные параметры
+        private static final int DEFAULT_STRIDE        = 64,  // дефолтный шаг идентификаторов сеансов
+                                 DEFAULT_VIRTUAL_NODES = 128; // дефолтное количество точек шарда единичного веса на кольце
+
+        // шаг идентификаторов сеансов на каждом шарде -- наибольшее количество шардов; задаётся один раз
+        // до создания таблиц шардов и не меняется
+        @JsonProperty(value = "stride", required = false, defaultValue = "64")
+        public final int stride;
+
+        // количество точек шарда единичного веса на кольце согласованного хэширования
+        @JsonProperty(value = "virtualNodes", required = false, defaultValue = "128")
+        public final int virtualNodes;
+
+        // карта шардов
+        @JsonProperty(value = "nodes", required = false)
+        public final List<Config.Shard> nodes;
+
+        // конструктор
+        @JsonCreator
+        public Shards(
+            @JsonProperty("stride")       final Integer            stride,
+            @JsonProperty("virtualNodes") final Integer            virtualNodes,
+            @JsonProperty("nodes")        final List<Config.Shard> nodes
+        ) {
+            this.stride       = stride       != null ? stride       : DEFAULT_STRIDE;
+            this.virtualNodes = virtualNodes != null ? virtualNodes : DEFAULT_VIRTUAL_NODES;
+            this.nodes        = nodes        != null ? nodes        : Collections.emptyList();
+        }
+    }
+
+    // внутренний класс конфигурации выполнения обработчиков запросов
+    public static class Execution {
+        // возможные режимы выполнения
+        public static final String MODE_BLOCKING = "blocking", // в рабочих потоках сервера
+                                   MODE_ASYNC    = "async",    // в отдельном пуле потоков для работы с БД
+                                   MODE_VIRTUAL  = "virtual",  // каждый запрос в своём виртуальном потоке (JDK 21+)
+                                   MODE_REACTIVE = "reactive"; // неблокирующие обработчики поверх R2DBC
+
+        // дефолтные параметры выполнения
+        private static final int DEFAULT_THREADS = 0,   // дефолтное количество потоков (0 -- по размеру пула соединений)
+                                 DEFAULT_QUEUE   = 256; // дефолтная длина очереди запросов, ожидающих поток
+
+        // режим выполнения
+        @JsonProperty(value = "mode", required = false, defaultValue = "blocking")
+        public final String mode;
+
+        // количество потоков для работы с БД (0 -- по максимальному размеру пула соединений)
+        @JsonProperty(value = "threads", required = false, defaultValue = "0")
+        public final int threads;
+
+        // длина очереди запросов, ожидающих поток; при её заполнении запрос отклоняется с кодом 503
+        @JsonProperty(value = "queue", required = false, defaultValue = "256")
+        public final int queue;
+
+        // вывод стека виртуального потока, блокирующегося с закреплением за потоком-носителем
+        // ("short", "full"; пусто -- отключено), только в режиме виртуальных потоков
+        @JsonProperty(value = "pinning", required = false, defaultValue = "")
+        public final String pinning;
+
+        // конструктор #1
+        @JsonCreator
+        public Execution(
+            @JsonProperty("mode")    final String  mode,
+            @JsonProperty("threads") final Integer threads,
+            @JsonProperty("queue")   final Integer queue,
+            @JsonProperty("pinning") final String  pinning
+        ) {
+            this.mode    = mode    != null ? mode    : MODE_BLOCKING;
+            this.threads = threads != null ? threads : DEFAULT_THREADS;
+            this.queue   = queue   != null ? queue   : DEFAULT_QUEUE;
+            this.pinning = pinning != null ? pinning : "";
+        }
+
+        // конструктор #2 -- все параметры по умолчанию
+        public Execution() {
+            this(null, null, null, null);
+        }
+
+        // признак асинхронного режима
+        public boolean isAsync() {
+            return this.mode.equalsIgnoreCase(MODE_ASYNC);
+        }
+
+        // признак режима виртуальных потоков
+        public boolean isVirtual() {
+            return this.mode.equalsIgnoreCase(MODE_VIRTUAL);
+        }
+
+        // признак реактивного режима
+        public boolean isReactive() {
+            return this.mode.equalsIgnoreCase(MODE_REACTIVE);
+        }
+    }
+
+    // внутренний класс конфигурации сжатия ответов
+    public static class Compression {
+        // дефолтные параметры сжатия
+        private static final int DEFAULT_MIN_SIZE = 1024,    // дефолтный минимальный размер сжимаемого ответа, байт
+                                 DEFAULT_LEVEL    = 6,       // дефолтная степень сжатия
+                                 DEFAULT_CACHE    = 4194304; // дефолтный объём кэша сжатых страниц, байт
+
+        // признак сжатия ответов
+        @JsonProperty(value = "enabled", required = false, defaultValue = "true")
+        public final boolean enabled;
+
+        // минимальный размер ответа, начиная с которого он сжимается, байт
+        @JsonProperty(value = "minSize", required = false, defaultValue = "1024")
+        public final int minSize;
+
+        // степень сжатия от 1 (быстрее) до 9 (компактнее)
+        @JsonProperty(value = "level", required = false, defaultValue = "6")
+        public final int level;
+
+        // объём кэша уже сжатых страниц списков (0 -- кэш отключён), байт
+        @JsonProperty(value = "cache", required = false, defaultValue = "4194304")
+        public final long cache;
+
+        // конструктор #1
+        @JsonCreator
+        public Compression(
+            @JsonProperty("enabled") final Boolean enabled,
+            @JsonProperty("minSize") final Integer minSize,
+            @JsonProperty("level")   final Integer level,
+            @JsonProperty("cache")   final Long    cache
+        ) {
+            this.enabled = enabled != null ? enabled : true;
+            this.minSize = minSize != null ? minSize : DEFAULT_MIN_SIZE;
+            this.level   = level   != null ? Math.max(1, Math.min(level, 9)) : DEFAULT_LEVEL;
+            this.cache   = cache   != null ? cache   : DEFAULT_CACHE;
+        }
+
+        // конструктор #2 -- все параметры по умолчанию
+        public Compression() {
+            this(null, null, null, null);
+        }
+    }
+
     // внутренний класс конфигурации базы данных
     public static class Database {
+        // возможные способы выполнения запросов моделей
+        public static final String QUERIES_TEMPLATE = "template", // по SQL, выведенному один раз
+                                   QUERIES_DYNAMIC  = "dynamic";  // построением запроса jOOQ на каждый вызов
+
         // тип базы данных
         @JsonProperty(value = "type", required = true)
         public final String type;
@@ -44,8 +446,28 @@ public final class Config {
         // пароль пользователя для подключения к серверу базы данных
         @JsonProperty(value = "pass", required = true)
         public final String pass;
+
+        // параметры пула соединений
+        @JsonProperty(value = "pool", required = false)
+        public final Config.Pool pool;
+
+        // параметры режима работы H2
+        @JsonProperty(value = "h2", required = false)
+        public final Config.H2 h2;
+
+        // способ выполнения запросов моделей
+        @JsonProperty(value = "queries", required = false, defaultValue = "template")
+        public final String queries;
+
+        // реплики только для чтения (null -- не используются)
+        @JsonProperty(value = "replicas", required = false)
+        public final Config.Replicas replicas;
+
+        // шарды, на которых хранятся сеансы (null -- сеансы хранятся в основной БД)
+        @JsonProperty(value = "shards", required = false)
+        public final Config.Shards shards;
     
-        // конструктор
+        // конструктор #1
         @JsonCreator
         public Database(
             @JsonProperty("type") final String type,
@@ -55,7 +477,12 @@ public final class Config {
             @JsonProperty("host") final String host,
             @JsonProperty("port") final int    port,
             @JsonProperty("user") final String user,
-            @JsonProperty("pass") final String pass
+            @JsonProperty("pass") final String pass,
+            @JsonProperty("pool") final Config.Pool pool,
+            @JsonProperty("h2")   final Config.H2   h2,
+            @JsonProperty("queries") final String queries,
+            @JsonProperty("replicas") final Config.Replicas replicas,
+            @JsonProperty("shards")   final Config.Shards   shards
         ) {
             this.type = type;
             this.name = name;
@@ -65,6 +492,33 @@ public final class Config {
             this.port = port;
             this.user = user;
             this.pass = pass;
+            this.pool = pool != null ? pool : new Config.Pool();
+            this.h2   = h2   != null ? h2   : new Config.H2();
+            this.queries = queries != null ? queries : QUERIES_TEMPLATE;
+            this.replicas = replicas;
+            this.shards   = shards;
+        }
+
+        // конструктор #2 -- без реплик и шардов
+        public Database(
+            final String      type,
+            final String      name,
+            final String      home,
+            final String      file,
+            final String      host,
+            final int         port,
+            final String      user,
+            final String      pass,
+            final Config.Pool pool,
+            final Config.H2   h2,
+            final String      queries
+        ) {
+            this(type, name, home, file, host, port, user, pass, pool, h2, queries, null, null);
+        }
+
+        // признак выполнения запросов моделей по шаблонам
+        public boolean useTemplates() {
+            return !this.queries.equalsIgnoreCase(QUERIES_DYNAMIC);
         }
     }
 
@@ -72,12 +526,30 @@ public final class Config {
     @JsonProperty(value = "database", required = true)
     public final Config.Database database;
 
+    // конфигурация кэша записей
+    @JsonProperty(value = "cache", required = false)
+    public final Config.Cache cache;
+
+    // конфигурация выполнения обработчиков запросов
+    @JsonProperty(value = "execution", required = false)
+    public final Config.Execution execution;
+
+    // конфигурация сжатия ответов
+    @JsonProperty(value = "compression", required = false)
+    public final Config.Compression compression;
+
     // конструктор
     @JsonCreator
     public Config(
-        @JsonProperty("database") final Config.Database database
+        @JsonProperty("database")    final Config.Database    database,
+        @JsonProperty("cache")       final Config.Cache       cache,
+        @JsonProperty("execution")   final Config.Execution   execution,
+        @JsonProperty("compression") final Config.Compression compression
     ) {
-        this.database = database;
+        this.database    = database;
+        this.cache       = cache       != null ? cache       : new Config.Cache();
+        this.execution   = execution   != null ? execution   : new Config.Execution();
+        this.compression = compression != null ? compression : new Config.Compression();
     }
 
     // статический метод считывает конфигурацию из заданного файла
@@ -89,8 +561,8 @@ public final class Config {
         }
     }
 
-    // статический метод считывает конфигурацию из дефолтного файла
+    // статический метод считывает конфигурацию из дефолтного файла либо из файла, заданного системным свойством
     public static Config load() {
-        return Config.load(CONFIG_FILE);
+        return Config.load(System.getProperty(CONFIG_PROPERTY, CONFIG_FILE));
     }
 }
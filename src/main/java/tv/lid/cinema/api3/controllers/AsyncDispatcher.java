@@ -0,0 +1,137 @@
+package tv.lid.cinema.api3.controllers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.jooby.Context;
+import io.jooby.Route;
+import io.jooby.StatusCode;
+
+import tv.lid.cinema.api3.utils.Histogram;
+
+// класс асинхронного выполнения обработчиков запросов: обработчик, блокирующийся на запросах
+// к БД, выполняется в ограниченном пуле потоков по размеру пула соединений, а поток сервера
+// освобождается сразу; при заполненной очереди запрос отклоняется, а не накапливается
+public final class AsyncDispatcher extends CommonController implements Route.Decorator, AutoCloseable {
+    // пул потоков для работы с БД
+    private final ThreadPoolExecutor executor;
+
+    // время ожидания потока в очереди, мкс
+    private final Histogram wait = new Histogram();
+
+    // количество отклонённых запросов
+    private final LongAdder rejected = new LongAdder();
+
+    // срез состояния пула потоков
+    public static final class Snapshot {
+        @JsonProperty("threads")
+        public final int threads; // всего потоков
+
+        @JsonProperty("active")
+        public final int active; // занятых потоков
+
+        @JsonProperty("queued")
+        public final int queued; // запросов в очереди
+
+        @JsonProperty("completed")
+        public final long completed; // выполненных запросов
+
+        @JsonProperty("rejected")
+        public final long rejected; // отклонённых запросов
+
+        @JsonProperty("waitMicros")
+        public final Histogram.Snapshot wait; // время ожидания в очереди, мкс
+
+        // конструктор
+        private Snapshot(final AsyncDispatcher dispatcher) {
+            this.threads   = dispatcher.executor.getPoolSize();
+            this.active    = dispatcher.executor.getActiveCount();
+            this.queued    = dispatcher.executor.getQueue().size();
+            this.completed = dispatcher.executor.getCompletedTaskCount();
+            this.rejected  = dispatcher.rejected.sum();
+            this.wait      = dispatcher.wait.snapshot();
+        }
+    }
+
+    // конструктор
+    public AsyncDispatcher(final int threads, final int queue) {
+        final AtomicInteger number = new AtomicInteger();
+        final ThreadFactory factory = (Runnable task) -> {
+            final Thread thread = new Thread(task, "db-executor-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queue)),
+            factory,
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.prestartAllCoreThreads();
+    }
+
+    // обёртка обработчика: обработчик выполняется в пуле потоков, ответ отправляется по завершении
+    @Override
+    public Route.Handler apply(final Route.Handler next) {
+        return (Context ctx) -> {
+            final long queued = System.nanoTime();
+
+            final CompletableFuture<Object> future;
+            try {
+                future = CompletableFuture.supplyAsync(() -> {
+                    this.wait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queued));
+
+                    try {
+                        return next.apply(ctx);
+                    } catch (Exception exc) {
+                        return error(Code.INTERNAL_SERVER_ERROR, "Не удалось обработать запрос!");
+                    }
+                }, this.executor);
+            } catch (RejectedExecutionException exc) {
+                this.rejected.increment();
+
+                ctx.setResponseCode(StatusCode.SERVICE_UNAVAILABLE);
+                return error(Code.SERVICE_UNAVAILABLE, "Сервер перегружен, повторите запрос позже!");
+            }
+
+            // обработчик мог отправить ответ сам (например, 304 на условный запрос)
+            future.whenComplete((final Object result, final Throwable exc) -> {
+                if (!ctx.isResponseStarted()) {
+                    ctx.render(exc == null ? result : error(Code.INTERNAL_SERVER_ERROR, "Не удалось обработать запрос!"));
+                }
+            });
+
+            // ответ будет отправлен по завершении обработчика
+            return ctx;
+        };
+    }
+
+    // статистика пула потоков
+    public AsyncDispatcher.Snapshot stats() {
+        return new AsyncDispatcher.Snapshot(this);
+    }
+
+    // остановка пула потоков с ожиданием выполняющихся запросов
+    @Override
+    public void close() {
+        this.executor.shutdown();
+
+        try {
+            this.executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package tv.lid.cinema.api3.controllers;
 
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
+import io.jooby.Context;
+import io.jooby.StatusCode;
+
+import tv.lid.cinema.api3.models.VersionRegistry;
+
 // базовый абстрактный класс контроллера
 public abstract class CommonController {
     // множество кодов ответов сервера
     protected static enum Code {
         OK                    (200), // всё в порядке
         BAD_REQUEST           (400), // ошибка на стороне клиента
-        INTERNAL_SERVER_ERROR (500); // ошибка на стороне сервера
+        INTERNAL_SERVER_ERROR (500), // ошибка на стороне сервера
+        SERVICE_UNAVAILABLE   (503); // сервер перегружен
 
         private int code;
 
@@ -31,6 +41,8 @@ public abstract class CommonController {
                     return Code.BAD_REQUEST;
                 case 500:
                     return Code.INTERNAL_SERVER_ERROR;
+                case 503:
+                    return Code.SERVICE_UNAVAILABLE;
                 default:
                     return null;
             }
@@ -39,20 +51,35 @@ public abstract class CommonController {
 
     // результат выполнения запроса
     @JsonInclude(Include.NON_NULL)
-    protected static class Result {
+    public static class Result {
         public final int    code; // код ответа
         public final Object data; // данные
         public final String info; // дополнительная информация
 
+        // версия данных ответа (null -- не отслеживается); в ответ не выводится
+        @JsonIgnore
+        final VersionRegistry.Version version;
+
+        // конструктор с версией данных
+        Result(
+            final Code                    code,
+            final Object                  data,
+            final String                  info,
+            final VersionRegistry.Version version
+        ) {
+            this.code    = code.getValue();
+            this.data    = data;
+            this.info    = info;
+            this.version = version;
+        }
+
         // конструктор #1
         public Result(
             final Code   code,
             final Object data,
             final String info
         ) {
-            this.code = code.getValue();
-            this.data = data;
-            this.info = info;
+            this(code, data, info, null);
         }
 
         // конструктор #2
@@ -89,9 +116,72 @@ public abstract class CommonController {
         return this.ok(null);
     }
 
+    // успешный ответ с версией данных в заголовках ETag и Last-Modified; версия должна быть прочитана
+    // до запроса к БД -- тогда данные ответа не старше неё
+    public final Result ok(final Context ctx, final VersionRegistry.Version version, final Object data) {
+        CommonController.validators(ctx, version);
+        return new Result(Code.OK, data, null, version);
+    }
+
+    // проверка условного запроса по версии данных: If-None-Match, а при его отсутствии -- If-Modified-Since;
+    // если данные у клиента актуальны, отправляет ответ 304 и возвращает true -- обработчику остаётся
+    // вернуть ctx, не обращаясь к БД
+    public final boolean notModified(final Context ctx, final VersionRegistry.Version version) {
+        final String match = ctx.header("If-None-Match").valueOrNull(),
+                     since = ctx.header("If-Modified-Since").valueOrNull();
+
+        final boolean fresh = match != null
+            ? CommonController.matches(match, version.etag())
+            : since != null && CommonController.unmodifiedSince(since, version.modified);
+
+        if (!fresh) {
+            return false;
+        }
+
+        CommonController.validators(ctx, version);
+        ctx.send(StatusCode.NOT_MODIFIED);
+        return true;
+    }
+
+    // заголовки версии данных; no-cache -- клиент может хранить ответ, но проверяет его актуальность
+    // при каждом запросе
+    static void validators(final Context ctx, final VersionRegistry.Version version) {
+        ctx.setResponseHeader("ETag",          version.etag());
+        ctx.setResponseHeader("Last-Modified", version.lastModified());
+        ctx.setResponseHeader("Cache-Control", "no-cache");
+    }
+
+    // совпадение одного из перечисленных в If-None-Match тегов с заданным (слабое сравнение)
+    private static boolean matches(final String header, final String etag) {
+        final String tag = etag.startsWith("W/") ? etag.substring(2) : etag;
+
+        for (String item : header.split(",")) {
+            item = item.trim();
+            if (item.startsWith("W/")) {
+                item = item.substring(2);
+            }
+
+            if (item.equals(tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // данные не менялись после заданного в If-Modified-Since момента (с точностью до секунды)
+    private static boolean unmodifiedSince(final String header, final long modified) {
+        try {
+            final long since = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(header)).getEpochSecond();
+            return modified / 1000 <= since;
+        } catch (Exception exc) {
+            return false;
+        }
+    }
+
     // ответ с ошибкой, c дополнительной информацией
     public final Result error(final Code code, final String info) {
-        return (code == Code.BAD_REQUEST || code == Code.INTERNAL_SERVER_ERROR) ? new Result(code, info) : null;
+        return code != Code.OK ? new Result(code, info) : null;
     }
 
     // ответ с ошибкой, без дополнительной информации
@@ -105,15 +195,67 @@ public abstract class CommonController {
         public final int total; // всего записей
         public final int pages; // количество страниц
 
-        // конструктор
+        @JsonInclude(Include.NON_NULL)
+        public final String next; // курсор следующей страницы
+
+        // конструктор #1
         public ListWrapper(
             final List<? extends Object> list,
             final int total,
-            final int pages
+            final int pages,
+            final String next
         ) {
             this.list  = list;
             this.total = total;
             this.pages = pages;
+            this.next  = next;
+        }
+
+        // конструктор #2
+        public ListWrapper(
+            final List<? extends Object> list,
+            final int total,
+            final int pages
+        ) {
+            this(list, total, pages, null);
+        }
+    }
+
+    // ответ, уже закодированный в JSON целиком (из кэша ответов)
+    public static final class Encoded {
+        public final byte[] body; // тело ответа
+
+        // версия данных ответа
+        final VersionRegistry.Version version;
+
+        // конструктор
+        Encoded(final byte[] body, final VersionRegistry.Version version) {
+            this.body    = body;
+            this.version = version;
+        }
+    }
+
+    // обертка для потока записей, читаемых из БД по мере записи ответа; общее количество
+    // записей заранее неизвестно и выводится после списка
+    public final class StreamWrapper {
+        public final Stream<? extends Object> stream; // сам поток
+        public final Class<?> type;  // тип записей (null -- без примеси аннотаций)
+        public final Class<?> mixIn; // примесь аннотаций для вывода записей (null -- без примеси)
+
+        // конструктор #1
+        public StreamWrapper(
+            final Stream<? extends Object> stream,
+            final Class<?> type,
+            final Class<?> mixIn
+        ) {
+            this.stream = stream;
+            this.type   = type;
+            this.mixIn  = mixIn;
+        }
+
+        // конструктор #2
+        public StreamWrapper(final Stream<? extends Object> stream) {
+            this(stream, null, null);
         }
     }
 }
@@ -1,15 +1,28 @@
 package tv.lid.cinema.api3.controllers;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import io.jooby.Context;
 import io.jooby.Route;
 
+import tv.lid.cinema.api3.models.CounterRegistry;
+import tv.lid.cinema.api3.models.MovieDetails;
 import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.PageCursor;
+import tv.lid.cinema.api3.models.VersionRegistry;
 
 // класс контроллера управления фильмами
 public final class MovieController extends CommonController {
-    private static final int MOVIES_PER_PAGE = 10; // количество записей на страницу
+    static final int MOVIES_PER_PAGE      = 10,   // количество записей на страницу
+                     MAX_MOVIES_PER_PAGE  = 100,  // максимальное количество записей на страницу при выводе по курсору
+                     MAX_MOVIES_PER_BATCH = 1000; // максимальное количество записей в пакетном запросе
+
+    static final int SCHEDULES_PER_DETAILS     = 10,  // количество сеансов в карточке фильма
+                     MAX_SCHEDULES_PER_DETAILS = 100; // максимальное количество сеансов в карточке фильма
+
+    static final String INCLUDE_SCHEDULES = "schedules"; // значение параметра include для карточки фильма
 
     // список фильмов
     public final Route.Handler list;
@@ -17,6 +30,9 @@ public final class MovieController extends CommonController {
     // новый фильм
     public final Route.Handler create;
 
+    // пакет новых фильмов
+    public final Route.Handler batch;
+
     // найти фильм
     public final Route.Handler find;
 
@@ -26,10 +42,21 @@ public final class MovieController extends CommonController {
     // удалить фильм
     public final Route.Handler kill;
 
-    // конструктор
-    public MovieController() {
+    // конструктор #1 -- с кэшем ответов для списка фильмов (null -- без кэша)
+    public MovieController(final ResponseCache cache) {
         // запрос списка фильмов
-        this.list = (Context ctx) -> {
+        final Route.Handler listing = (Context ctx) -> {
+            // данные у клиента актуальны -- ответ без обращения к БД
+            final VersionRegistry.Version version = VersionRegistry.movies();
+            if (this.notModified(ctx, version)) {
+                return ctx;
+            }
+
+            // при заданном курсоре или размере страницы -- вывод по курсору
+            if (!ctx.query("cursor").isMissing() || !ctx.query("size").isMissing()) {
+                return this.seek(ctx, version);
+            }
+
             // считываем номер страницы во входных параметрах
             int page = 1;
 
@@ -40,11 +67,11 @@ public final class MovieController extends CommonController {
             // запрашиваем количество записей и вычисляем число страниц
             int total, pages;
             try {
-                total = MovieModel.count();
+                total = CounterRegistry.movies();
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице фильмов!");
             }
-            pages = (int) Math.ceil(total / MovieController.MOVIES_PER_PAGE);
+            pages = (int) Math.ceil((double) total / MovieController.MOVIES_PER_PAGE);
 
             // запрашиваем список записей в соответствии с номером страницы
             List<MovieModel> list;
@@ -55,13 +82,16 @@ public final class MovieController extends CommonController {
             }
 
             // возвращаем результат в обёртке списка
-            return ok(new ListWrapper(
+            return ok(ctx, version, new ListWrapper(
                 list,
                 total,
                 pages
             ));
         };
 
+        // страницы списка отдаются из кэша ответов, пока данные не изменились
+        this.list = cache != null ? cache.wrap(listing, (Context ctx) -> VersionRegistry.movies()) : listing;
+
         // создать новый фильм
         this.create = (Context ctx) -> {
             // преобразовываем входные данные в модель
@@ -73,14 +103,61 @@ public final class MovieController extends CommonController {
             }
 
             // сохраняем фильм в БД
+            final int id;
             try {
-                movie.save();
+                id = movie.save();
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о фильме в базе данных!");
             }
 
-            // сообщаем об успехе
-            return ok();
+            // сообщаем об успехе, возвращая идентификатор созданной записи
+            return ok(id);
+        };
+
+        // создать пакет новых фильмов
+        this.batch = (Context ctx) -> {
+            // преобразовываем входные данные в массив моделей
+            MovieModel[] movies = ctx.body(MovieModel[].class);
+
+            // проверка корректности полученных данных
+            if (movies == null || movies.length == 0 || movies.length > MovieController.MAX_MOVIES_PER_BATCH) {
+                return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
+            }
+
+            // отбираем корректные записи
+            final boolean[]        valid = new boolean[movies.length];
+            final List<MovieModel> saved = new ArrayList<>(movies.length);
+
+            for (int i = 0; i < movies.length; ++i) {
+                valid[i] = movies[i] != null && movies[i].id == 0;
+                if (valid[i]) {
+                    saved.add(movies[i]);
+                }
+            }
+
+            // сохраняем фильмы в БД одним пакетом
+            final int[] ids;
+            try {
+                ids = MovieModel.saveAll(saved);
+            } catch (Exception exc) {
+                return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о фильмах в базе данных!");
+            }
+
+            // сообщаем результат по каждой записи в порядке следования
+            final List<Result> results = new ArrayList<>(movies.length);
+
+            for (int i = 0, j = 0; i < movies.length; ++i) {
+                if (!valid[i]) {
+                    results.add(error(Code.BAD_REQUEST, "Заданы некорректные данные фильма!"));
+                } else if (ids[j] == 0) {
+                    results.add(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить идентификатор фильма!"));
+                    ++j;
+                } else {
+                    results.add(ok(ids[j++]));
+                }
+            }
+
+            return ok(results);
         };
 
         // найти фильм по заданному идентификатору
@@ -88,11 +165,26 @@ public final class MovieController extends CommonController {
             MovieModel movie;
             int        id;
 
+            // при заданном параметре include -- карточка фильма с ближайшими сеансами
+            if (!ctx.query("include").isMissing()) {
+                return this.details(ctx);
+            }
+
             // считываем идентификатор фильма во входных параметрах
             try {
                 id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
+            }
+
+            // данные у клиента актуальны -- ответ без обращения к БД
+            final VersionRegistry.Version version = VersionRegistry.movie(id);
+            if (this.notModified(ctx, version)) {
+                return ctx;
+            }
 
-                // ищем фильм по заданному идентификатору
+            // ищем фильм по заданному идентификатору
+            try {
                 movie = MovieModel.find(id);
                 if (movie == null) {
                     throw new Exception();
@@ -102,7 +194,7 @@ public final class MovieController extends CommonController {
             }
 
             // возвращаем фильм
-            return ok(movie);
+            return ok(ctx, version, movie);
         };
 
         // изменить ранее созданный фильм
@@ -110,17 +202,23 @@ public final class MovieController extends CommonController {
             MovieModel movie = ctx.body(MovieModel.class);
 
             // проверка корректности полученных данных
-            if (movie == null || !MovieModel.exists(movie.id)) {
+            if (movie == null || movie.id == 0) {
                 return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
             }
 
             // сохраняем фильм в БД
+            final int id;
             try {
-                movie.save();
+                id = movie.save();
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о фильме в базе данных!");
             }
 
+            // изменяемой записи не оказалось в БД
+            if (id == 0) {
+                return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
+            }
+
             // сообщаем об успехе
             return ok();
         };
@@ -132,24 +230,135 @@ public final class MovieController extends CommonController {
             // считываем идентификатор фильма во входных параметрах
             try {
                 id = Integer.parseInt(ctx.path("id").value());
-
-                // проверяем существование фильма по заданному идентификатору
-                if (!MovieModel.exists(id)) {
-                    throw new Exception();
-                }
             } catch (Exception exc) {
                 return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
             }
 
             // удаляем фильм из БД
+            final boolean killed;
             try {
-                MovieModel.kill(id);
+                killed = MovieModel.kill(id);
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось удалить информацию о фильме из базы данных!");
             }
 
+            // удаляемой записи не оказалось в БД
+            if (!killed) {
+                return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
+            }
+
             // сообщаем об успехе
             return ok();
         };
     }
+
+    // конструктор #2 -- без кэша ответов
+    public MovieController() {
+        this(null);
+    }
+
+    // количество сеансов в карточке фильма по входным параметрам (0 -- задано некорректное включение)
+    static int detailsLimit(final Context ctx) {
+        if (!MovieController.INCLUDE_SCHEDULES.equals(ctx.query("include").value(""))) {
+            return 0;
+        }
+
+        int limit = MovieController.SCHEDULES_PER_DETAILS;
+
+        try {
+            limit = Integer.parseInt(ctx.query("limit").value());
+        } catch (Exception exc) {}
+
+        return Math.max(1, Math.min(limit, MovieController.MAX_SCHEDULES_PER_DETAILS));
+    }
+
+    // запрос карточки фильма вместе с ближайшими сеансами одним запросом к БД; состав ближайших сеансов
+    // меняется со временем и без изменения данных, поэтому версия данных к карточке не применяется
+    private Result details(final Context ctx) {
+        // считываем идентификатор фильма во входных параметрах
+        final int id;
+        try {
+            id = Integer.parseInt(ctx.path("id").value());
+        } catch (Exception exc) {
+            return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
+        }
+
+        // проверяем включаемые данные и считываем количество сеансов
+        final int limit = MovieController.detailsLimit(ctx);
+        if (limit == 0) {
+            return error(Code.BAD_REQUEST, "Заданы некорректные включаемые данные!");
+        }
+
+        // ищем фильм и его сеансы, начинающиеся не раньше текущего момента
+        final MovieDetails details;
+        try {
+            details = MovieModel.details(id, LocalDateTime.now(), limit);
+        } catch (Exception exc) {
+            return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить информацию о фильме из базы данных!");
+        }
+
+        if (details == null) {
+            return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
+        }
+
+        // возвращаем карточку фильма
+        return ok(details);
+    }
+
+    // запрос списка фильмов по курсору
+    private Result seek(final Context ctx, final VersionRegistry.Version version) {
+        // считываем размер страницы во входных параметрах
+        int size = MovieController.MOVIES_PER_PAGE;
+
+        try {
+            size = Integer.parseInt(ctx.query("size").value());
+        } catch (Exception exc) {}
+
+        size = Math.max(1, Math.min(size, MovieController.MAX_MOVIES_PER_PAGE));
+
+        // считываем курсор во входных параметрах, пустой курсор -- первая страница
+        PageCursor after = null;
+
+        try {
+            final String token = ctx.query("cursor").value("");
+            if (!token.isEmpty()) {
+                after = PageCursor.decode(token);
+            }
+        } catch (Exception exc) {
+            return error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!");
+        }
+
+        // запрашиваем количество записей и вычисляем число страниц
+        int total, pages;
+        try {
+            total = CounterRegistry.movies();
+        } catch (Exception exc) {
+            return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице фильмов!");
+        }
+        pages = (int) Math.ceil((double) total / size);
+
+        // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<MovieModel> list;
+        try {
+            list = MovieModel.seek(after, size + 1);
+        } catch (IllegalArgumentException exc) {
+            return error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!");
+        } catch (Exception exc) {
+            return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список фильмов по заданным параметрам!");
+        }
+
+        String next = null;
+        if (list.size() > size) {
+            list = list.subList(0, size);
+            next = list.get(size - 1).cursor().encode();
+        }
+
+        // возвращаем результат в обёртке списка
+        return ok(ctx, version, new ListWrapper(
+            list,
+            total,
+            pages,
+            next
+        ));
+    }
 }
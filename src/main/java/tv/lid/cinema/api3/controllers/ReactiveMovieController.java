@@ -0,0 +1,217 @@
+package tv.lid.cinema.api3.controllers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import reactor.core.publisher.Mono;
+
+import tv.lid.cinema.api3.models.CounterRegistry;
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.PageCursor;
+
+// класс неблокирующего контроллера управления фильмами: обработчики возвращают Mono, запросы к БД
+// выполняются через R2DBC, и поток ввода-вывода не блокируется до отправки ответа
+public final class ReactiveMovieController extends CommonController {
+    // список фильмов
+    public final Route.Handler list;
+
+    // новый фильм
+    public final Route.Handler create;
+
+    // найти фильм
+    public final Route.Handler find;
+
+    // изменить фильм
+    public final Route.Handler modify;
+
+    // удалить фильм
+    public final Route.Handler kill;
+
+    // конструктор
+    public ReactiveMovieController() {
+        // запрос списка фильмов
+        this.list = (Context ctx) -> {
+            // при заданном курсоре или размере страницы -- вывод по курсору
+            if (!ctx.query("cursor").isMissing() || !ctx.query("size").isMissing()) {
+                return this.seek(ctx);
+            }
+
+            // считываем номер страницы во входных параметрах
+            int page = 1;
+
+            try {
+                page = Integer.parseInt(ctx.path("page").value());
+            } catch (Exception exc) {}
+
+            // количество записей берётся из счётчиков, загруженных при запуске
+            final int total;
+            try {
+                total = CounterRegistry.movies();
+            } catch (Exception exc) {
+                return Mono.just(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице фильмов!"));
+            }
+            final int pages = (int) Math.ceil((double) total / MovieController.MOVIES_PER_PAGE);
+
+            // запрашиваем список записей в соответствии с номером страницы
+            return MovieModel.Reactive
+                .list(page, MovieController.MOVIES_PER_PAGE)
+                .collectList()
+                .map((List<MovieModel> list) -> ok(new ListWrapper(list, total, pages)))
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список фильмов по заданным параметрам!")
+                ));
+        };
+
+        // создать новый фильм
+        this.create = (Context ctx) -> {
+            // преобразовываем входные данные в модель
+            MovieModel movie = ctx.body(MovieModel.class);
+
+            // проверка корректности полученных данных
+            if (movie == null || movie.id != 0) {
+                return Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!"));
+            }
+
+            // сохраняем фильм в БД и возвращаем идентификатор созданной записи
+            return MovieModel.Reactive
+                .save(movie)
+                .map((id) -> ok(id))
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о фильме в базе данных!")
+                ));
+        };
+
+        // найти фильм по заданному идентификатору
+        this.find = (Context ctx) -> {
+            // считываем идентификатор фильма во входных параметрах
+            final int id;
+            try {
+                id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!"));
+            }
+
+            // при заданном параметре include -- карточка фильма с ближайшими сеансами
+            if (!ctx.query("include").isMissing()) {
+                final int limit = MovieController.detailsLimit(ctx);
+                if (limit == 0) {
+                    return Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные включаемые данные!"));
+                }
+
+                return MovieModel.Reactive
+                    .details(id, LocalDateTime.now(), limit)
+                    .map((details) -> ok(details))
+                    .defaultIfEmpty(error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!"))
+                    .onErrorResume((exc) -> Mono.just(
+                        error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить информацию о фильме из базы данных!")
+                    ));
+            }
+
+            // ищем фильм по заданному идентификатору
+            return MovieModel.Reactive
+                .find(id)
+                .map((movie) -> ok(movie))
+                .defaultIfEmpty(error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!"))
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!")
+                ));
+        };
+
+        // изменить ранее созданный фильм
+        this.modify = (Context ctx) -> {
+            MovieModel movie = ctx.body(MovieModel.class);
+
+            // проверка корректности полученных данных
+            if (movie == null || movie.id == 0) {
+                return Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!"));
+            }
+
+            // сохраняем фильм в БД; изменяемой записи могло не оказаться в БД
+            return MovieModel.Reactive
+                .save(movie)
+                .map((id) -> id != 0
+                    ? ok()
+                    : error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!")
+                )
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о фильме в базе данных!")
+                ));
+        };
+
+        // удалить фильм по заданному идентификатору
+        this.kill = (Context ctx) -> {
+            // считываем идентификатор фильма во входных параметрах
+            final int id;
+            try {
+                id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!"));
+            }
+
+            // удаляем фильм из БД; удаляемой записи могло не оказаться в БД
+            return MovieModel.Reactive
+                .kill(id)
+                .map((killed) -> killed
+                    ? ok()
+                    : error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!")
+                )
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось удалить информацию о фильме из базы данных!")
+                ));
+        };
+    }
+
+    // запрос списка фильмов по курсору
+    private Mono<Result> seek(final Context ctx) {
+        // считываем размер страницы во входных параметрах
+        int size = MovieController.MOVIES_PER_PAGE;
+
+        try {
+            size = Integer.parseInt(ctx.query("size").value());
+        } catch (Exception exc) {}
+
+        final int numb = Math.max(1, Math.min(size, MovieController.MAX_MOVIES_PER_PAGE));
+
+        // считываем курсор во входных параметрах, пустой курсор -- первая страница
+        PageCursor after = null;
+
+        try {
+            final String token = ctx.query("cursor").value("");
+            if (!token.isEmpty()) {
+                after = PageCursor.decode(token);
+            }
+        } catch (Exception exc) {
+            return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!"));
+        }
+
+        // количество записей берётся из счётчиков, загруженных при запуске
+        final int total;
+        try {
+            total = CounterRegistry.movies();
+        } catch (Exception exc) {
+            return Mono.just(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице фильмов!"));
+        }
+        final int pages = (int) Math.ceil((double) total / numb);
+
+        // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        return MovieModel.Reactive
+            .seek(after, numb + 1)
+            .collectList()
+            .map((List<MovieModel> list) -> {
+                String next = null;
+                if (list.size() > numb) {
+                    list = list.subList(0, numb);
+                    next = list.get(numb - 1).cursor().encode();
+                }
+
+                return ok(new ListWrapper(list, total, pages, next));
+            })
+            .onErrorResume((exc) -> Mono.just(exc instanceof IllegalArgumentException
+                ? error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!")
+                : error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список фильмов по заданным параметрам!")
+            ));
+    }
+}
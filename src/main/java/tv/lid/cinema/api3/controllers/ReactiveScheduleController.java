@@ -0,0 +1,216 @@
+package tv.lid.cinema.api3.controllers;
+
+import java.util.List;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import reactor.core.publisher.Mono;
+
+import tv.lid.cinema.api3.models.CounterRegistry;
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.PageCursor;
+import tv.lid.cinema.api3.models.ScheduleModel;
+
+// класс неблокирующего контроллера управления сеансами: обработчики возвращают Mono, запросы к БД
+// выполняются через R2DBC, и поток ввода-вывода не блокируется до отправки ответа
+public final class ReactiveScheduleController extends CommonController {
+    // список сеансов
+    public final Route.Handler list;
+
+    // новый сеанс
+    public final Route.Handler create;
+
+    // найти сеанс
+    public final Route.Handler find;
+
+    // изменить сеанс
+    public final Route.Handler modify;
+
+    // удалить сеанс
+    public final Route.Handler kill;
+
+    // конструктор
+    public ReactiveScheduleController() {
+        // запрос списка сеансов
+        this.list = (Context ctx) -> {
+            // считываем идентификатор фильма во входных параметрах
+            final int movieId;
+            try {
+                movieId = Integer.parseInt(ctx.path("movieId").value());
+            } catch (Exception exc) {
+                return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!"));
+            }
+
+            // при заданном курсоре или размере страницы -- вывод по курсору
+            if (!ctx.query("cursor").isMissing() || !ctx.query("size").isMissing()) {
+                return this.seek(ctx, movieId);
+            }
+
+            // считываем номер страницы во входных параметрах
+            int page = 1;
+
+            try {
+                page = Integer.parseInt(ctx.path("page").value());
+            } catch (Exception exc) {}
+
+            // количество записей берётся из счётчиков, загруженных при запуске
+            final int total;
+            try {
+                total = CounterRegistry.schedules(movieId);
+            } catch (Exception exc) {
+                return Mono.just(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице сеансов!"));
+            }
+            final int pages = (int) Math.ceil((double) total / ScheduleController.SCHEDULES_PER_PAGE);
+
+            // запрашиваем список записей в соответствии с номером страницы
+            return ScheduleModel.Reactive
+                .list(movieId, page, ScheduleController.SCHEDULES_PER_PAGE)
+                .collectList()
+                .map((List<ScheduleModel> list) -> ok(new ListWrapper(list, total, pages)))
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список сеансов по заданным параметрам!")
+                ));
+        };
+
+        // создать новый сеанс
+        this.create = (Context ctx) -> {
+            // преобразовываем входные данные в модель
+            ScheduleModel schedule = ctx.body(ScheduleModel.class);
+
+            // проверка корректности полученных данных
+            if (schedule == null || schedule.id != 0 || !schedule.hasValidDateAndTime()) {
+                return Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!"));
+            }
+
+            // проверяем существование фильма, сохраняем сеанс в БД и возвращаем идентификатор созданной записи
+            return MovieModel.Reactive
+                .exists(schedule.movieId)
+                .flatMap((exists) -> exists
+                    ? ScheduleModel.Reactive.save(schedule).map((id) -> ok(id))
+                    : Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!"))
+                )
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о сеансе в базе данных!")
+                ));
+        };
+
+        // найти сеанс по заданному идентификатору
+        this.find = (Context ctx) -> {
+            // считываем идентификатор сеанса во входных параметрах
+            final int id;
+            try {
+                id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!"));
+            }
+
+            // ищем сеанс по заданному идентификатору
+            return ScheduleModel.Reactive
+                .find(id)
+                .map((schedule) -> ok(schedule))
+                .defaultIfEmpty(error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!"))
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!")
+                ));
+        };
+
+        // изменить ранее созданный сеанс
+        this.modify = (Context ctx) -> {
+            ScheduleModel schedule = ctx.body(ScheduleModel.class);
+
+            // проверка корректности полученных данных
+            if (schedule == null || schedule.id == 0 || !schedule.hasValidDateAndTime()) {
+                return Mono.just(error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!"));
+            }
+
+            // проверяем существование фильма и сохраняем сеанс в БД; изменяемой записи могло не оказаться в БД
+            return MovieModel.Reactive
+                .exists(schedule.movieId)
+                .flatMap((exists) -> exists
+                    ? ScheduleModel.Reactive.save(schedule)
+                    : Mono.just(0)
+                )
+                .map((id) -> id != 0
+                    ? ok()
+                    : error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!")
+                )
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о сеансе в базе данных!")
+                ));
+        };
+
+        // удалить сеанс по заданному идентификатору
+        this.kill = (Context ctx) -> {
+            // считываем идентификатор сеанса во входных параметрах
+            final int id;
+            try {
+                id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!"));
+            }
+
+            // удаляем сеанс из БД; удаляемой записи могло не оказаться в БД
+            return ScheduleModel.Reactive
+                .kill(id)
+                .map((killed) -> killed
+                    ? ok()
+                    : error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!")
+                )
+                .onErrorResume((exc) -> Mono.just(
+                    error(Code.INTERNAL_SERVER_ERROR, "Не удалось удалить информацию о сеансе из базы данных!")
+                ));
+        };
+    }
+
+    // запрос списка сеансов по курсору
+    private Mono<Result> seek(final Context ctx, final int movieId) {
+        // считываем размер страницы во входных параметрах
+        int size = ScheduleController.SCHEDULES_PER_PAGE;
+
+        try {
+            size = Integer.parseInt(ctx.query("size").value());
+        } catch (Exception exc) {}
+
+        final int numb = Math.max(1, Math.min(size, ScheduleController.MAX_SCHEDULES_PER_PAGE));
+
+        // считываем курсор во входных параметрах, пустой курсор -- первая страница
+        PageCursor after = null;
+
+        try {
+            final String token = ctx.query("cursor").value("");
+            if (!token.isEmpty()) {
+                after = PageCursor.decode(token);
+            }
+        } catch (Exception exc) {
+            return Mono.just(error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!"));
+        }
+
+        // количество записей берётся из счётчиков, загруженных при запуске
+        final int total;
+        try {
+            total = CounterRegistry.schedules(movieId);
+        } catch (Exception exc) {
+            return Mono.just(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице сеансов!"));
+        }
+        final int pages = (int) Math.ceil((double) total / numb);
+
+        // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        return ScheduleModel.Reactive
+            .seek(movieId, after, numb + 1)
+            .collectList()
+            .map((List<ScheduleModel> list) -> {
+                String next = null;
+                if (list.size() > numb) {
+                    list = list.subList(0, numb);
+                    next = list.get(numb - 1).cursor().encode();
+                }
+
+                return ok(new ListWrapper(list, total, pages, next));
+            })
+            .onErrorResume((exc) -> Mono.just(exc instanceof IllegalArgumentException
+                ? error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!")
+                : error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список сеансов по заданным параметрам!")
+            ));
+    }
+}
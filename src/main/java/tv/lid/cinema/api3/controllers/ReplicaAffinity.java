@@ -0,0 +1,43 @@
+package tv.lid.cinema.api3.controllers;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import tv.lid.cinema.api3.storages.ReplicaRouter;
+
+// класс привязки запросов к клиенту для маршрутизации чтения по репликам: после изменения данных
+// клиент в течение окна читает из основной БД; объявляется после диспетчера, поэтому клиент
+// запоминается в том же потоке, где выполняется обработчик
+public final class ReplicaAffinity implements Route.Decorator {
+    // заголовок с идентификатором клиента; без него клиент определяется по адресу
+    private static final String CLIENT_HEADER = "X-Client-Id";
+
+    // маршрутизатор чтения
+    private final ReplicaRouter router;
+
+    // конструктор
+    public ReplicaAffinity(final ReplicaRouter router) {
+        this.router = router;
+    }
+
+    // обёртка обработчика: чтение выполняется от имени клиента, изменение запоминается после обработки
+    @Override
+    public Route.Handler apply(final Route.Handler next) {
+        return (Context ctx) -> {
+            final String header = ctx.header(ReplicaAffinity.CLIENT_HEADER).valueOrNull(),
+                         client = header != null ? header : ctx.getRemoteAddress();
+
+            ReplicaRouter.enter(client);
+            try {
+                return next.apply(ctx);
+            } finally {
+                ReplicaRouter.leave();
+
+                final String method = ctx.getMethod();
+                if (!method.equals("GET") && !method.equals("HEAD")) {
+                    this.router.written(client);
+                }
+            }
+        };
+    }
+}
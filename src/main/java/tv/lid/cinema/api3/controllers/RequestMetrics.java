@@ -0,0 +1,58 @@
+package tv.lid.cinema.api3.controllers;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import reactor.core.publisher.Mono;
+
+import tv.lid.cinema.api3.utils.Metrics;
+
+// класс учёта метрик запросов: время обработки по маршрутам и количество ответов по кодам результата;
+// в асинхронном режиме объявляется после диспетчера, поэтому время ожидания в очереди пула
+// не учитывается (оно и отклонённые запросы видны в статистике пула потоков)
+public final class RequestMetrics implements Route.Decorator {
+    // обёртка обработчика: время -- от вызова обработчика до получения результата, для неблокирующих
+    // обработчиков -- до завершения Mono
+    @Override
+    public Route.Handler apply(final Route.Handler next) {
+        return (Context ctx) -> {
+            final long   start   = System.nanoTime();
+            final String method  = ctx.getMethod(),
+                         pattern = ctx.getRoute().getPattern();
+
+            final Object result;
+            try {
+                result = next.apply(ctx);
+            } catch (Exception exc) {
+                RequestMetrics.record(method, pattern, CommonController.Code.INTERNAL_SERVER_ERROR.getValue(), start);
+                throw exc;
+            }
+
+            if (result instanceof Mono) {
+                return ((Mono<?>) result)
+                    .doOnSuccess((value) -> RequestMetrics.record(method, pattern, RequestMetrics.codeOf(ctx, value), start))
+                    .doOnError((exc) -> RequestMetrics.record(method, pattern, CommonController.Code.INTERNAL_SERVER_ERROR.getValue(), start));
+            }
+
+            RequestMetrics.record(method, pattern, RequestMetrics.codeOf(ctx, result), start);
+            return result;
+        };
+    }
+
+    // код результата: из тела ответа, для ответов, отправленных обработчиком (например, 304), -- код HTTP
+    private static int codeOf(final Context ctx, final Object result) {
+        if (result instanceof CommonController.Result) {
+            return ((CommonController.Result) result).code;
+        } else if (result instanceof CommonController.Encoded) {
+            return CommonController.Code.OK.getValue();
+        } else {
+            return ctx.getResponseCode().value();
+        }
+    }
+
+    // учёт времени обработки и кода результата
+    private static void record(final String method, final String pattern, final int code, final long start) {
+        Metrics.route(method, pattern).record(Metrics.micros(start));
+        Metrics.responses(method, pattern, code).increment();
+    }
+}
@@ -0,0 +1,139 @@
+package tv.lid.cinema.api3.controllers;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import tv.lid.cinema.api3.codecs.JsonCodec;
+import tv.lid.cinema.api3.models.VersionRegistry;
+
+// класс кэша ответов: тела ответов, уже закодированные в JSON, хранятся по адресу запроса вместе
+// с версией данных, на которой они построены; ответ из кэша отдаётся, только пока версия данных
+// не изменилась, а версии меняются методами save()/kill() моделей -- так изменение фильма или
+// сеанса сбрасывает ровно те страницы, которые от него зависят, не затрагивая остальные
+public final class ResponseCache extends CommonController {
+    // запись кэша: тело ответа и версия данных
+    private static final class Entry {
+        final byte[]                  body;
+        final VersionRegistry.Version version;
+
+        Entry(final byte[] body, final VersionRegistry.Version version) {
+            this.body    = body;
+            this.version = version;
+        }
+    }
+
+    // кодек JSON
+    private final JsonCodec codec;
+
+    // кэш ответов по адресу запроса, ограниченный по объёму
+    private final Cache<String, ResponseCache.Entry> cache;
+
+    // количество записей, найденных в кэше, но построенных на устаревшей версии данных
+    private final LongAdder stale = new LongAdder();
+
+    // срез статистики кэша ответов
+    public static final class Snapshot {
+        @JsonProperty("size")
+        public final long size; // количество записей
+
+        @JsonProperty("hits")
+        public final long hits; // попаданий
+
+        @JsonProperty("misses")
+        public final long misses; // промахов
+
+        @JsonProperty("stale")
+        public final long stale; // промахов из-за изменения данных
+
+        @JsonProperty("evictions")
+        public final long evictions; // вытеснений при достижении предельного объёма
+
+        @JsonProperty("hitRate")
+        public final double hitRate; // доля попаданий
+
+        // конструктор
+        private Snapshot(final ResponseCache cache) {
+            final CacheStats stats = cache.cache.stats();
+
+            // записи устаревшей версии считаются попаданиями кэша, но для клиента это промахи
+            final long stale = cache.stale.sum(),
+                       hits  = stats.hitCount() - stale;
+
+            this.size      = cache.cache.estimatedSize();
+            this.hits      = hits;
+            this.misses    = stats.missCount() + stale;
+            this.stale     = stale;
+            this.evictions = stats.evictionCount();
+            this.hitRate   = hits + this.misses != 0 ? (double) hits / (hits + this.misses) : 0;
+        }
+    }
+
+    // конструктор
+    public ResponseCache(final JsonCodec codec, final long maxBytes) {
+        this.codec = codec;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, ResponseCache.Entry entry) -> key.length() + entry.body.length)
+            .recordStats()
+            .build();
+    }
+
+    // обработчик, ответы которого кэшируются; функция версии возвращает текущую версию данных
+    // ответа (null -- запрос некорректен и выполняется без кэша)
+    public Route.Handler wrap(
+        final Route.Handler                                handler,
+        final Function<Context, VersionRegistry.Version> versionOf
+    ) {
+        return (Context ctx) -> {
+            final VersionRegistry.Version version = versionOf.apply(ctx);
+            if (version == null) {
+                return handler.apply(ctx);
+            }
+
+            final String key = ctx.getRequestPath() + ctx.queryString();
+
+            // ответ из кэша -- без обращения к БД и кодирования
+            final ResponseCache.Entry entry = this.cache.getIfPresent(key);
+            if (entry != null) {
+                if (entry.version.tag == version.tag) {
+                    if (this.notModified(ctx, version)) {
+                        return ctx;
+                    }
+
+                    CommonController.validators(ctx, version);
+                    return new Encoded(entry.body, version);
+                }
+
+                this.stale.increment();
+            }
+
+            // кэшируются только успешные ответы с версией данных
+            final Object result = handler.apply(ctx);
+
+            if (!ctx.isResponseStarted() &&
+                result instanceof CommonController.Result &&
+                ((CommonController.Result) result).version != null) {
+                final CommonController.Result res  = (CommonController.Result) result;
+                final byte[]                  body = this.codec.bytes(res);
+
+                this.cache.put(key, new ResponseCache.Entry(body, res.version));
+                return new Encoded(body, res.version);
+            }
+
+            return result;
+        };
+    }
+
+    // статистика кэша ответов
+    public ResponseCache.Snapshot stats() {
+        return new ResponseCache.Snapshot(this);
+    }
+}
@@ -0,0 +1,235 @@
+package tv.lid.cinema.api3.controllers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.jooby.Context;
+import io.jooby.MediaType;
+import io.jooby.Route;
+
+import tv.lid.cinema.api3.codecs.JsonCodec;
+import tv.lid.cinema.api3.config.Config;
+import tv.lid.cinema.api3.models.VersionRegistry;
+
+// класс сжатия ответов: кодировка (gzip либо deflate) выбирается по заголовку Accept-Encoding,
+// ответы меньше заданного размера не сжимаются; сжатые ответы с известной версией данных
+// (страницы списков) хранятся в кэше, ограниченном по объёму и вытесняющем редко запрашиваемые
+// страницы, так что самые востребованные страницы сжимаются один раз на версию данных
+public final class ResponseCompressor implements Route.Decorator {
+    // поддерживаемые кодировки в порядке предпочтения
+    private static final String ENCODING_GZIP    = "gzip",
+                                ENCODING_DEFLATE = "deflate";
+
+    // кодек JSON
+    private final JsonCodec codec;
+
+    // минимальный размер сжимаемого ответа, байт
+    private final int minSize;
+
+    // степень сжатия
+    private final int level;
+
+    // кэш сжатых ответов по кодировке, версии данных и адресу запроса (null -- кэш отключён)
+    private final Cache<String, byte[]> cache;
+
+    // количество сжатых ответов, объём до и после сжатия
+    private final LongAdder compressed = new LongAdder(),
+                            bytesIn    = new LongAdder(),
+                            bytesOut   = new LongAdder();
+
+    // срез статистики сжатия
+    public static final class Snapshot {
+        @JsonProperty("compressed")
+        public final long compressed; // сжато ответов (без попаданий в кэш)
+
+        @JsonProperty("bytesIn")
+        public final long bytesIn; // объём до сжатия, байт
+
+        @JsonProperty("bytesOut")
+        public final long bytesOut; // объём после сжатия, байт
+
+        @JsonProperty("cacheSize")
+        public final long cacheSize; // страниц в кэше
+
+        @JsonProperty("cacheHits")
+        public final long cacheHits; // попаданий в кэш
+
+        @JsonProperty("cacheMisses")
+        public final long cacheMisses; // промахов кэша
+
+        // конструктор
+        private Snapshot(final ResponseCompressor compressor) {
+            this.compressed = compressor.compressed.sum();
+            this.bytesIn    = compressor.bytesIn.sum();
+            this.bytesOut   = compressor.bytesOut.sum();
+
+            final Cache<String, byte[]> cache = compressor.cache;
+            final CacheStats            stats = cache != null ? cache.stats() : CacheStats.empty();
+
+            this.cacheSize   = cache != null ? cache.estimatedSize() : 0;
+            this.cacheHits   = stats.hitCount();
+            this.cacheMisses = stats.missCount();
+        }
+    }
+
+    // конструктор
+    public ResponseCompressor(final JsonCodec codec, final Config.Compression cfg) {
+        this.codec   = codec;
+        this.minSize = cfg.minSize;
+        this.level   = cfg.level;
+        this.cache   = cfg.cache > 0
+            ? Caffeine.newBuilder()
+                .maximumWeight(cfg.cache)
+                .weigher((String key, byte[] body) -> key.length() + body.length)
+                .recordStats()
+                .build()
+            : null;
+    }
+
+    // обёртка обработчика: результат кодируется и сжимается здесь же, иначе -- отдаётся кодеку как есть
+    @Override
+    public Route.Handler apply(final Route.Handler next) {
+        return (Context ctx) -> {
+            final Object result = next.apply(ctx);
+
+            // ответ уже отправлен обработчиком (например, 304), не является результатом запроса
+            // либо читается из БД по ходу записи
+            final VersionRegistry.Version version;
+
+            if (ctx.isResponseStarted()) {
+                return result;
+            } else if (result instanceof CommonController.Encoded) {
+                version = ((CommonController.Encoded) result).version;
+            } else if (result instanceof CommonController.Result &&
+                       !(((CommonController.Result) result).data instanceof CommonController.StreamWrapper)) {
+                version = ((CommonController.Result) result).version;
+            } else {
+                return result;
+            }
+
+            ctx.setResponseHeader("Vary", "Accept-Encoding");
+
+            final String encoding = ResponseCompressor.negotiate(ctx.header("Accept-Encoding").valueOrNull());
+            if (encoding == null) {
+                return result;
+            }
+
+            // сжатый ответ из кэша -- по версии данных, которую обработчик прочитал до запроса к БД
+            final String key = this.cache != null && version != null
+                ? encoding + " " + version.tag + " " + ctx.getRequestPath() + ctx.queryString()
+                : null;
+
+            byte[] body = key != null ? this.cache.getIfPresent(key) : null;
+
+            if (body == null) {
+                final byte[] raw = this.codec.bytes(result);
+
+                // небольшой ответ отправляется без сжатия
+                if (raw.length < this.minSize) {
+                    ctx.setResponseType(MediaType.json);
+                    return ctx.send(raw);
+                }
+
+                body = this.compress(raw, encoding);
+
+                this.compressed.increment();
+                this.bytesIn.add(raw.length);
+                this.bytesOut.add(body.length);
+
+                if (key != null) {
+                    this.cache.put(key, body);
+                }
+            }
+
+            ctx.setResponseType(MediaType.json);
+            ctx.setResponseHeader("Content-Encoding", encoding);
+            return ctx.send(body);
+        };
+    }
+
+    // статистика сжатия
+    public ResponseCompressor.Snapshot stats() {
+        return new ResponseCompressor.Snapshot(this);
+    }
+
+    // сжатие массива байтов в заданной кодировке: gzip -- поток deflate с заголовком и контрольной
+    // суммой gzip, deflate -- поток в формате zlib
+    private byte[] compress(final byte[] raw, final String encoding) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+
+        if (encoding.equals(ENCODING_GZIP)) {
+            final int level = this.level;
+
+            try (OutputStream stream = new GZIPOutputStream(out) {{ this.def.setLevel(level); }}) {
+                stream.write(raw);
+            }
+        } else {
+            final Deflater deflater = new Deflater(this.level);
+
+            try (OutputStream stream = new DeflaterOutputStream(out, deflater)) {
+                stream.write(raw);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    // выбор кодировки по заголовку Accept-Encoding: поддерживаемая кодировка с наибольшим весом,
+    // при равных весах -- gzip (null -- сжатие клиентом не поддерживается)
+    static String negotiate(final String header) {
+        if (header == null || header.isEmpty()) {
+            return null;
+        }
+
+        double gzip = -1, deflate = -1, any = -1;
+
+        for (final String item : header.split(",")) {
+            final String[] parts = item.trim().split(";");
+            final String   name  = parts[0].trim().toLowerCase();
+
+            double weight = 1;
+            for (int i = 1; i < parts.length; ++i) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        weight = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException exc) {
+                        weight = 0;
+                    }
+                }
+            }
+
+            if (name.equals(ENCODING_GZIP) || name.equals("x-gzip")) {
+                gzip = weight;
+            } else if (name.equals(ENCODING_DEFLATE)) {
+                deflate = weight;
+            } else if (name.equals("*")) {
+                any = weight;
+            }
+        }
+
+        // кодировки, не названные явно, получают вес "*"
+        gzip    = gzip    >= 0 ? gzip    : any;
+        deflate = deflate >= 0 ? deflate : any;
+
+        if (gzip > 0 && gzip >= deflate) {
+            return ENCODING_GZIP;
+        } else if (deflate > 0) {
+            return ENCODING_DEFLATE;
+        } else {
+            return null;
+        }
+    }
+}
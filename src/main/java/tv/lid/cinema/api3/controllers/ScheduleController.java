@@ -1,23 +1,39 @@
 package tv.lid.cinema.api3.controllers;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import io.jooby.Context;
 import io.jooby.Route;
 
+import tv.lid.cinema.api3.models.CounterRegistry;
 import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.PageCursor;
 import tv.lid.cinema.api3.models.ScheduleModel;
+import tv.lid.cinema.api3.models.VersionRegistry;
 
 // класс контроллера управления сеансами
 public final class ScheduleController extends CommonController {
-    private static final int SCHEDULES_PER_PAGE = 10; // количество записей на страницу
+    static final int SCHEDULES_PER_PAGE      = 10,   // количество записей на страницу
+                     MAX_SCHEDULES_PER_PAGE  = 100,  // максимальное количество записей на страницу при выводе по курсору
+                     MAX_SCHEDULES_PER_BATCH = 1000; // максимальное количество записей в пакетном запросе
 
     // список сеансов
     public final Route.Handler list;
 
+    // сеансы всех фильмов в промежутке времени
+    public final Route.Handler range;
+
     // новый сеанс
     public final Route.Handler create;
 
+    // пакет новых сеансов
+    public final Route.Handler batch;
+
     // найти сеанс
     public final Route.Handler find;
 
@@ -27,10 +43,10 @@ public final class ScheduleController extends CommonController {
     // удалить сеанс
     public final Route.Handler kill;
 
-    // конструктор
-    public ScheduleController() {
+    // конструктор #1 -- с кэшем ответов для списка сеансов (null -- без кэша)
+    public ScheduleController(final ResponseCache cache) {
         // запрос списка сеансов
-        this.list = (Context ctx) -> {
+        final Route.Handler listing = (Context ctx) -> {
             // считываем идентификатор фильма во входных параметрах
             int movieId;
             try {
@@ -39,6 +55,17 @@ public final class ScheduleController extends CommonController {
                 return error(Code.BAD_REQUEST, "Задан некорректный идентификатор фильма!");
             }
 
+            // данные у клиента актуальны -- ответ без обращения к БД
+            final VersionRegistry.Version version = VersionRegistry.schedules(movieId);
+            if (this.notModified(ctx, version)) {
+                return ctx;
+            }
+
+            // при заданном курсоре или размере страницы -- вывод по курсору
+            if (!ctx.query("cursor").isMissing() || !ctx.query("size").isMissing()) {
+                return this.seek(ctx, movieId, version);
+            }
+
             // считываем номер страницы во входных параметрах
             int page = 1;
 
@@ -49,11 +76,11 @@ public final class ScheduleController extends CommonController {
             // запрашиваем количество записей и вычисляем число страниц
             int total, pages;
             try {
-                total = ScheduleModel.count(movieId);
+                total = CounterRegistry.schedules(movieId);
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице сеансов!");
             }
-            pages = (int) Math.ceil(total / ScheduleController.SCHEDULES_PER_PAGE);
+            pages = (int) Math.ceil((double) total / ScheduleController.SCHEDULES_PER_PAGE);
 
             // запрашиваем список записей в соответствии с номером страницы
             List<ScheduleModel> list;
@@ -64,32 +91,131 @@ public final class ScheduleController extends CommonController {
             }
 
             // возвращаем результат в обёртке списка
-            return ok(new ListWrapper(
+            return ok(ctx, version, new ListWrapper(
                 list,
                 total,
                 pages
             ));
         };
 
+        // страницы списка отдаются из кэша ответов, пока данные не изменились
+        this.list = cache != null ? cache.wrap(listing, ScheduleController::listVersion) : listing;
+
+        // запрос сеансов всех фильмов в заданном промежутке времени
+        this.range = (Context ctx) -> {
+            // считываем границы промежутка во входных параметрах
+            final LocalDateTime from = ScheduleModel.parseDateTime(ctx.query("from").valueOrNull()),
+                                to   = ScheduleModel.parseDateTime(ctx.query("to").valueOrNull());
+
+            if (from == null || to == null || !from.isBefore(to)) {
+                return error(Code.BAD_REQUEST, "Задан некорректный промежуток времени!");
+            }
+
+            // считываем номер зала во входных параметрах, если он задан
+            Byte auditorium = null;
+
+            if (!ctx.query("auditorium").isMissing()) {
+                try {
+                    auditorium = Byte.parseByte(ctx.query("auditorium").value());
+                } catch (Exception exc) {
+                    return error(Code.BAD_REQUEST, "Задан некорректный номер зала!");
+                }
+            }
+
+            // запрашиваем записи; они читаются из БД по мере записи ответа
+            Stream<ScheduleModel> stream;
+            try {
+                stream = ScheduleModel.range(from, to, auditorium);
+            } catch (Exception exc) {
+                return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список сеансов по заданным параметрам!");
+            }
+
+            // возвращаем результат в обёртке потока; сеансы выводятся вместе с идентификатором фильма
+            return ok(new StreamWrapper(stream, ScheduleModel.class, ScheduleModel.WithMovieId.class));
+        };
+
         // создать новый сеанс
         this.create = (Context ctx) -> {
             // преобразовываем входные данные в модель
             ScheduleModel schedule = ctx.body(ScheduleModel.class);
 
             // проверка корректности полученных данных
-            if (schedule == null || !MovieModel.exists(schedule.movieId)) {
+            if (schedule == null || schedule.id != 0 || !schedule.hasValidDateAndTime() || !MovieModel.exists(schedule.movieId)) {
                 return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
             }
 
             // сохраняем фильм в БД
+            final int id;
             try {
-                schedule.save();
+                id = schedule.save();
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о сеансе в базе данных!");
             }
 
-            // сообщаем об успехе
-            return ok();
+            // сообщаем об успехе, возвращая идентификатор созданной записи
+            return ok(id);
+        };
+
+        // создать пакет новых сеансов
+        this.batch = (Context ctx) -> {
+            // преобразовываем входные данные в массив моделей
+            ScheduleModel[] schedules = ctx.body(ScheduleModel[].class);
+
+            // проверка корректности полученных данных
+            if (schedules == null || schedules.length == 0 || schedules.length > ScheduleController.MAX_SCHEDULES_PER_BATCH) {
+                return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
+            }
+
+            // проверяем существование всех упомянутых фильмов одним запросом
+            final Set<Integer> movieIds = new HashSet<>();
+            for (final ScheduleModel schedule : schedules) {
+                if (schedule != null) {
+                    movieIds.add(schedule.movieId);
+                }
+            }
+
+            final Set<Integer> existing;
+            try {
+                existing = MovieModel.existing(movieIds);
+            } catch (Exception exc) {
+                return error(Code.INTERNAL_SERVER_ERROR, "Не удалось проверить существование фильмов в базе данных!");
+            }
+
+            // отбираем корректные записи
+            final boolean[]           valid = new boolean[schedules.length];
+            final List<ScheduleModel> saved = new ArrayList<>(schedules.length);
+
+            for (int i = 0; i < schedules.length; ++i) {
+                valid[i] = schedules[i] != null && schedules[i].id == 0 && schedules[i].hasValidDateAndTime() &&
+                           existing.contains(schedules[i].movieId);
+                if (valid[i]) {
+                    saved.add(schedules[i]);
+                }
+            }
+
+            // сохраняем сеансы в БД одним пакетом
+            final int[] ids;
+            try {
+                ids = ScheduleModel.saveAll(saved);
+            } catch (Exception exc) {
+                return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о сеансах в базе данных!");
+            }
+
+            // сообщаем результат по каждой записи в порядке следования
+            final List<Result> results = new ArrayList<>(schedules.length);
+
+            for (int i = 0, j = 0; i < schedules.length; ++i) {
+                if (!valid[i]) {
+                    results.add(error(Code.BAD_REQUEST, "Заданы некорректные данные сеанса!"));
+                } else if (ids[j] == 0) {
+                    results.add(error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить идентификатор сеанса!"));
+                    ++j;
+                } else {
+                    results.add(ok(ids[j++]));
+                }
+            }
+
+            return ok(results);
         };
 
         // найти сеанс по заданному идентификатору
@@ -100,8 +226,18 @@ public final class ScheduleController extends CommonController {
             // считываем идентификатор сеанса во входных параметрах
             try {
                 id = Integer.parseInt(ctx.path("id").value());
+            } catch (Exception exc) {
+                return error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!");
+            }
 
-                // ищем сеанс по заданному идентификатору
+            // данные у клиента актуальны -- ответ без обращения к БД
+            final VersionRegistry.Version version = VersionRegistry.schedule(id);
+            if (this.notModified(ctx, version)) {
+                return ctx;
+            }
+
+            // ищем сеанс по заданному идентификатору
+            try {
                 schedule = ScheduleModel.find(id);
                 if (schedule == null) {
                     throw new Exception();
@@ -111,7 +247,7 @@ public final class ScheduleController extends CommonController {
             }
 
             // возвращаем сеанс
-            return ok(schedule);
+            return ok(ctx, version, schedule);
         };
 
         // изменить ранее созданный сеанс
@@ -119,17 +255,23 @@ public final class ScheduleController extends CommonController {
             ScheduleModel schedule = ctx.body(ScheduleModel.class);
 
             // проверка корректности полученных данных
-            if (schedule == null || !ScheduleModel.exists(schedule.id) || !MovieModel.exists(schedule.movieId)) {
+            if (schedule == null || schedule.id == 0 || !schedule.hasValidDateAndTime() || !MovieModel.exists(schedule.movieId)) {
                 return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
             }
 
             // сохраняем сеанс в БД
+            final int id;
             try {
-                schedule.save();
+                id = schedule.save();
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось сохранить информацию о сеансе в базе данных!");
             }
 
+            // изменяемой записи не оказалось в БД
+            if (id == 0) {
+                return error(Code.BAD_REQUEST, "Заданы некорректные входные данные запроса!");
+            }
+
             // сообщаем об успехе
             return ok();
         };
@@ -141,24 +283,96 @@ public final class ScheduleController extends CommonController {
             // считываем идентификатор сеанса во входных параметрах
             try {
                 id = Integer.parseInt(ctx.path("id").value());
-
-                // проверяем существование сеанса по заданному идентификатору
-                if (!ScheduleModel.exists(id)) {
-                    throw new Exception();
-                }
             } catch (Exception exc) {
                 return error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!");
             }
 
             // удаляем сеанс из БД
+            final boolean killed;
             try {
-                ScheduleModel.kill(id);
+                killed = ScheduleModel.kill(id);
             } catch (Exception exc) {
                 return error(Code.INTERNAL_SERVER_ERROR, "Не удалось удалить информацию о сеансе из базы данных!");
             }
 
+            // удаляемой записи не оказалось в БД
+            if (!killed) {
+                return error(Code.BAD_REQUEST, "Задан некорректный идентификатор сеанса!");
+            }
+
             // сообщаем об успехе
             return ok();
         };
     }
+
+    // конструктор #2 -- без кэша ответов
+    public ScheduleController() {
+        this(null);
+    }
+
+    // версия списка сеансов по входным параметрам (null -- задан некорректный идентификатор фильма)
+    private static VersionRegistry.Version listVersion(final Context ctx) {
+        try {
+            return VersionRegistry.schedules(Integer.parseInt(ctx.path("movieId").value()));
+        } catch (Exception exc) {
+            return null;
+        }
+    }
+
+    // запрос списка сеансов по курсору
+    private Result seek(final Context ctx, final int movieId, final VersionRegistry.Version version) {
+        // считываем размер страницы во входных параметрах
+        int size = ScheduleController.SCHEDULES_PER_PAGE;
+
+        try {
+            size = Integer.parseInt(ctx.query("size").value());
+        } catch (Exception exc) {}
+
+        size = Math.max(1, Math.min(size, ScheduleController.MAX_SCHEDULES_PER_PAGE));
+
+        // считываем курсор во входных параметрах, пустой курсор -- первая страница
+        PageCursor after = null;
+
+        try {
+            final String token = ctx.query("cursor").value("");
+            if (!token.isEmpty()) {
+                after = PageCursor.decode(token);
+            }
+        } catch (Exception exc) {
+            return error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!");
+        }
+
+        // запрашиваем количество записей и вычисляем число страниц
+        int total, pages;
+        try {
+            total = CounterRegistry.schedules(movieId);
+        } catch (Exception exc) {
+            return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить количество записей в таблице сеансов!");
+        }
+        pages = (int) Math.ceil((double) total / size);
+
+        // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<ScheduleModel> list;
+        try {
+            list = ScheduleModel.seek(movieId, after, size + 1);
+        } catch (IllegalArgumentException exc) {
+            return error(Code.BAD_REQUEST, "Задан некорректный курсор страницы!");
+        } catch (Exception exc) {
+            return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить список сеансов по заданным параметрам!");
+        }
+
+        String next = null;
+        if (list.size() > size) {
+            list = list.subList(0, size);
+            next = list.get(size - 1).cursor().encode();
+        }
+
+        // возвращаем результат в обёртке списка
+        return ok(ctx, version, new ListWrapper(
+            list,
+            total,
+            pages,
+            next
+        ));
+    }
 }
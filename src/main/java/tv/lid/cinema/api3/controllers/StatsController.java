@@ -0,0 +1,90 @@
+package tv.lid.cinema.api3.controllers;
+
+import io.jooby.Context;
+import io.jooby.Route;
+
+import tv.lid.cinema.api3.models.EntityCache;
+import tv.lid.cinema.api3.storages.DatabaseStorage;
+import tv.lid.cinema.api3.storages.ReplicaRouter;
+import tv.lid.cinema.api3.storages.ShardRouter;
+import tv.lid.cinema.api3.utils.Metrics;
+
+// класс контроллера статистики работы приложения
+public final class StatsController extends CommonController {
+    // статистика пула соединений
+    public final Route.Handler pool;
+
+    // статистика кэша записей
+    public final Route.Handler cache;
+
+    // статистика пула потоков для работы с БД
+    public final Route.Handler executor;
+
+    // статистика сжатия ответов
+    public final Route.Handler compression;
+
+    // статистика кэша ответов
+    public final Route.Handler responses;
+
+    // статистика маршрутизации чтения по репликам
+    public final Route.Handler replicas;
+
+    // статистика маршрутизации сеансов по шардам
+    public final Route.Handler shards;
+
+    // метрики в текстовом формате Prometheus
+    public final Route.Handler metrics;
+
+    // конструктор
+    public StatsController(
+        final DatabaseStorage    dbs,
+        final AsyncDispatcher    dispatcher,
+        final ResponseCompressor compressor,
+        final ResponseCache      responses,
+        final ReplicaRouter      replicas,
+        final ShardRouter        shards
+    ) {
+        // запрос статистики пула соединений с БД
+        this.pool = (Context ctx) -> {
+            try {
+                return ok(dbs.poolStats());
+            } catch (Exception exc) {
+                return error(Code.INTERNAL_SERVER_ERROR, "Не удалось получить статистику пула соединений!");
+            }
+        };
+
+        // запрос статистики кэша записей
+        this.cache = (Context ctx) -> ok(EntityCache.stats());
+
+        // запрос статистики пула потоков для работы с БД (только в асинхронном режиме)
+        this.executor = (Context ctx) -> dispatcher != null
+            ? ok(dispatcher.stats())
+            : error(Code.BAD_REQUEST, "Асинхронный режим выполнения запросов отключён!");
+
+        // запрос статистики сжатия ответов
+        this.compression = (Context ctx) -> compressor != null
+            ? ok(compressor.stats())
+            : error(Code.BAD_REQUEST, "Сжатие ответов отключено!");
+
+        // запрос статистики кэша ответов
+        this.responses = (Context ctx) -> responses != null
+            ? ok(responses.stats())
+            : error(Code.BAD_REQUEST, "Кэш ответов отключён!");
+
+        // запрос статистики маршрутизации чтения по репликам
+        this.replicas = (Context ctx) -> replicas != null
+            ? ok(replicas.stats())
+            : error(Code.BAD_REQUEST, "Чтение из реплик отключено!");
+
+        // запрос статистики маршрутизации сеансов по шардам
+        this.shards = (Context ctx) -> shards != null
+            ? ok(shards.stats())
+            : error(Code.BAD_REQUEST, "Хранение сеансов на шардах отключено!");
+
+        // запрос метрик для сборщика Prometheus
+        this.metrics = (Context ctx) -> {
+            ctx.setResponseType("text/plain; version=0.0.4; charset=utf-8");
+            return ctx.send(Metrics.prometheus());
+        };
+    }
+}
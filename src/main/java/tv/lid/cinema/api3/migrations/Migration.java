@@ -0,0 +1,93 @@
+package tv.lid.cinema.api3.migrations;
+
+import java.sql.SQLException;
+
+import static org.jooq.impl.DSL.*;
+import org.jooq.DSLContext;
+
+// версионная миграция схемы БД; каждая миграция идемпотентна, чтобы сбой между её применением
+// и записью номера версии не мешал повторному запуску
+public final class Migration {
+    // шаг миграции
+    @FunctionalInterface
+    public interface Step {
+        void apply(final DSLContext dsl) throws SQLException;
+    }
+
+    // номер версии
+    public final int version;
+
+    // описание
+    public final String description;
+
+    // шаг миграции
+    private final Migration.Step step;
+
+    // конструктор
+    public Migration(final int version, final String description, final Migration.Step step) {
+        this.version     = version;
+        this.description = description;
+        this.step        = step;
+    }
+
+    // применение миграции
+    public void apply(final DSLContext dsl) throws SQLException {
+        this.step.apply(dsl);
+    }
+
+    // миграция, создающая индекс на заданных столбцах таблицы; там, где СУБД это позволяет,
+    // индекс строится без блокировки записи в таблицу, поэтому применим к работающей БД
+    public static Migration index(
+        final int       version,
+        final String    description,
+        final String    table,
+        final String    index,
+        final String... columns
+    ) {
+        return new Migration(version, description, (final DSLContext dsl) -> {
+            final StringBuilder cols = new StringBuilder();
+            for (final String column : columns) {
+                if (cols.length() != 0) {
+                    cols.append(", ");
+                }
+                cols.append(dsl.render(name(column)));
+            }
+
+            switch (dsl.dialect().family()) {
+                case POSTGRES: // построение без блокировки, вне транзакции
+                    dsl.execute(
+                        "create index concurrently if not exists {0} on {1} (" + cols + ")",
+                        name(index),
+                        name(table)
+                    );
+                    break;
+
+                case MYSQL: // IF NOT EXISTS для индексов не поддерживается
+                    final int cnt = dsl
+                        .fetchOne(
+                            "select count(*) from information_schema.statistics " +
+                            "where table_schema = database() and table_name = {0} and index_name = {1}",
+                            inline(table),
+                            inline(index)
+                        )
+                        .get(0, int.class);
+
+                    if (cnt == 0) {
+                        dsl.execute(
+                            "create index {0} on {1} (" + cols + ") algorithm = inplace lock = none",
+                            name(index),
+                            name(table)
+                        );
+                    }
+                    break;
+
+                default:
+                    dsl.execute(
+                        "create index if not exists {0} on {1} (" + cols + ")",
+                        name(index),
+                        name(table)
+                    );
+            }
+        });
+    }
+}
@@ -0,0 +1,197 @@
+package tv.lid.cinema.api3.migrations;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.jooq.impl.DSL.*;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.SQLDataType;
+
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.ScheduleModel;
+
+// класс, применяющий к БД ещё не применённые версионные миграции схемы
+public final class MigrationRunner {
+    // имя SQL-таблицы с номерами применённых миграций
+    private static final Table<Record> TABLE_MIGRATIONS = table(name("api3_migrations"));
+
+    // все миграции в порядке применения; новые добавляются только в конец
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "movies and schedules tables", (final DSLContext dsl) -> {
+            MovieModel.createTable();
+            ScheduleModel.createTable();
+        }),
+        Migration.index(
+            2, "movies ordering index",
+            MovieModel.tableName(), "api3_movies_year_id",
+            "year", "id"
+        ),
+        Migration.index(
+            3, "covering index for schedules of a movie",
+            ScheduleModel.tableName(), "api3_schedules_movie_date_time",
+            "movie_id", "date_time", "id", "auditorium"
+        ),
+        new Migration(4, "typed schedule start time", MigrationRunner::typedDateTime),
+        Migration.index(
+            5, "covering index for schedules in a time range",
+            ScheduleModel.tableName(), "api3_schedules_date_time",
+            "date_time", "id", "movie_id", "auditorium"
+        )
+    );
+
+    // миграции БД шарда с заданным номером и шагом идентификаторов сеансов в порядке применения
+    private static List<Migration> shardMigrations(final int slot, final int stride) {
+        return Arrays.asList(
+            new Migration(1, "sharded schedules table", (final DSLContext dsl) ->
+                ScheduleModel.createShardTable(dsl, slot, stride)
+            ),
+            Migration.index(
+                2, "covering index for schedules of a movie",
+                ScheduleModel.tableName(), "api3_schedules_movie_date_time",
+                "movie_id", "date_time", "id", "auditorium"
+            ),
+            Migration.index(
+                3, "covering index for schedules in a time range",
+                ScheduleModel.tableName(), "api3_schedules_date_time",
+                "date_time", "id", "movie_id", "auditorium"
+            )
+        );
+    }
+
+    // DSL context
+    private final DSLContext dsl;
+
+    // применяемые миграции
+    private final List<Migration> migrations;
+
+    // конструктор #1
+    private MigrationRunner(final DSLContext dsl, final List<Migration> migrations) {
+        this.dsl        = dsl;
+        this.migrations = migrations;
+    }
+
+    // конструктор #2 -- основная БД
+    public MigrationRunner(final DSLContext dsl) {
+        this(dsl, MigrationRunner.MIGRATIONS);
+    }
+
+    // миграции БД шарда сеансов
+    public static MigrationRunner shard(final DSLContext dsl, final int slot, final int stride) {
+        return new MigrationRunner(dsl, MigrationRunner.shardMigrations(slot, stride));
+    }
+
+    // перевод даты и времени начала сеанса из строки в TIMESTAMP; строки, которые СУБД
+    // не сможет преобразовать, прервут миграцию -- их нужно исправить и повторить установку
+    private static void typedDateTime(final DSLContext dsl) throws SQLException {
+        switch (dsl.dialect().family()) {
+            case POSTGRES:
+                dsl.execute(
+                    "alter table {0} alter column {1} type timestamp using {1}::timestamp",
+                    name(ScheduleModel.tableName()),
+                    name("date_time")
+                );
+                break;
+
+            case MYSQL:
+                dsl.execute(
+                    "alter table {0} modify {1} datetime not null",
+                    name(ScheduleModel.tableName()),
+                    name("date_time")
+                );
+                break;
+
+            default:
+                dsl.execute(
+                    "alter table {0} alter column {1} set data type timestamp",
+                    name(ScheduleModel.tableName()),
+                    name("date_time")
+                );
+        }
+    }
+
+    // создание таблицы с номерами применённых миграций
+    private void prepare() throws SQLException {
+        this.dsl
+            .createTableIfNotExists(MigrationRunner.TABLE_MIGRATIONS)
+            .column("version",     SQLDataType.INTEGER.nullable(false))
+            .column("description", SQLDataType.VARCHAR(200).nullable(false))
+            .column("applied_at",  SQLDataType.TIMESTAMP.nullable(false))
+            .constraints(
+                primaryKey("version")
+            )
+            .execute();
+    }
+
+    // номера применённых миграций
+    private Set<Integer> applied() throws SQLException {
+        return new HashSet<>(
+            this.dsl
+                .select(
+                    field(name("version"), Integer.class)
+                )
+                .from(MigrationRunner.TABLE_MIGRATIONS)
+                .fetch(0, Integer.class)
+        );
+    }
+
+    // количество ещё не применённых миграций
+    public int pending() throws SQLException {
+        this.prepare();
+
+        final Set<Integer> applied = this.applied();
+        int cnt = 0;
+
+        for (final Migration migration : this.migrations) {
+            if (!applied.contains(migration.version)) {
+                ++cnt;
+            }
+        }
+        return cnt;
+    }
+
+    // применение всех ещё не применённых миграций по порядку, возвращает их количество
+    public int migrate() throws SQLException {
+        this.prepare();
+
+        final Set<Integer> applied = this.applied();
+        int cnt = 0;
+
+        for (final Migration migration : this.migrations) {
+            if (applied.contains(migration.version)) {
+                continue;
+            }
+
+            System.out.println("Applying migration #" + migration.version + " (" + migration.description + ")...");
+            migration.apply(this.dsl);
+
+            this.dsl
+                .insertInto(
+                    MigrationRunner.TABLE_MIGRATIONS,
+                    field(name("version"),     int.class),
+                    field(name("description"), String.class),
+                    field(name("applied_at"),  Timestamp.class)
+                )
+                .values(
+                    migration.version,
+                    migration.description,
+                    new Timestamp(System.currentTimeMillis())
+                )
+                .execute();
+            ++cnt;
+        }
+        return cnt;
+    }
+
+    // удаление таблицы с номерами применённых миграций
+    public void reset() throws SQLException {
+        this.dsl
+            .dropTableIfExists(MigrationRunner.TABLE_MIGRATIONS)
+            .execute();
+    }
+}
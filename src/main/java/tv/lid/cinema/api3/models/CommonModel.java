@@ -1,19 +1,44 @@
 package tv.lid.cinema.api3.models;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import javax.sql.DataSource;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import org.jooq.Configuration;
+import org.jooq.Converter;
 import org.jooq.DSLContext;
+import org.jooq.Param;
+import org.jooq.Query;
+import org.jooq.impl.DSL;
+
+import tv.lid.cinema.api3.storages.ReactiveStorage;
+import tv.lid.cinema.api3.storages.ReplicaRouter;
+import tv.lid.cinema.api3.storages.ShardRouter;
 
 // базовый абстрактный класс модели
 public abstract class CommonModel {
     // DSL context
     protected static DSLContext dslContext = null;
 
+    // режим выполнения запросов моделей: по шаблонам (true) либо с построением запроса на каждый вызов
+    static boolean templates = true;
+
+    // неблокирующий доступ к БД (null -- не используется)
+    static ReactiveStorage reactive = null;
+
+    // маршрутизация чтения по репликам (null -- реплики не используются)
+    static ReplicaRouter replicas = null;
+
+    // шарды, на которых хранятся сеансы (null -- сеансы хранятся в основной БД)
+    static ShardRouter shards = null;
+
     // идентификатор записи
     @JsonProperty(value = "id", required = false, defaultValue = "0")
     public final int id;
@@ -29,9 +54,117 @@ public abstract class CommonModel {
         this(0);
     }
 
-    // инициализация
-    public static final void initialize(final DSLContext dslContext) {
+    // инициализация #1
+    public static final void initialize(final DSLContext dslContext, final boolean templates) {
         CommonModel.dslContext = dslContext;
+        CommonModel.templates  = templates;
+
+        // время выполнения запросов учитывается по шаблонам моделей
+        QueryTemplate.name(MovieModel.class, ScheduleModel.class);
+    }
+
+    // инициализация #2 -- запросы по шаблонам
+    public static final void initialize(final DSLContext dslContext) {
+        CommonModel.initialize(dslContext, true);
+    }
+
+    // инициализация неблокирующего доступа к БД для реактивных вариантов операций моделей
+    public static final void initializeReactive(final ReactiveStorage reactive) {
+        CommonModel.reactive = reactive;
+    }
+
+    // инициализация чтения с реплик БД для запросов моделей, которые это допускают
+    public static final void initializeReplicas(final ReplicaRouter replicas) {
+        CommonModel.replicas = replicas;
+    }
+
+    // инициализация хранения сеансов на шардах
+    public static final void initializeShards(final ShardRouter shards) {
+        CommonModel.shards = shards;
+    }
+
+    // установка параметров подготовленного выражения из значений запроса jOOQ; значения приводятся
+    // к типам столбцов БД конвертерами параметров, как при выполнении запроса самим jOOQ
+    @SuppressWarnings("unchecked")
+    static void bind(final PreparedStatement stmt, final Query query) throws SQLException {
+        int idx = 0;
+
+        for (final Param<?> param : query.getParams().values()) {
+            if (param.isInline()) {
+                continue;
+            }
+
+            final Object value = param.getValue();
+
+            stmt.setObject(
+                ++idx,
+                value == null ? null : ((Converter<Object, Object>) param.getConverter()).to(value)
+            );
+        }
+    }
+
+    // выполнение запроса INSERT с получением сгенерированного идентификатора записи (0 -- запись не создана);
+    // ключ читается через getGeneratedKeys, который одинаково поддерживают драйверы H2, MySQL и PostgreSQL
+    protected static int insertAndGetId(final Query query) throws SQLException {
+        return CommonModel.insertAndGetId(CommonModel.dslContext, query);
+    }
+
+    // выполнение запроса INSERT в заданной БД с получением сгенерированного идентификатора записи
+    protected static int insertAndGetId(final DSLContext dsl, final Query query) throws SQLException {
+        return dsl.connectionResult((Connection conn) -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                dsl.render(query),
+                Statement.RETURN_GENERATED_KEYS
+            )) {
+                CommonModel.bind(stmt, query);
+
+                if (stmt.executeUpdate() == 0) {
+                    return 0;
+                }
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    return keys.next() ? keys.getInt(1) : 0;
+                }
+            }
+        });
+    }
+
+    // пакетное выполнение однотипных запросов INSERT (JDBC batch) в одной транзакции с получением
+    // сгенерированных идентификаторов записей в порядке следования запросов
+    protected static int[] insertAndGetIds(final List<? extends Query> queries) throws SQLException {
+        return CommonModel.insertAndGetIds(CommonModel.dslContext, queries);
+    }
+
+    // пакетное выполнение однотипных запросов INSERT в одной транзакции заданной БД
+    protected static int[] insertAndGetIds(final DSLContext dsl, final List<? extends Query> queries) throws SQLException {
+        if (queries.isEmpty()) {
+            return new int[0];
+        }
+
+        return dsl.transactionResult((Configuration cfg) ->
+            DSL.using(cfg).connectionResult((Connection conn) -> {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                    DSL.using(cfg).render(queries.get(0)),
+                    Statement.RETURN_GENERATED_KEYS
+                )) {
+                    for (final Query query : queries) {
+                        CommonModel.bind(stmt, query);
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+
+                    final int[] ids = new int[queries.size()];
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        for (int i = 0; i < ids.length && keys.next(); ++i) {
+                            ids[i] = keys.getInt(1);
+                        }
+                    }
+
+                    return ids;
+                }
+            })
+        );
     }
 
     // создание таблицы в БД
@@ -64,13 +197,13 @@ public abstract class CommonModel {
         throw new SQLException();
     }
 
-    // удаление записи из БД по заданному идентификатору
-    public static void kill(final int id) throws SQLException {
+    // удаление записи из БД по заданному идентификатору, возвращает признак того, что запись была удалена
+    public static boolean kill(final int id) throws SQLException {
         throw new SQLException();
     }
 
-    // сохранение данной записи в БД
-    public void save() throws SQLException {
+    // сохранение данной записи в БД, возвращает идентификатор созданной или изменённой записи (0 -- записи нет)
+    public int save() throws SQLException {
         throw new SQLException();
     }
 }
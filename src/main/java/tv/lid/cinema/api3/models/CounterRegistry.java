@@ -0,0 +1,192 @@
+package tv.lid.cinema.api3.models;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import tv.lid.cinema.api3.utils.IntIntMap;
+
+// класс реестра счётчиков записей: общее количество фильмов и количество сеансов каждого фильма;
+// счётчики загружаются из БД один раз, далее поддерживаются методами save()/kill() моделей
+// и периодически сверяются с БД; сверка не останавливает запись, а изменения, сделанные
+// во время запросов к БД, учитываются при применении её результата
+public final class CounterRegistry {
+    // период сверки счётчиков с БД, с
+    private static final long RECONCILE_PERIOD = 60;
+
+    // количество фильмов
+    private static int movies = 0;
+
+    // количество сеансов по идентификатору фильма
+    private static IntIntMap schedules = new IntIntMap();
+
+    // фильмы, количество сеансов которых менялось во время сверки (null -- сверка не выполняется): результат
+    // запроса к БД мог учесть изменение, а мог и не учесть, поэтому их счётчики сверкой не заменяются
+    private static Set<Integer> touched = null;
+
+    // изменение количества фильмов во время сверки -- прибавляется к результату запроса к БД
+    private static int moviesDelta = 0;
+
+    // блокировка, исключающая одновременные сверки
+    private static final Object RECONCILE_LOCK = new Object();
+
+    // признак загрузки счётчиков из БД
+    private static boolean loaded = false;
+
+    // планировщик периодической сверки
+    private static ScheduledExecutorService reconciler = null;
+
+    // конструктор -- экземпляры не создаются
+    private CounterRegistry() {}
+
+    // загрузка счётчиков из БД и запуск периодической сверки
+    public static void start() throws SQLException {
+        CounterRegistry.reconcile();
+
+        synchronized (CounterRegistry.class) {
+            if (CounterRegistry.reconciler == null) {
+                CounterRegistry.reconciler = Executors.newSingleThreadScheduledExecutor((Runnable task) -> {
+                    final Thread thread = new Thread(task, "counter-reconciler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+                CounterRegistry.reconciler.scheduleWithFixedDelay(
+                    () -> {
+                        try {
+                            CounterRegistry.reconcile();
+                        } catch (Exception exc) {
+                            // счётчики будут сверены при следующем запуске
+                        }
+                    },
+                    CounterRegistry.RECONCILE_PERIOD,
+                    CounterRegistry.RECONCILE_PERIOD,
+                    TimeUnit.SECONDS
+                );
+            }
+        }
+    }
+
+    // остановка периодической сверки и сброс счётчиков -- до следующей загрузки они читаются из БД
+    static synchronized void reset() {
+        if (CounterRegistry.reconciler != null) {
+            CounterRegistry.reconciler.shutdownNow();
+            CounterRegistry.reconciler = null;
+        }
+
+        CounterRegistry.touched     = null;
+        CounterRegistry.moviesDelta = 0;
+        CounterRegistry.movies      = 0;
+        CounterRegistry.schedules   = new IntIntMap();
+        CounterRegistry.loaded      = false;
+    }
+
+    // сверка счётчиков с БД: количества сеансов фильмов, не менявшиеся во время запросов к БД, заменяются
+    // результатом сверки, остальные -- сохраняются до следующей сверки; к количеству фильмов прибавляется
+    // его изменение за время запросов (изменение, пришедшееся на начало запроса, может быть учтено дважды,
+    // такое расхождение устраняется следующей сверкой)
+    public static void reconcile() throws SQLException {
+        synchronized (CounterRegistry.RECONCILE_LOCK) {
+            synchronized (CounterRegistry.class) {
+                CounterRegistry.touched     = new HashSet<>();
+                CounterRegistry.moviesDelta = 0;
+            }
+
+            try {
+                final int       movies    = MovieModel.count();
+                final IntIntMap schedules = ScheduleModel.counts();
+
+                synchronized (CounterRegistry.class) {
+                    if (CounterRegistry.loaded) {
+                        for (final int movieId : CounterRegistry.touched) {
+                            final int cnt = CounterRegistry.schedules.get(movieId, 0);
+
+                            if (cnt > 0) {
+                                schedules.put(movieId, cnt);
+                            } else {
+                                schedules.remove(movieId);
+                            }
+                        }
+                    }
+
+                    CounterRegistry.movies    = movies + CounterRegistry.moviesDelta;
+                    CounterRegistry.schedules = schedules;
+                    CounterRegistry.loaded    = true;
+                }
+            } finally {
+                synchronized (CounterRegistry.class) {
+                    CounterRegistry.touched = null;
+                }
+            }
+        }
+    }
+
+    // количество фильмов
+    public static int movies() throws SQLException {
+        synchronized (CounterRegistry.class) {
+            if (CounterRegistry.loaded) {
+                return CounterRegistry.movies;
+            }
+        }
+
+        return MovieModel.count();
+    }
+
+    // количество сеансов заданного фильма
+    public static int schedules(final int movieId) throws SQLException {
+        synchronized (CounterRegistry.class) {
+            if (CounterRegistry.loaded) {
+                return CounterRegistry.schedules.get(movieId, 0);
+            }
+        }
+
+        return ScheduleModel.count(movieId);
+    }
+
+    // учёт изменения количества сеансов фильма во время сверки
+    private static void touch(final int movieId) {
+        if (CounterRegistry.touched != null) {
+            CounterRegistry.touched.add(movieId);
+        }
+    }
+
+    // создан фильм
+    static synchronized void movieCreated() {
+        ++CounterRegistry.movies;
+        ++CounterRegistry.moviesDelta;
+    }
+
+    // удалён фильм -- вместе с ним каскадно удалены его сеансы
+    static synchronized void movieKilled(final int movieId) {
+        --CounterRegistry.movies;
+        --CounterRegistry.moviesDelta;
+        CounterRegistry.schedules.remove(movieId);
+        CounterRegistry.touch(movieId);
+    }
+
+    // создан сеанс
+    static synchronized void scheduleCreated(final int movieId) {
+        CounterRegistry.schedules.add(movieId, 1);
+        CounterRegistry.touch(movieId);
+    }
+
+    // удалён сеанс
+    static synchronized void scheduleKilled(final int movieId) {
+        CounterRegistry.touch(movieId);
+
+        if (CounterRegistry.schedules.add(movieId, -1) <= 0) {
+            CounterRegistry.schedules.remove(movieId);
+        }
+    }
+
+    // сеанс перенесён на другой фильм
+    static synchronized void scheduleMoved(final int fromMovieId, final int toMovieId) {
+        if (fromMovieId != toMovieId) {
+            CounterRegistry.scheduleKilled(fromMovieId);
+            CounterRegistry.scheduleCreated(toMovieId);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package tv.lid.cinema.api3.models;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import tv.lid.cinema.api3.config.Config;
+
+// класс кэша записей модели: чтение через кэш, вытеснение с учётом частоты обращений (W-TinyLFU),
+// ограничение времени жизни и сброс записей при их изменении
+public final class EntityCache<T extends CommonModel> {
+    // функция чтения записи из БД
+    @FunctionalInterface
+    interface Loader<T> {
+        T load(final int id) throws SQLException;
+    }
+
+    // обёртка исключения БД для передачи через функцию загрузки кэша
+    private static final class LoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LoadException(final SQLException exc) {
+            super(exc);
+        }
+    }
+
+    // статистика кэша
+    public static final class Stats {
+        @JsonProperty("size")
+        public final long size; // количество записей
+
+        @JsonProperty("hits")
+        public final long hits; // попаданий
+
+        @JsonProperty("misses")
+        public final long misses; // промахов
+
+        @JsonProperty("evictions")
+        public final long evictions; // вытеснений
+
+        @JsonProperty("hitRate")
+        public final double hitRate; // доля попаданий
+
+        // конструктор
+        private Stats(final long size, final CacheStats stats) {
+            this.size      = size;
+            this.hits      = stats.hitCount();
+            this.misses    = stats.missCount();
+            this.evictions = stats.evictionCount();
+            this.hitRate   = stats.hitRate();
+        }
+    }
+
+    // кэш (null -- кэш отключён)
+    private volatile Cache<Integer, T> cache = null;
+
+    // поколение кэша: увеличивается перед каждым сбросом записей
+    private final AtomicLong generation = new AtomicLong();
+
+    // настройка кэшей всех моделей
+    public static void configure(final Config.Cache cfgCache) {
+        MovieModel.CACHE.resize(cfgCache.movies, cfgCache.ttl);
+        ScheduleModel.CACHE.resize(cfgCache.schedules, cfgCache.ttl);
+    }
+
+    // статистика кэшей всех моделей
+    public static Map<String, EntityCache.Stats> stats() {
+        final Map<String, EntityCache.Stats> result = new LinkedHashMap<>();
+
+        result.put("movies",    MovieModel.CACHE.snapshot());
+        result.put("schedules", ScheduleModel.CACHE.snapshot());
+        return result;
+    }
+
+    // пересоздание кэша с заданными размером и временем жизни записей
+    void resize(final long maxSize, final long ttl) {
+        if (maxSize > 0) {
+            final Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats();
+
+            if (ttl > 0) {
+                builder.expireAfterWrite(ttl, TimeUnit.SECONDS);
+            }
+
+            this.cache = builder.build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    // чтение записи через кэш; отсутствующие в БД записи не кэшируются
+    T get(final int id, final EntityCache.Loader<T> loader) throws SQLException {
+        final Cache<Integer, T> cache = this.cache;
+
+        if (cache == null) {
+            return loader.load(id);
+        }
+
+        try {
+            return cache.get(id, (key) -> {
+                try {
+                    return loader.load(key);
+                } catch (SQLException exc) {
+                    throw new EntityCache.LoadException(exc);
+                }
+            });
+        } catch (EntityCache.LoadException exc) {
+            throw (SQLException) exc.getCause();
+        }
+    }
+
+    // запись из кэша без обращения к БД (null -- записи в кэше нет)
+    T peek(final int id) {
+        final Cache<Integer, T> cache = this.cache;
+
+        return cache != null ? cache.getIfPresent(id) : null;
+    }
+
+    // поколение кэша; читается до чтения записи в обход get и передаётся в put
+    long generation() {
+        return this.generation.get();
+    }
+
+    // помещение записи, прочитанной в обход get, в кэш, если с заданного поколения записи не сбрасывались --
+    // иначе прочитанная запись могла устареть; проверка и помещение атомарны относительно сброса той же записи,
+    // а сброс, начатый после проверки, удалит помещённую запись
+    void put(final int id, final T value, final long generation) {
+        final Cache<Integer, T> cache = this.cache;
+
+        if (cache != null) {
+            cache.asMap().compute(id, (key, old) -> this.generation.get() == generation ? value : old);
+        }
+    }
+
+    // сброс записи с заданным идентификатором
+    void invalidate(final int id) {
+        final Cache<Integer, T> cache = this.cache;
+
+        this.generation.incrementAndGet();
+
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    // сброс всех записей, удовлетворяющих условию
+    void invalidateIf(final Predicate<T> cond) {
+        final Cache<Integer, T> cache = this.cache;
+
+        this.generation.incrementAndGet();
+
+        if (cache != null) {
+            cache.asMap().values().removeIf(cond);
+        }
+    }
+
+    // срез статистики (null -- кэш отключён)
+    private EntityCache.Stats snapshot() {
+        final Cache<Integer, T> cache = this.cache;
+        return cache != null ? new EntityCache.Stats(cache.estimatedSize(), cache.stats()) : null;
+    }
+}
@@ -0,0 +1,95 @@
+package tv.lid.cinema.api3.models;
+
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+// класс индекса идентификаторов существующих записей модели (битовое множество);
+// загружается из БД один раз и поддерживается методами save()/kill() моделей; записи могут
+// создаваться в обход индекса (другими экземплярами приложения, на шардах, вручную), поэтому
+// отсутствие идентификатора в индексе ничего не доказывает и проверяется в БД
+public final class IdIndex {
+    // функция перебора всех идентификаторов записей в БД
+    @FunctionalInterface
+    interface Scanner {
+        void scan(final IntConsumer consumer) throws SQLException;
+    }
+
+    // блокировка: проверки выполняются параллельно, изменения -- монопольно
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // множество идентификаторов
+    private BitSet ids = new BitSet();
+
+    // признак загрузки индекса из БД
+    private boolean loaded = false;
+
+    // загрузка индексов всех моделей
+    public static void load() throws SQLException {
+        MovieModel.INDEX.reload(MovieModel::scanIds);
+    }
+
+    // перезагрузка индекса из БД
+    void reload(final IdIndex.Scanner scanner) throws SQLException {
+        final BitSet ids = new BitSet();
+        scanner.scan(ids::set);
+
+        this.lock.writeLock().lock();
+        try {
+            this.ids    = ids;
+            this.loaded = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // проверка наличия идентификатора: TRUE -- запись есть, FALSE -- идентификатор некорректен,
+    // null -- индекс ответа не даёт (в том числе, если идентификатора в индексе нет)
+    Boolean contains(final int id) {
+        if (id <= 0) {
+            return Boolean.FALSE;
+        }
+
+        this.lock.readLock().lock();
+        try {
+            return this.loaded && this.ids.get(id) ? Boolean.TRUE : null;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // добавление идентификатора
+    void add(final int id) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.loaded && id > 0) {
+                this.ids.set(id);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // удаление идентификатора
+    void remove(final int id) {
+        this.lock.writeLock().lock();
+        try {
+            if (id > 0) {
+                this.ids.clear(id);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // признак загрузки индекса
+    boolean isLoaded() {
+        this.lock.readLock().lock();
+        try {
+            return this.loaded;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
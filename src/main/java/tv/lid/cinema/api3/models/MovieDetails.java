@@ -0,0 +1,58 @@
+package tv.lid.cinema.api3.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import org.jooq.Record;
+
+// класс карточки фильма: сам фильм и его ближайшие сеансы одним документом
+public final class MovieDetails {
+    // фильм; его поля выводятся на верхнем уровне документа
+    @JsonUnwrapped
+    public final MovieModel movie;
+
+    // ближайшие сеансы фильма в порядке начала
+    @JsonProperty("schedules")
+    public final List<ScheduleModel> schedules;
+
+    // конструктор
+    public MovieDetails(final MovieModel movie, final List<ScheduleModel> schedules) {
+        this.movie     = movie;
+        this.schedules = schedules;
+    }
+
+    // сборка карточки из записей соединения фильма с сеансами: в каждой записи поля фильма
+    // (id, title, duration, year), затем поля сеанса (id, date_time, auditorium), пустые,
+    // если сеансов нет (null -- нет и фильма)
+    static MovieDetails of(final List<? extends Record> records) {
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        final Record     first = records.get(0);
+        final MovieModel movie = new MovieModel(
+            first.get(0, int.class),
+            first.get(1, String.class),
+            first.get(2, short.class),
+            first.get(3, short.class)
+        );
+
+        final List<ScheduleModel> schedules = new ArrayList<>(records.size());
+        for (final Record rec : records) {
+            final Integer id = rec.get(4, Integer.class);
+            if (id != null) {
+                schedules.add(new ScheduleModel(
+                    id,
+                    movie.id,
+                    rec.get(5, String.class),
+                    rec.get(6, byte.class)
+                ));
+            }
+        }
+
+        return new MovieDetails(movie, schedules);
+    }
+}
@@ -2,21 +2,205 @@ package tv.lid.cinema.api3.models;
 
 import java.beans.ConstructorProperties;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import static org.jooq.impl.DSL.*;
+import org.jooq.Cursor;
+import org.jooq.Query;
 import org.jooq.Record;
+import org.jooq.Record1;
 import org.jooq.Table;
 import org.jooq.impl.SQLDataType;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 // класс модели кинофильма
 public class MovieModel extends CommonModel {
     // имя SQL-таблицы с фильмами
     private static final Table<Record> TABLE_MOVIES = table(name("api3_movies"));
 
+    // кэш записей
+    static final EntityCache<MovieModel> CACHE = new EntityCache<>();
+
+    // индекс идентификаторов существующих записей
+    static final IdIndex INDEX = new IdIndex();
+
+    // запрос количества записей
+    private static final QueryTemplate COUNT = new QueryTemplate((args) -> CommonModel.dslContext
+        .selectCount()
+        .from(MovieModel.TABLE_MOVIES)
+    );
+
+    // запрос количества записей с заданным идентификатором: (id)
+    private static final QueryTemplate EXISTS = new QueryTemplate(MovieModel::recordModified, (args) -> CommonModel.dslContext
+        .selectCount()
+        .from(MovieModel.TABLE_MOVIES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос записи по идентификатору: (id)
+    private static final QueryTemplate LOAD = new QueryTemplate(MovieModel::recordModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),       int.class),
+            field(name("title"),    String.class),
+            field(name("duration"), short.class),
+            field(name("year"),     short.class)
+        )
+        .from(MovieModel.TABLE_MOVIES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос страницы записей: (limit, offset)
+    private static final QueryTemplate LIST = new QueryTemplate(MovieModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),       int.class),
+            field(name("title"),    String.class),
+            field(name("duration"), short.class),
+            field(name("year"),     short.class)
+        )
+        .from(MovieModel.TABLE_MOVIES)
+        .orderBy(
+            field(name("year"), short.class).desc()
+        )
+        .limit(args.get(0, int.class))
+        .offset(args.get(1, int.class))
+    );
+
+    // запрос первой страницы записей по курсору: (limit)
+    private static final QueryTemplate SEEK_FIRST = new QueryTemplate(MovieModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),       int.class),
+            field(name("title"),    String.class),
+            field(name("duration"), short.class),
+            field(name("year"),     short.class)
+        )
+        .from(MovieModel.TABLE_MOVIES)
+        .orderBy(
+            field(name("year"), short.class).desc(),
+            field(name("id"),   int.class).desc()
+        )
+        .limit(args.get(0, int.class))
+    );
+
+    // запрос страницы записей, следующих за курсором: (year, id, limit)
+    private static final QueryTemplate SEEK_AFTER = new QueryTemplate(MovieModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),       int.class),
+            field(name("title"),    String.class),
+            field(name("duration"), short.class),
+            field(name("year"),     short.class)
+        )
+        .from(MovieModel.TABLE_MOVIES)
+        .where(
+            row(
+                field(name("year"), short.class),
+                field(name("id"),   int.class)
+            ).lessThan(
+                args.get(0, short.class),
+                args.get(1, int.class)
+            )
+        )
+        .orderBy(
+            field(name("year"), short.class).desc(),
+            field(name("id"),   int.class).desc()
+        )
+        .limit(args.get(2, int.class))
+    );
+
+    // запрос записи вместе с её ближайшими сеансами одним соединением таблиц: (from, id, limit)
+    private static final QueryTemplate DETAILS = new QueryTemplate(MovieModel::detailsModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("m", "id"),         int.class),
+            field(name("m", "title"),      String.class),
+            field(name("m", "duration"),   short.class),
+            field(name("m", "year"),       short.class),
+            field(name("s", "id"),         Integer.class),
+            field(name("s", "date_time"),  ScheduleModel.DATE_TIME),
+            field(name("s", "auditorium"), byte.class)
+        )
+        .from(MovieModel.TABLE_MOVIES.as("m"))
+        .leftJoin(table(name(ScheduleModel.tableName())).as("s"))
+        .on(
+            field(name("s", "movie_id"), int.class).equal(field(name("m", "id"), int.class))
+        )
+        .and(
+            field(name("s", "date_time"), SQLDataType.LOCALDATETIME).greaterOrEqual(args.get(0, SQLDataType.LOCALDATETIME))
+        )
+        .where(
+            field(name("m", "id"), int.class).equal(args.get(1, int.class))
+        )
+        .orderBy(
+            field(name("s", "date_time"), SQLDataType.LOCALDATETIME).asc(),
+            field(name("s", "id"),        Integer.class).asc()
+        )
+        .limit(args.get(2, int.class))
+    );
+
+    // запрос на добавление записи: (title, duration, year)
+    private static final QueryTemplate INSERT = new QueryTemplate((args) -> CommonModel.dslContext
+        .insertInto(
+            MovieModel.TABLE_MOVIES,
+            field(name("title"),    String.class),
+            field(name("duration"), short.class),
+            field(name("year"),     short.class)
+        )
+        .values(
+            args.get(0, String.class),
+            args.get(1, short.class),
+            args.get(2, short.class)
+        )
+    );
+
+    // запрос на изменение записи: (title, duration, year, id)
+    private static final QueryTemplate UPDATE = new QueryTemplate((args) -> CommonModel.dslContext
+        .update(MovieModel.TABLE_MOVIES)
+        .set(field(name("title"),    String.class), args.get(0, String.class))
+        .set(field(name("duration"), short.class),  args.get(1, short.class))
+        .set(field(name("year"),     short.class),  args.get(2, short.class))
+        .where(
+            field(name("id"), int.class).equal(args.get(3, int.class))
+        )
+    );
+
+    // запрос на удаление записи: (id)
+    private static final QueryTemplate DELETE = new QueryTemplate((args) -> CommonModel.dslContext
+        .deleteFrom(MovieModel.TABLE_MOVIES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // время последнего изменения записи с идентификатором из первого параметра запроса, мс
+    private static long recordModified(final Object[] values) {
+        return VersionRegistry.movie((int) values[0]).modified;
+    }
+
+    // время последнего изменения списка фильмов, мс
+    private static long listModified(final Object[] values) {
+        return VersionRegistry.movies().modified;
+    }
+
+    // время последнего изменения фильма или его расписаний по идентификатору из второго параметра, мс
+    private static long detailsModified(final Object[] values) {
+        return Math.max(
+            VersionRegistry.movie((int) values[1]).modified,
+            VersionRegistry.schedules((int) values[1]).modified
+        );
+    }
+
     // название
     @JsonProperty(value = "title", required = true)
     public final String title;
@@ -82,98 +266,274 @@ public class MovieModel extends CommonModel {
 
     // подсчет количества записей в БД
     public static int count() throws SQLException {
-        int cnt = CommonModel.dslContext
-            .selectCount()
-            .from(MovieModel.TABLE_MOVIES)
-            .fetchOne(0, int.class);
+        int cnt = MovieModel.COUNT.fetchValue(int.class);
         return cnt;
     }
 
-    // проверка существования в БД записи с заданным идентификатором
+    // проверка существования записи с заданным идентификатором: по индексу, а при его неопределённости -- в БД
     public static boolean exists(final int id) throws SQLException {
-        int cnt = CommonModel.dslContext
-            .selectCount()
-            .from(MovieModel.TABLE_MOVIES)
-            .where(
-                field(name("id"), int.class).equal(id)
-            )
-            .fetchOne(0, int.class);
+        final Boolean known = MovieModel.INDEX.contains(id);
+        if (known != null) {
+            return known;
+        }
+
+        int cnt = MovieModel.EXISTS.fetchValue(int.class, id);
         return cnt != 0;
     }
 
-    // чтение записи из БД по заданному идентификатору
-    public static MovieModel find(final int id) throws SQLException {
-        MovieModel result = CommonModel.dslContext
+    // отбор существующих записей из заданного множества идентификаторов:
+    // по индексу, а неопределённые -- одним запросом к БД
+    public static Set<Integer> existing(final Set<Integer> ids) throws SQLException {
+        final Set<Integer> result  = new HashSet<>(),
+                           unknown = new HashSet<>();
+
+        for (final Integer id : ids) {
+            final Boolean known = MovieModel.INDEX.contains(id);
+            if (known == null) {
+                unknown.add(id);
+            } else if (known) {
+                result.add(id);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            result.addAll(CommonModel.dslContext
+                .select(
+                    field(name("id"), int.class)
+                )
+                .from(MovieModel.TABLE_MOVIES)
+                .where(
+                    field(name("id"), int.class).in(unknown)
+                )
+                .fetch(0, int.class));
+        }
+
+        return result;
+    }
+
+    // перебор идентификаторов всех записей в БД
+    static void scanIds(final IntConsumer consumer) throws SQLException {
+        try (Cursor<Record1<Integer>> cur = CommonModel.dslContext
             .select(
-                field(name("id"),       int.class),
-                field(name("title"),    String.class),
-                field(name("duration"), short.class),
-                field(name("year"),     short.class)
+                field(name("id"), int.class)
             )
             .from(MovieModel.TABLE_MOVIES)
-            .where(
-                field(name("id"), int.class).equal(id)
-            )
-            .fetchOne()
-            .into(MovieModel.class);
+            .fetchLazy()) {
+            cur.forEach((rec) -> consumer.accept(rec.value1()));
+        }
+    }
+
+    // чтение записи по заданному идентификатору через кэш
+    public static MovieModel find(final int id) throws SQLException {
+        return MovieModel.CACHE.get(id, MovieModel::load);
+    }
+
+    // чтение записи из БД по заданному идентификатору
+    private static MovieModel load(final int id) throws SQLException {
+        MovieModel result = MovieModel.LOAD.fetchOneInto(MovieModel.class, id);
         return result;
     }
 
     // получить список записей из БД с постраничным выводом
     public static List<MovieModel> list(final int page, final int numb) throws SQLException {
-        List<MovieModel> result = CommonModel.dslContext
-            .select(
-                field(name("id"),       int.class),
-                field(name("title"),    String.class),
-                field(name("duration"), short.class),
-                field(name("year"),     short.class)
-            )
-            .from(MovieModel.TABLE_MOVIES)
-            .orderBy(
-                field(name("year"), short.class).desc()
-            )
-            .limit(numb)
-            .offset((page - 1) * numb)
-            .fetchInto(MovieModel.class);
+        List<MovieModel> result = MovieModel.LIST.fetchInto(MovieModel.class, numb, (page - 1) * numb);
         return result;
     }
 
-    // удаление записи из БД по заданному идентификатору
-    public static void kill(final int id) throws SQLException {
-        CommonModel.dslContext
-            .deleteFrom(MovieModel.TABLE_MOVIES)
-            .where(
-                field(name("id"), int.class).equal(id)
-            )
-            .execute();
+    // получить список записей из БД, следующих за заданным курсором (null -- с начала)
+    public static List<MovieModel> seek(final PageCursor after, final int numb) throws SQLException {
+        List<MovieModel> result = after == null
+            ? MovieModel.SEEK_FIRST.fetchInto(MovieModel.class, numb)
+            : MovieModel.SEEK_AFTER.fetchInto(MovieModel.class, Short.parseShort(after.key), after.id, numb);
+        return result;
+    }
+
+    // чтение записи по заданному идентификатору вместе с не более чем заданным количеством
+    // ближайших сеансов, начинающихся не раньше заданного момента (null -- записи нет)
+    public static MovieDetails details(final int id, final LocalDateTime from, final int numb) throws SQLException {
+        if (CommonModel.shards == null) {
+            return MovieDetails.of(MovieModel.DETAILS.fetch(new Object[] {from, id, numb}));
+        }
+
+        // сеансы хранятся на шардах -- фильм и его сеансы читаются отдельными запросами
+        final MovieModel movie = MovieModel.LOAD.fetchOneInto(MovieModel.class, id);
+        return movie != null ? new MovieDetails(movie, ScheduleModel.upcoming(id, from, numb)) : null;
+    }
+
+    // курсор, указывающий на данную запись
+    public PageCursor cursor() {
+        return new PageCursor(String.valueOf(this.year), this.id);
     }
 
-    // сохранение данной записи в БД
-    public void save() throws SQLException {
+    // удаление записи из БД по заданному идентификатору, возвращает признак того, что запись была удалена
+    public static boolean kill(final int id) throws SQLException {
+        int cnt = MovieModel.DELETE.execute(id);
+
+        // на шарде сеансы удалённого фильма удаляются отдельно
+        if (cnt != 0) {
+            ScheduleModel.killOf(id);
+        }
+
+        // сброс кэша: фильм и каскадно удалённые сеансы
+        MovieModel.CACHE.invalidate(id);
+        ScheduleModel.CACHE.invalidateIf((sch) -> sch.movieId == id);
+
+        if (cnt != 0) {
+            MovieModel.INDEX.remove(id);
+            CounterRegistry.movieKilled(id);
+            VersionRegistry.movieKilled(id);
+        }
+
+        return cnt != 0;
+    }
+
+    // запрос на добавление данной записи в БД
+    private Query insertQuery() {
+        return MovieModel.INSERT.query(this.title, this.duration, this.year);
+    }
+
+    // пакетное сохранение новых записей в БД в одной транзакции, возвращает идентификаторы созданных записей
+    public static int[] saveAll(final List<MovieModel> movies) throws SQLException {
+        final List<Query> queries = new ArrayList<>(movies.size());
+        for (final MovieModel movie : movies) {
+            queries.add(movie.insertQuery());
+        }
+
+        final int[] ids = CommonModel.insertAndGetIds(queries);
+        for (final int id : ids) {
+            if (id != 0) {
+                MovieModel.INDEX.add(id);
+                CounterRegistry.movieCreated();
+                VersionRegistry.movieChanged(id);
+            }
+        }
+
+        return ids;
+    }
+
+    // сохранение данной записи в БД, возвращает идентификатор созданной или изменённой записи (0 -- записи нет)
+    public int save() throws SQLException {
         if (this.id == 0) { // создание новой
-            CommonModel.dslContext
-                .insertInto(
-                    MovieModel.TABLE_MOVIES,
-                    field(name("title"),    String.class),
-                    field(name("duration"), short.class),
-                    field(name("year"),     short.class)
-                )
-                .values(
-                    this.title,
-                    this.duration,
-                    this.year
-                )
-                .execute();
+            int id = MovieModel.INSERT.insert(this.title, this.duration, this.year);
+
+            if (id != 0) {
+                MovieModel.INDEX.add(id);
+                CounterRegistry.movieCreated();
+                VersionRegistry.movieChanged(id);
+            }
+            return id;
         } else { // изменение ранее созданной
-            CommonModel.dslContext
-                .update(MovieModel.TABLE_MOVIES)
-                .set(field(name("title"),    String.class), this.title)
-                .set(field(name("duration"), short.class),  this.duration)
-                .set(field(name("year"),     short.class),  this.year)
-                .where(
-                    field(name("id"), int.class).equal(this.id)
-                )
-                .execute();
-        };
+            int cnt = MovieModel.UPDATE.execute(this.title, this.duration, this.year, this.id);
+
+            MovieModel.CACHE.invalidate(this.id);
+
+            if (cnt != 0) {
+                VersionRegistry.movieChanged(this.id);
+            }
+
+            return cnt != 0 ? this.id : 0;
+        }
+    }
+
+    // неблокирующие варианты операций модели через R2DBC; счётчики, индекс идентификаторов
+    // и кэш записей поддерживаются так же, как в блокирующих операциях
+    public static final class Reactive {
+        // конструктор закрыт
+        private Reactive() {}
+
+        // проверка существования записи с заданным идентификатором: по индексу, а при его неопределённости -- в БД
+        public static Mono<Boolean> exists(final int id) {
+            final Boolean known = MovieModel.INDEX.contains(id);
+            if (known != null) {
+                return Mono.just(known);
+            }
+
+            return MovieModel.EXISTS
+                .publishValue(Integer.class, id)
+                .map((cnt) -> cnt != 0);
+        }
+
+        // чтение записи по заданному идентификатору через кэш (пусто -- записи нет); прочитанная запись
+        // помещается в кэш, только если за время чтения записи модели не сбрасывались
+        public static Mono<MovieModel> find(final int id) {
+            final MovieModel cached = MovieModel.CACHE.peek(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+
+            return Mono.defer(() -> {
+                final long generation = MovieModel.CACHE.generation();
+
+                return MovieModel.LOAD
+                    .publishOneInto(MovieModel.class, id)
+                    .doOnNext((movie) -> MovieModel.CACHE.put(id, movie, generation));
+            });
+        }
+
+        // чтение записи вместе с ближайшими сеансами (пусто -- записи нет)
+        public static Mono<MovieDetails> details(final int id, final LocalDateTime from, final int numb) {
+            return MovieModel.DETAILS
+                .publishRecords(from, id, numb)
+                .collectList()
+                .flatMap((records) -> Mono.justOrEmpty(MovieDetails.of(records)));
+        }
+
+        // получить список записей из БД с постраничным выводом
+        public static Flux<MovieModel> list(final int page, final int numb) {
+            return MovieModel.LIST.publishInto(MovieModel.class, numb, (page - 1) * numb);
+        }
+
+        // получить список записей из БД, следующих за заданным курсором (null -- с начала)
+        public static Flux<MovieModel> seek(final PageCursor after, final int numb) {
+            return after == null
+                ? MovieModel.SEEK_FIRST.publishInto(MovieModel.class, numb)
+                : Flux.defer(() -> MovieModel.SEEK_AFTER.publishInto(MovieModel.class, Short.parseShort(after.key), after.id, numb));
+        }
+
+        // удаление записи из БД по заданному идентификатору, возвращает признак того, что запись была удалена
+        public static Mono<Boolean> kill(final int id) {
+            return MovieModel.DELETE
+                .publishUpdate(id)
+                .map((cnt) -> {
+                    // сброс кэша: фильм и каскадно удалённые сеансы
+                    MovieModel.CACHE.invalidate(id);
+                    ScheduleModel.CACHE.invalidateIf((sch) -> sch.movieId == id);
+
+                    if (cnt != 0) {
+                        MovieModel.INDEX.remove(id);
+                        CounterRegistry.movieKilled(id);
+                        VersionRegistry.movieKilled(id);
+                    }
+
+                    return cnt != 0;
+                });
+        }
+
+        // сохранение записи в БД, возвращает идентификатор созданной или изменённой записи (0 -- записи нет)
+        public static Mono<Integer> save(final MovieModel movie) {
+            if (movie.id == 0) { // создание новой
+                return MovieModel.INSERT
+                    .publishInsert(movie.title, movie.duration, movie.year)
+                    .doOnNext((id) -> {
+                        if (id != 0) {
+                            MovieModel.INDEX.add(id);
+                            CounterRegistry.movieCreated();
+                            VersionRegistry.movieChanged(id);
+                        }
+                    });
+            } else { // изменение ранее созданной
+                return MovieModel.UPDATE
+                    .publishUpdate(movie.title, movie.duration, movie.year, movie.id)
+                    .map((cnt) -> {
+                        MovieModel.CACHE.invalidate(movie.id);
+
+                        if (cnt != 0) {
+                            VersionRegistry.movieChanged(movie.id);
+                        }
+
+                        return cnt != 0 ? movie.id : 0;
+                    });
+            }
+        }
     }
 }
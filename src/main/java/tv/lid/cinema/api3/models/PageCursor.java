@@ -0,0 +1,41 @@
+package tv.lid.cinema.api3.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// класс курсора постраничного вывода: ключ сортировки и идентификатор последней выданной записи
+public final class PageCursor {
+    // разделитель ключа и идентификатора в закодированном курсоре
+    private static final char SEPARATOR = '|';
+
+    // значение ключа сортировки
+    public final String key;
+
+    // идентификатор записи
+    public final int id;
+
+    // конструктор
+    public PageCursor(final String key, final int id) {
+        this.key = key;
+        this.id  = id;
+    }
+
+    // кодирование курсора в непрозрачную для клиента строку
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            (this.key + PageCursor.SEPARATOR + this.id).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    // раскодирование курсора из строки, полученной от клиента
+    public static PageCursor decode(final String token) throws IllegalArgumentException {
+        final String str = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        final int    pos = str.lastIndexOf(PageCursor.SEPARATOR);
+
+        if (pos < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        return new PageCursor(str.substring(0, pos), Integer.parseInt(str.substring(pos + 1)));
+    }
+}
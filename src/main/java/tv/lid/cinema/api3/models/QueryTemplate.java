@@ -0,0 +1,459 @@
+package tv.lid.cinema.api3.models;
+
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.r2dbc.spi.Row;
+import org.reactivestreams.Publisher;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.jooq.impl.DSL.*;
+import org.jooq.Converter;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Param;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.ResultQuery;
+import org.jooq.SQLDialect;
+import org.jooq.Select;
+import org.jooq.tools.Convert;
+
+import tv.lid.cinema.api3.storages.ReplicaRouter;
+import tv.lid.cinema.api3.utils.Histogram;
+import tv.lid.cinema.api3.utils.Metrics;
+
+// класс шаблона запроса модели: запрос описывается один раз построителем, а выполняется
+// либо построением заново на каждый вызов (динамический режим), либо по SQL, выведенному
+// из него один раз, с передачей в подготовленное выражение только значений параметров
+final class QueryTemplate {
+    // метка параметра в SQL, выведенном с именованными параметрами
+    private static final Pattern PARAM = Pattern.compile("(?<![\\w:]):(\\d+)");
+
+    // аргументы построителя: значения либо пронумерованные именованные параметры
+    static final class Args {
+        private final Object[] values; // значения (null -- построение шаблона)
+
+        // конструктор
+        private Args(final Object[] values) {
+            this.values = values;
+        }
+
+        // аргумент с заданным номером
+        <T> Param<T> get(final int index, final Class<T> type) {
+            return this.values == null
+                ? param(String.valueOf(index), type)
+                : val(this.values[index], type);
+        }
+
+        // аргумент с заданным номером и типом данных (в том числе с конвертером)
+        <T> Param<T> get(final int index, final DataType<T> type) {
+            return this.values == null
+                ? param(String.valueOf(index), type)
+                : val(this.values[index], type);
+        }
+    }
+
+    // построитель запроса по аргументам
+    @FunctionalInterface
+    interface Builder {
+        Query build(final QueryTemplate.Args args);
+    }
+
+    // SQL, выведенный один раз
+    private static final class Compiled {
+        private final String        sql;    // текст запроса с "?" вместо параметров
+        private final String        rsql;   // текст запроса с метками параметров R2DBC
+        private final int[]         args;   // номер аргумента для каждого "?"
+        private final DataType<?>[] types;  // тип данных для каждого "?"
+        private final Field<?>[]    fields; // поля результата (null -- определяются по метаданным)
+
+        // конструктор
+        private Compiled(final Query query) {
+            final Matcher           mat   = QueryTemplate.PARAM.matcher(CommonModel.dslContext.renderNamedParams(query));
+            final StringBuffer      sql   = new StringBuffer(),
+                                    rsql  = new StringBuffer();
+            final boolean           mysql = CommonModel.dslContext.dialect().family() == SQLDialect.MYSQL;
+            final List<Integer>     args  = new ArrayList<>();
+            final List<DataType<?>> types = new ArrayList<>();
+
+            while (mat.find()) {
+                args.add(Integer.parseInt(mat.group(1)));
+                types.add(query.getParam(mat.group(1)).getDataType());
+                mat.appendReplacement(sql, "?");
+            }
+            mat.appendTail(sql);
+
+            // драйверы R2DBC для H2 и PostgreSQL ждут нумерованные метки $1, $2, ..., для MySQL -- "?"
+            mat.reset();
+            for (int i = 1; mat.find(); ++i) {
+                mat.appendReplacement(rsql, mysql ? "?" : "\\$" + i);
+            }
+            mat.appendTail(rsql);
+
+            this.sql    = sql.toString();
+            this.rsql   = rsql.toString();
+            this.args   = args.stream().mapToInt(Integer::intValue).toArray();
+            this.types  = types.toArray(new DataType<?>[0]);
+            this.fields = query instanceof Select
+                ? ((Select<?>) query).getSelect().toArray(new Field<?>[0])
+                : null;
+        }
+
+        // установка параметров подготовленного выражения
+        @SuppressWarnings("unchecked")
+        private void bind(final PreparedStatement stmt, final Object[] values) throws SQLException {
+            for (int i = 0; i < this.args.length; ++i) {
+                final Object value = values[this.args[i]];
+
+                stmt.setObject(
+                    i + 1,
+                    value == null ? null : ((Converter<Object, Object>) this.types[i].getConverter()).to(value)
+                );
+            }
+        }
+
+        // выражение R2DBC с установленными параметрами
+        @SuppressWarnings("unchecked")
+        private io.r2dbc.spi.Statement statement(final io.r2dbc.spi.Connection conn, final Object[] values) {
+            final io.r2dbc.spi.Statement stmt = conn.createStatement(this.rsql);
+
+            for (int i = 0; i < this.args.length; ++i) {
+                final Converter<Object, Object> cnv   = (Converter<Object, Object>) this.types[i].getConverter();
+                final Object                    value = values[this.args[i]];
+
+                if (value == null) {
+                    stmt.bindNull(i, cnv.fromType());
+                } else {
+                    stmt.bind(i, cnv.to(value));
+                }
+            }
+            return stmt;
+        }
+
+        // запись jOOQ из строки результата R2DBC; значения приводятся к типам полей через их конвертеры
+        @SuppressWarnings("unchecked")
+        private Record record(final Row row) {
+            final Record rec = CommonModel.dslContext.newRecord(this.fields);
+
+            for (int i = 0; i < this.fields.length; ++i) {
+                final Converter<Object, Object> cnv = (Converter<Object, Object>) this.fields[i].getConverter();
+
+                rec.set((Field<Object>) this.fields[i], cnv.from(Convert.convert(row.get(i), cnv.fromType())));
+            }
+            return rec;
+        }
+    }
+
+    // построитель
+    private final QueryTemplate.Builder builder;
+
+    // SQL, выводится при первом выполнении в режиме шаблонов
+    private volatile QueryTemplate.Compiled compiled = null;
+
+    // время выполнения, мкс (null -- шаблону не назначено имя и время не учитывается)
+    private volatile Histogram timing = null;
+
+    // время последнего изменения читаемых данных по значениям параметров, мс
+    // (null -- запрос выполняется только в основной БД)
+    private final ToLongFunction<Object[]> modified;
+
+    // конструктор #1 -- запрос на чтение, который может выполняться на реплике
+    QueryTemplate(final ToLongFunction<Object[]> modified, final QueryTemplate.Builder builder) {
+        this.builder  = builder;
+        this.modified = modified;
+    }
+
+    // конструктор #2 -- запрос, выполняемый только в основной БД
+    QueryTemplate(final QueryTemplate.Builder builder) {
+        this(null, builder);
+    }
+
+    // назначение имён шаблонам, объявленным статическими полями заданных классов, для учёта
+    // времени выполнения по каждому шаблону; имя шаблона -- "Класс.ПОЛЕ"
+    static void name(final Class<?>... owners) {
+        for (final Class<?> owner : owners) {
+            for (final java.lang.reflect.Field field : owner.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) || field.getType() != QueryTemplate.class) {
+                    continue;
+                }
+
+                try {
+                    field.setAccessible(true);
+                    ((QueryTemplate) field.get(null)).timing = Metrics.query(owner.getSimpleName() + "." + field.getName());
+                } catch (IllegalAccessException | SecurityException exc) {
+                    // поле недоступно -- время выполнения шаблона не учитывается
+                }
+            }
+        }
+    }
+
+    // учёт времени выполнения, начатого в заданный момент System.nanoTime()
+    private void record(final long start) {
+        final Histogram timing = this.timing;
+        if (timing != null) {
+            timing.record(Metrics.micros(start));
+        }
+    }
+
+    // SQL шаблона; повторный вывод при гонке безвреден
+    private QueryTemplate.Compiled compiled() {
+        QueryTemplate.Compiled result = this.compiled;
+        if (result == null) {
+            result = new QueryTemplate.Compiled(this.builder.build(new QueryTemplate.Args(null)));
+            this.compiled = result;
+        }
+        return result;
+    }
+
+    // запрос jOOQ по аргументам построителя -- для вложения в другой шаблон
+    Query build(final QueryTemplate.Args args) {
+        return this.builder.build(args);
+    }
+
+    // запрос jOOQ с заданными значениями параметров
+    Query query(final Object... values) {
+        return this.builder.build(new QueryTemplate.Args(values));
+    }
+
+    // выполнение запроса, возвращающего записи: на реплике, если шаблон это допускает и реплика выбрана,
+    // при ошибке реплики -- повторно в основной БД
+    Result<? extends Record> fetch(final Object[] values) throws SQLException {
+        final long start = System.nanoTime();
+
+        try {
+            final ReplicaRouter      router = CommonModel.replicas;
+            final ReplicaRouter.Node node   = router != null && this.modified != null
+                ? router.reader(this.modified.applyAsLong(values))
+                : null;
+
+            if (node != null) {
+                try {
+                    final Result<? extends Record> result = this.select(node.dslContext(), values);
+                    node.succeeded(start);
+                    return result;
+                } catch (SQLException | RuntimeException exc) {
+                    node.failed();
+                    router.fallback();
+                }
+            }
+
+            return this.select(CommonModel.dslContext, values);
+        } finally {
+            this.record(start);
+        }
+    }
+
+    // выполнение запроса, возвращающего записи, в заданной БД (на шарде) -- без выбора реплики
+    Result<? extends Record> fetch(final DSLContext dsl, final Object[] values) throws SQLException {
+        final long start = System.nanoTime();
+
+        try {
+            return this.select(dsl, values);
+        } finally {
+            this.record(start);
+        }
+    }
+
+    // выполнение запроса, возвращающего записи, в заданной БД
+    private Result<? extends Record> select(final DSLContext dsl, final Object[] values) throws SQLException {
+        if (!CommonModel.templates) {
+            return dsl.fetch((ResultQuery<?>) this.query(values));
+        }
+
+        final QueryTemplate.Compiled cmp = this.compiled();
+
+        return dsl.<Result<Record>>connectionResult((Connection conn) -> {
+            try (PreparedStatement stmt = conn.prepareStatement(cmp.sql)) {
+                cmp.bind(stmt, values);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return cmp.fields != null
+                        ? dsl.fetch(rs, cmp.fields)
+                        : dsl.fetch(rs);
+                }
+            }
+        });
+    }
+
+    // список записей, преобразованных в заданный тип
+    <E> List<E> fetchInto(final Class<E> type, final Object... values) throws SQLException {
+        return this.fetch(values).into(type);
+    }
+
+    // первая запись, преобразованная в заданный тип (null -- записей нет)
+    <E> E fetchOneInto(final Class<E> type, final Object... values) throws SQLException {
+        final Result<? extends Record> result = this.fetch(values);
+        return result.isEmpty() ? null : result.get(0).into(type);
+    }
+
+    // значение первого поля первой записи (null -- записей нет)
+    <T> T fetchValue(final Class<T> type, final Object... values) throws SQLException {
+        final Result<? extends Record> result = this.fetch(values);
+        return result.isEmpty() ? null : result.get(0).get(0, type);
+    }
+
+    // список записей, преобразованных в заданный тип, из заданной БД
+    <E> List<E> fetchInto(final DSLContext dsl, final Class<E> type, final Object... values) throws SQLException {
+        return this.fetch(dsl, values).into(type);
+    }
+
+    // первая запись, преобразованная в заданный тип, из заданной БД (null -- записей нет)
+    <E> E fetchOneInto(final DSLContext dsl, final Class<E> type, final Object... values) throws SQLException {
+        final Result<? extends Record> result = this.fetch(dsl, values);
+        return result.isEmpty() ? null : result.get(0).into(type);
+    }
+
+    // значение первого поля первой записи из заданной БД (null -- записей нет)
+    <T> T fetchValue(final DSLContext dsl, final Class<T> type, final Object... values) throws SQLException {
+        final Result<? extends Record> result = this.fetch(dsl, values);
+        return result.isEmpty() ? null : result.get(0).get(0, type);
+    }
+
+    // выполнение запроса, изменяющего данные, возвращает количество затронутых записей
+    int execute(final Object... values) throws SQLException {
+        return this.execute(CommonModel.dslContext, values);
+    }
+
+    // выполнение запроса, изменяющего данные, в заданной БД, возвращает количество затронутых записей
+    int execute(final DSLContext dsl, final Object... values) throws SQLException {
+        final long start = System.nanoTime();
+
+        try {
+            if (!CommonModel.templates) {
+                final Query query = this.query(values);
+                dsl.attach(query);
+                return query.execute();
+            }
+
+            final QueryTemplate.Compiled cmp = this.compiled();
+
+            return dsl.connectionResult((Connection conn) -> {
+                try (PreparedStatement stmt = conn.prepareStatement(cmp.sql)) {
+                    cmp.bind(stmt, values);
+                    return stmt.executeUpdate();
+                }
+            });
+        } finally {
+            this.record(start);
+        }
+    }
+
+    // неблокирующее выполнение через R2DBC: соединение берётся из пула на время запроса
+    private <T> Flux<T> publish(
+        final Object[] values,
+        final Function<io.r2dbc.spi.Statement, io.r2dbc.spi.Statement> prepare,
+        final Function<io.r2dbc.spi.Result, Publisher<T>>               read
+    ) {
+        // время учитывается от подписки до завершения либо отмены (например, после первой записи)
+        return Flux.defer(() -> {
+            final long start = System.nanoTime();
+
+            return Flux.usingWhen(
+                CommonModel.reactive.connection(),
+                (io.r2dbc.spi.Connection conn) -> Flux
+                    .from(prepare.apply(this.compiled().statement(conn, values)).execute())
+                    .concatMap(read::apply),
+                io.r2dbc.spi.Connection::close
+            ).doFinally((signal) -> this.record(start));
+        });
+    }
+
+    // неблокирующий список записей
+    Flux<Record> publishRecords(final Object... values) {
+        return this.publish(
+            values,
+            (stmt) -> stmt,
+            (res) -> res.map((row, meta) -> this.compiled().record(row))
+        );
+    }
+
+    // неблокирующий список записей, преобразованных в заданный тип
+    <E> Flux<E> publishInto(final Class<E> type, final Object... values) {
+        return this.publish(
+            values,
+            (stmt) -> stmt,
+            (res) -> res.map((row, meta) -> this.compiled().record(row).into(type))
+        );
+    }
+
+    // неблокирующая первая запись, преобразованная в заданный тип (пусто -- записей нет)
+    <E> Mono<E> publishOneInto(final Class<E> type, final Object... values) {
+        return this.publishInto(type, values).next();
+    }
+
+    // неблокирующее значение первого поля первой записи (пусто -- записей нет)
+    <T> Mono<T> publishValue(final Class<T> type, final Object... values) {
+        return this.publish(
+            values,
+            (stmt) -> stmt,
+            (res) -> res.map((row, meta) -> Convert.convert(row.get(0), type))
+        ).next();
+    }
+
+    // неблокирующее выполнение запроса, изменяющего данные, возвращает количество затронутых записей
+    Mono<Integer> publishUpdate(final Object... values) {
+        return this.publish(
+            values,
+            (stmt) -> stmt,
+            io.r2dbc.spi.Result::getRowsUpdated
+        ).reduce(0, Integer::sum);
+    }
+
+    // неблокирующее выполнение запроса INSERT, возвращает сгенерированный идентификатор записи (0 -- запись не создана)
+    Mono<Integer> publishInsert(final Object... values) {
+        return this.publish(
+            values,
+            (stmt) -> stmt.returnGeneratedValues("id"),
+            (res) -> res.map((row, meta) -> Convert.convert(row.get(0), Integer.class))
+        ).next().defaultIfEmpty(0);
+    }
+
+    // выполнение запроса INSERT, возвращает сгенерированный идентификатор записи (0 -- запись не создана)
+    int insert(final Object... values) throws SQLException {
+        return this.insert(CommonModel.dslContext, values);
+    }
+
+    // выполнение запроса INSERT в заданной БД, возвращает сгенерированный идентификатор записи (0 -- запись не создана)
+    int insert(final DSLContext dsl, final Object... values) throws SQLException {
+        final long start = System.nanoTime();
+
+        try {
+            if (!CommonModel.templates) {
+                return CommonModel.insertAndGetId(dsl, this.query(values));
+            }
+
+            final QueryTemplate.Compiled cmp = this.compiled();
+
+            return dsl.connectionResult((Connection conn) -> {
+                try (PreparedStatement stmt = conn.prepareStatement(cmp.sql, Statement.RETURN_GENERATED_KEYS)) {
+                    cmp.bind(stmt, values);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return 0;
+                    }
+
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        return keys.next() ? keys.getInt(1) : 0;
+                    }
+                }
+            });
+        } finally {
+            this.record(start);
+        }
+    }
+}
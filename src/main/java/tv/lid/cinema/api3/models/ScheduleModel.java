@@ -2,23 +2,379 @@ package tv.lid.cinema.api3.models;
 
 import java.beans.ConstructorProperties;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import static org.jooq.impl.DSL.*;
+import org.jooq.Condition;
+import org.jooq.Converter;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.InsertValuesStep4;
+import org.jooq.Query;
 import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record4;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
 import org.jooq.Table;
+import org.jooq.impl.DSL;
 import org.jooq.impl.SQLDataType;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import tv.lid.cinema.api3.storages.ShardRouter;
+import tv.lid.cinema.api3.utils.IntIntMap;
+
 // класс модели киносеанса
 @JsonIgnoreProperties(value = "movieId", allowSetters = true)
 public class ScheduleModel extends CommonModel {
     // имя SQL-таблицы с сеансами
     private static final Table<Record> TABLE_SCHEDULES = table(name("api3_schedules"));
 
+    // формат даты и времени начала при выводе
+    private static final DateTimeFormatter FORMAT_DATE_TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+
+    // допустимые форматы даты и времени начала при вводе: секунды необязательны, разделитель -- пробел или 'T'
+    private static final DateTimeFormatter PARSE_DATE_TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd['T'][' ']HH:mm[:ss]");
+
+    // тип столбца даты и времени начала: в БД -- TIMESTAMP, в модели -- строка в формате вывода
+    static final DataType<String> DATE_TIME = SQLDataType.LOCALDATETIME.asConvertedDataType(
+        Converter.ofNullable(
+            LocalDateTime.class,
+            String.class,
+            (final LocalDateTime value) -> value.format(ScheduleModel.FORMAT_DATE_TIME),
+            (final String value) -> LocalDateTime.parse(value, ScheduleModel.PARSE_DATE_TIME)
+        )
+    );
+
+    // размер порции строк, получаемых от сервера БД при потоковом чтении
+    private static final int FETCH_SIZE = 500;
+
+    // кэш записей
+    static final EntityCache<ScheduleModel> CACHE = new EntityCache<>();
+
+    // запрос количества записей по идентификатору фильма: (movie_id)
+    private static final QueryTemplate COUNT = new QueryTemplate((args) -> CommonModel.dslContext
+        .selectCount()
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос количества записей с заданным идентификатором: (id)
+    private static final QueryTemplate EXISTS = new QueryTemplate(ScheduleModel::recordModified, (args) -> CommonModel.dslContext
+        .selectCount()
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос идентификатора фильма записи: (id)
+    private static final QueryTemplate MOVIE_ID = new QueryTemplate((args) -> CommonModel.dslContext
+        .select(
+            field(name("movie_id"), Integer.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос записи по идентификатору: (id)
+    private static final QueryTemplate LOAD = new QueryTemplate(ScheduleModel::recordModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос страницы записей фильма: (movie_id, limit, offset)
+    private static final QueryTemplate LIST = new QueryTemplate(ScheduleModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+        .orderBy(
+            field(name("date_time"), ScheduleModel.DATE_TIME).desc()
+        )
+        .limit(args.get(1, int.class))
+        .offset(args.get(2, int.class))
+    );
+
+    // запрос первой страницы записей фильма по курсору: (movie_id, limit)
+    private static final QueryTemplate SEEK_FIRST = new QueryTemplate(ScheduleModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+        .orderBy(
+            field(name("date_time"), ScheduleModel.DATE_TIME).desc(),
+            field(name("id"),        int.class).desc()
+        )
+        .limit(args.get(1, int.class))
+    );
+
+    // запрос страницы записей фильма, следующих за курсором: (movie_id, date_time, id, limit)
+    private static final QueryTemplate SEEK_AFTER = new QueryTemplate(ScheduleModel::listModified, (args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+        .and(
+            row(
+                field(name("date_time"), ScheduleModel.DATE_TIME),
+                field(name("id"),        int.class)
+            ).lessThan(
+                args.get(1, ScheduleModel.DATE_TIME),
+                args.get(2, int.class)
+            )
+        )
+        .orderBy(
+            field(name("date_time"), ScheduleModel.DATE_TIME).desc(),
+            field(name("id"),        int.class).desc()
+        )
+        .limit(args.get(3, int.class))
+    );
+
+    // запрос ближайших сеансов фильма, начинающихся не раньше заданного момента: (movie_id, from, limit)
+    private static final QueryTemplate UPCOMING = new QueryTemplate((args) -> CommonModel.dslContext
+        .select(
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .from(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+        .and(
+            field(name("date_time"), SQLDataType.LOCALDATETIME).greaterOrEqual(args.get(1, SQLDataType.LOCALDATETIME))
+        )
+        .orderBy(
+            field(name("date_time"), SQLDataType.LOCALDATETIME).asc(),
+            field(name("id"),        int.class).asc()
+        )
+        .limit(args.get(2, int.class))
+    );
+
+    // запрос на добавление записи: (movie_id, date_time, auditorium)
+    private static final QueryTemplate INSERT = new QueryTemplate((args) -> CommonModel.dslContext
+        .insertInto(
+            ScheduleModel.TABLE_SCHEDULES,
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .values(
+            args.get(0, int.class),
+            args.get(1, ScheduleModel.DATE_TIME),
+            args.get(2, byte.class)
+        )
+    );
+
+    // запрос на добавление записи с заданным идентификатором -- при переносе между шардами: (id, movie_id, date_time, auditorium)
+    private static final QueryTemplate INSERT_WITH_ID = new QueryTemplate((args) -> CommonModel.dslContext
+        .insertInto(
+            ScheduleModel.TABLE_SCHEDULES,
+            field(name("id"),         int.class),
+            field(name("movie_id"),   int.class),
+            field(name("date_time"),  ScheduleModel.DATE_TIME),
+            field(name("auditorium"), byte.class)
+        )
+        .values(
+            args.get(0, int.class),
+            args.get(1, int.class),
+            args.get(2, ScheduleModel.DATE_TIME),
+            args.get(3, byte.class)
+        )
+    );
+
+    // запрос на изменение записи: (movie_id, date_time, auditorium, id)
+    private static final QueryTemplate UPDATE = new QueryTemplate((args) -> CommonModel.dslContext
+        .update(ScheduleModel.TABLE_SCHEDULES)
+        .set(field(name("movie_id"),   int.class),               args.get(0, int.class))
+        .set(field(name("date_time"),  ScheduleModel.DATE_TIME), args.get(1, ScheduleModel.DATE_TIME))
+        .set(field(name("auditorium"), byte.class),              args.get(2, byte.class))
+        .where(
+            field(name("id"), int.class).equal(args.get(3, int.class))
+        )
+    );
+
+    // запрос на изменение записи без переноса к другому фильму: (movie_id, date_time, auditorium, id)
+    private static final QueryTemplate UPDATE_SAME_MOVIE = new QueryTemplate((args) -> CommonModel.dslContext
+        .update(ScheduleModel.TABLE_SCHEDULES)
+        .set(field(name("movie_id"),   int.class),               args.get(0, int.class))
+        .set(field(name("date_time"),  ScheduleModel.DATE_TIME), args.get(1, ScheduleModel.DATE_TIME))
+        .set(field(name("auditorium"), byte.class),              args.get(2, byte.class))
+        .where(
+            field(name("id"), int.class).equal(args.get(3, int.class))
+        )
+        .and(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос на удаление записи: (id)
+    private static final QueryTemplate DELETE = new QueryTemplate((args) -> CommonModel.dslContext
+        .deleteFrom(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос на удаление записей фильма: (movie_id)
+    private static final QueryTemplate DELETE_OF = new QueryTemplate((args) -> CommonModel.dslContext
+        .deleteFrom(ScheduleModel.TABLE_SCHEDULES)
+        .where(
+            field(name("movie_id"), int.class).equal(args.get(0, int.class))
+        )
+    );
+
+    // запрос на удаление записи с получением идентификатора её фильма, только H2 и PostgreSQL: (id)
+    private static final QueryTemplate DELETE_RETURNING = new QueryTemplate((args) ->
+        CommonModel.dslContext.dialect().family() == SQLDialect.H2
+            ? CommonModel.dslContext.resultQuery(
+                "select {0} from old table ({1})",
+                field(name("movie_id")),
+                ScheduleModel.DELETE.build(args)
+            )
+            : CommonModel.dslContext.resultQuery(
+                "{0} returning {1}",
+                ScheduleModel.DELETE.build(args),
+                field(name("movie_id"))
+            )
+    );
+
+    // время последнего изменения записи с идентификатором из первого параметра запроса, мс
+    private static long recordModified(final Object[] values) {
+        return VersionRegistry.schedule((int) values[0]).modified;
+    }
+
+    // время последнего изменения списка расписаний фильма из первого параметра запроса, мс
+    private static long listModified(final Object[] values) {
+        return VersionRegistry.schedules((int) values[0]).modified;
+    }
+
+    // слияние потоков записей с разных шардов, упорядоченных по времени начала и идентификатору,
+    // в один упорядоченный поток; первые записи потоков читаются при первом обращении
+    private static final class Merge implements Iterator<ScheduleModel> {
+        // порядок записей
+        private static final Comparator<ScheduleModel> ORDER = Comparator
+            .comparing((ScheduleModel sch) -> sch.dateAndTime)
+            .thenComparingInt((ScheduleModel sch) -> sch.id);
+
+        // текущая запись потока
+        private static final class Head {
+            private final ScheduleModel           value; // запись
+            private final Iterator<ScheduleModel> rest;  // остальные записи потока
+
+            // конструктор
+            private Head(final ScheduleModel value, final Iterator<ScheduleModel> rest) {
+                this.value = value;
+                this.rest  = rest;
+            }
+        }
+
+        // исходные потоки
+        private final List<Stream<ScheduleModel>> streams;
+
+        // текущие записи потоков по порядку (null -- ещё не прочитаны)
+        private PriorityQueue<Merge.Head> heads = null;
+
+        // конструктор
+        private Merge(final List<Stream<ScheduleModel>> streams) {
+            this.streams = streams;
+        }
+
+        // текущие записи потоков
+        private PriorityQueue<Merge.Head> heads() {
+            if (this.heads == null) {
+                this.heads = new PriorityQueue<>(
+                    Math.max(this.streams.size(), 1),
+                    (Merge.Head a, Merge.Head b) -> Merge.ORDER.compare(a.value, b.value)
+                );
+
+                for (final Stream<ScheduleModel> stream : this.streams) {
+                    final Iterator<ScheduleModel> rest = stream.iterator();
+                    if (rest.hasNext()) {
+                        this.heads.add(new Merge.Head(rest.next(), rest));
+                    }
+                }
+            }
+            return this.heads;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads().isEmpty();
+        }
+
+        @Override
+        public ScheduleModel next() {
+            final Merge.Head head = this.heads().poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+
+            if (head.rest.hasNext()) {
+                this.heads.add(new Merge.Head(head.rest.next(), head.rest));
+            }
+            return head.value;
+        }
+    }
+
+    // примесь аннотаций для вывода сеансов вместе с идентификатором фильма -- в списке сеансов
+    // всех фильмов иначе не понять, к какому фильму относится сеанс
+    @JsonIgnoreProperties(value = {}, allowSetters = true)
+    public static abstract class WithMovieId {}
+
     // идентификатор фильма
     @JsonProperty(value = "movieId", required = true)
     public final int movieId;
@@ -56,13 +412,31 @@ public class ScheduleModel extends CommonModel {
         this(0, movieId, dateAndTime, auditorium);
     }
 
+    // разбор даты и времени в одном из допустимых форматов (null -- строка некорректна)
+    public static LocalDateTime parseDateTime(final String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return LocalDateTime.parse(value, ScheduleModel.PARSE_DATE_TIME);
+        } catch (DateTimeParseException exc) {
+            return null;
+        }
+    }
+
+    // проверка корректности даты и времени начала
+    public boolean hasValidDateAndTime() {
+        return ScheduleModel.parseDateTime(this.dateAndTime) != null;
+    }
+
     // создание таблицы в БД
     public static void createTable() throws SQLException {
         CommonModel.dslContext
             .createTableIfNotExists​(ScheduleModel.TABLE_SCHEDULES)
             .column("id",         SQLDataType.INTEGER.identity(true).nullable(false))
             .column("movie_id",   SQLDataType.INTEGER.nullable(false))
-            .column("date_time",  SQLDataType.VARCHAR(50).nullable(false))
+            .column("date_time",  SQLDataType.LOCALDATETIME.nullable(false))
             .column("auditorium", SQLDataType.TINYINT.nullable(false))
             .constraints(
                 primaryKey("id"),
@@ -78,6 +452,61 @@ public class ScheduleModel extends CommonModel {
             .execute();
     }
 
+    // создание таблицы в БД шарда: без внешнего ключа -- фильмы хранятся в основной БД; идентификаторы
+    // начинаются с номера шарда + 1 и идут с общим для всех шардов шагом, поэтому не повторяются
+    // между шардами, а по идентификатору известен шард, где запись создана (в MySQL шаг и смещение
+    // задают переменные сервера auto_increment_increment и auto_increment_offset)
+    public static void createShardTable(final DSLContext dsl, final int slot, final int stride) throws SQLException {
+        final SQLDialect family = dsl.dialect().family();
+
+        dsl
+            .createTableIfNotExists(ScheduleModel.TABLE_SCHEDULES)
+            .column("id",         SQLDataType.INTEGER.identity(family == SQLDialect.MYSQL).nullable(false))
+            .column("movie_id",   SQLDataType.INTEGER.nullable(false))
+            .column("date_time",  SQLDataType.LOCALDATETIME.nullable(false))
+            .column("auditorium", SQLDataType.TINYINT.nullable(false))
+            .constraints(
+                primaryKey("id")
+            )
+            .execute();
+
+        final String identity = "generated by default as identity (start with " + (slot + 1) + " increment by " + stride + ")";
+
+        switch (family) {
+            case MYSQL:
+                break;
+
+            case POSTGRES: // столбец становится столбцом идентификаторов, только если ещё не стал
+                if (dsl.fetchCount(
+                    table(name("information_schema", "columns")),
+                    field(name("table_schema")).equal(field("current_schema()"))
+                        .and(field(name("table_name")).equal(inline(ScheduleModel.tableName())))
+                        .and(field(name("column_name")).equal(inline("id")))
+                        .and(field(name("is_identity")).equal(inline("NO")))
+                ) != 0) {
+                    dsl.execute("alter table {0} alter column {1} add " + identity, ScheduleModel.TABLE_SCHEDULES, name("id"));
+                }
+                break;
+
+            default: // H2: у столбца идентификаторов есть последовательность
+                if (dsl.fetchCount(
+                    table(name("INFORMATION_SCHEMA", "COLUMNS")),
+                    field(name("TABLE_NAME")).equal(inline(ScheduleModel.tableName()))
+                        .and(field(name("COLUMN_NAME")).equal(inline("id")))
+                        .and(field(name("SEQUENCE_NAME")).isNull())
+                ) != 0) {
+                    dsl.execute("alter table {0} alter column {1} integer " + identity + " not null", ScheduleModel.TABLE_SCHEDULES, name("id"));
+                }
+        }
+    }
+
+    // удаление таблицы из БД шарда
+    public static void dropShardTable(final DSLContext dsl) throws SQLException {
+        dsl
+            .dropTableIfExists(ScheduleModel.TABLE_SCHEDULES)
+            .execute();
+    }
+
     // имя таблицы в БД
     public static String tableName() {
         return ScheduleModel.TABLE_SCHEDULES.getName();
@@ -85,45 +514,77 @@ public class ScheduleModel extends CommonModel {
 
     // подсчет количества записей в БД по заданному идентификатору фильма
     public static int count(final int movieId) throws SQLException {
-        int cnt = CommonModel.dslContext
-            .selectCount()
-            .from(ScheduleModel.TABLE_SCHEDULES)
-            .where(
-                field(name("movie_id"), int.class).equal(movieId)
-            )
-            .fetchOne(0, int.class);
+        final ShardRouter shards = CommonModel.shards;
+
+        int cnt = shards == null
+            ? ScheduleModel.COUNT.fetchValue(int.class, movieId)
+            : ScheduleModel.COUNT.fetchValue(shards.node(movieId).dslContext(), int.class, movieId);
         return cnt;
     }
 
-    // проверка существования в БД записи с заданным идентификатором
-    public static boolean exists(final int id) throws SQLException {
-        int cnt = CommonModel.dslContext
-            .selectCount()
-            .from(ScheduleModel.TABLE_SCHEDULES)
-            .where(
-                field(name("id"), int.class).equal(id)
-            )
-            .fetchOne(0, int.class);
-        return cnt != 0;
+    // подсчет количества записей в БД по каждому фильму
+    public static IntIntMap counts() throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+        final IntIntMap   result = new IntIntMap();
+
+        final List<Result<Record2<Integer, Integer>>> parts = shards == null
+            ? Collections.singletonList(ScheduleModel.counts(CommonModel.dslContext))
+            : shards.gather((node) -> ScheduleModel.counts(node.dslContext()));
+
+        for (final Result<Record2<Integer, Integer>> part : parts) {
+            part.forEach((rec) -> result.add(rec.value1(), rec.value2()));
+        }
+        return result;
     }
 
-    // чтение записи из БД по заданному идентификатору
-    public static ScheduleModel find(final int id) throws SQLException {
-        ScheduleModel result = CommonModel.dslContext
+    // количество записей в заданной БД по каждому фильму
+    private static Result<Record2<Integer, Integer>> counts(final DSLContext dsl) throws SQLException {
+        return dsl
             .select(
-                field(name("id"),         int.class),
-                field(name("movie_id"),   int.class),
-                field(name("date_time"),  String.class),
-                field(name("auditorium"), byte.class)
+                field(name("movie_id"), int.class),
+                DSL.count()
             )
             .from(ScheduleModel.TABLE_SCHEDULES)
-            .where(
-                field(name("id"), int.class).equal(id)
+            .groupBy(
+                field(name("movie_id"), int.class)
             )
-            .fetchOne()
-            .into(ScheduleModel.class);
+            .fetch();
+    }
+
+    // идентификатор фильма, к которому относится запись с заданным идентификатором (null -- записи нет)
+    private static Integer movieIdOf(final int id) throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        Integer result = shards == null
+            ? ScheduleModel.MOVIE_ID.fetchValue(Integer.class, id)
+            : shards.find(id, (node) -> ScheduleModel.MOVIE_ID.fetchValue(node.dslContext(), Integer.class, id));
         return result;
+    }
+
+    // проверка существования записи с заданным идентификатором
+    public static boolean exists(final int id) throws SQLException {
+        // на шардах запись ищется на шарде из её идентификатора, затем на остальных
+        if (CommonModel.shards != null) {
+            return ScheduleModel.movieIdOf(id) != null;
+        }
+
+        int cnt = ScheduleModel.EXISTS.fetchValue(int.class, id);
+        return cnt != 0;
+    }
+
+    // чтение записи по заданному идентификатору через кэш
+    public static ScheduleModel find(final int id) throws SQLException {
+        return ScheduleModel.CACHE.get(id, ScheduleModel::load);
+    }
 
+    // чтение записи из БД по заданному идентификатору
+    private static ScheduleModel load(final int id) throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        ScheduleModel result = shards == null
+            ? ScheduleModel.LOAD.fetchOneInto(ScheduleModel.class, id)
+            : shards.find(id, (node) -> ScheduleModel.LOAD.fetchOneInto(node.dslContext(), ScheduleModel.class, id));
+        return result;
     }
 
     // получить список записей из БД в соответствии с заданными параметрами
@@ -132,62 +593,640 @@ public class ScheduleModel extends CommonModel {
         final int page,
         final int numb
     ) throws SQLException {
-        List<ScheduleModel> result = CommonModel.dslContext
+        final ShardRouter shards = CommonModel.shards;
+
+        List<ScheduleModel> result = shards == null
+            ? ScheduleModel.LIST.fetchInto(ScheduleModel.class, movieId, numb, (page - 1) * numb)
+            : ScheduleModel.LIST.fetchInto(shards.node(movieId).dslContext(), ScheduleModel.class, movieId, numb, (page - 1) * numb);
+        return result;
+    }
+
+    // получить список записей из БД, следующих за заданным курсором (null -- с начала)
+    public static List<ScheduleModel> seek(
+        final int        movieId,
+        final PageCursor after,
+        final int        numb
+    ) throws SQLException {
+        if (after != null && ScheduleModel.parseDateTime(after.key) == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final ShardRouter shards = CommonModel.shards;
+
+        if (shards != null) {
+            final DSLContext dsl = shards.node(movieId).dslContext();
+
+            return after == null
+                ? ScheduleModel.SEEK_FIRST.fetchInto(dsl, ScheduleModel.class, movieId, numb)
+                : ScheduleModel.SEEK_AFTER.fetchInto(dsl, ScheduleModel.class, movieId, after.key, after.id, numb);
+        }
+
+        List<ScheduleModel> result = after == null
+            ? ScheduleModel.SEEK_FIRST.fetchInto(ScheduleModel.class, movieId, numb)
+            : ScheduleModel.SEEK_AFTER.fetchInto(ScheduleModel.class, movieId, after.key, after.id, numb);
+        return result;
+    }
+
+    // ближайшие сеансы фильма, начинающиеся не раньше заданного момента, -- для карточки фильма,
+    // когда сеансы хранятся на шардах и соединить их с фильмом в одном запросе нельзя
+    static List<ScheduleModel> upcoming(final int movieId, final LocalDateTime from, final int numb) throws SQLException {
+        return ScheduleModel.UPCOMING.fetchInto(CommonModel.shards.node(movieId).dslContext(), ScheduleModel.class, movieId, from, numb);
+    }
+
+    // поток записей всех фильмов, начинающихся в заданном промежутке времени [from, to), по возрастанию времени;
+    // при необходимости -- только в заданном зале (null -- в любом); строки читаются из БД по мере записи
+    // ответа, поток обязательно закрывать -- до этого за ним закреплено соединение с БД
+    public static Stream<ScheduleModel> range(
+        final LocalDateTime from,
+        final LocalDateTime to,
+        final Byte          auditorium
+    ) throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        if (shards == null) {
+            return ScheduleModel.range(CommonModel.dslContext, from, to, auditorium);
+        }
+
+        // запрос выполняется на всех шардах параллельно, упорядоченные потоки шардов сливаются;
+        // при ошибке на одном из шардов потоки, открытые на остальных, закрываются
+        final List<Stream<ScheduleModel>> streams = shards.gather(
+            (node) -> ScheduleModel.range(node.dslContext(), from, to, auditorium),
+            Stream::close
+        );
+
+        return StreamSupport
+            .stream(
+                Spliterators.spliteratorUnknownSize(
+                    new ScheduleModel.Merge(streams),
+                    Spliterator.ORDERED | Spliterator.NONNULL
+                ),
+                false
+            )
+            .onClose(() -> streams.forEach(Stream::close));
+    }
+
+    // поток записей заданной БД, начинающихся в заданном промежутке времени, по возрастанию времени
+    private static Stream<ScheduleModel> range(
+        final DSLContext    dsl,
+        final LocalDateTime from,
+        final LocalDateTime to,
+        final Byte          auditorium
+    ) throws SQLException {
+        final Condition cond = auditorium == null
+            ? noCondition()
+            : field(name("auditorium"), byte.class).equal(auditorium);
+
+        // MySQL отдаёт строки потоком только при особом значении размера порции
+        final int fetchSize = dsl.dialect().family() == SQLDialect.MYSQL
+            ? Integer.MIN_VALUE
+            : ScheduleModel.FETCH_SIZE;
+
+        Stream<ScheduleModel> result = dsl
             .select(
                 field(name("id"),         int.class),
                 field(name("movie_id"),   int.class),
-                field(name("date_time"),  String.class),
+                field(name("date_time"),  ScheduleModel.DATE_TIME),
                 field(name("auditorium"), byte.class)
             )
             .from(ScheduleModel.TABLE_SCHEDULES)
             .where(
-                field(name("movie_id"), int.class).equal(movieId)
+                field(name("date_time"), SQLDataType.LOCALDATETIME).greaterOrEqual(from)
             )
+            .and(
+                field(name("date_time"), SQLDataType.LOCALDATETIME).lessThan(to)
+            )
+            .and(cond)
             .orderBy(
-                field(name("date_time"), String.class).desc()
+                field(name("date_time"), ScheduleModel.DATE_TIME).asc(),
+                field(name("id"),        int.class).asc()
             )
-            .limit(numb)
-            .offset((page - 1) * numb)
-            .fetchInto(ScheduleModel.class);
+            .fetchSize(fetchSize)
+            .fetchStreamInto(ScheduleModel.class);
         return result;
     }
 
-    // удаление записи из БД по заданному идентификатору
-    public static void kill(final int id) throws SQLException {
-        CommonModel.dslContext
-            .deleteFrom(ScheduleModel.TABLE_SCHEDULES)
+    // курсор, указывающий на данную запись
+    public PageCursor cursor() {
+        return new PageCursor(this.dateAndTime, this.id);
+    }
+
+    // удаление записи с заданным идентификатором с одновременным получением идентификатора фильма
+    // удалённой записи (null -- записи нет); H2 и PostgreSQL позволяют сделать это одним запросом,
+    // в MySQL нет RETURNING и подобных ему конструкций, поэтому для него остаётся предварительная выборка
+    private static Integer deleteAndGetMovieId(final int id) throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        return shards == null
+            ? ScheduleModel.deleteAndGetMovieId(CommonModel.dslContext, id)
+            : shards.find(id, (node) -> ScheduleModel.deleteAndGetMovieId(node.dslContext(), id));
+    }
+
+    // удаление записи в заданной БД с получением идентификатора фильма удалённой записи (null -- записи нет)
+    private static Integer deleteAndGetMovieId(final DSLContext dsl, final int id) throws SQLException {
+        switch (dsl.dialect().family()) {
+            case H2:
+            case POSTGRES:
+                return ScheduleModel.DELETE_RETURNING.fetchValue(dsl, Integer.class, id);
+
+            default:
+                final Integer movieId = ScheduleModel.MOVIE_ID.fetchValue(dsl, Integer.class, id);
+                return movieId != null && ScheduleModel.DELETE.execute(dsl, id) != 0 ? movieId : null;
+        }
+    }
+
+    // удаление записей фильма на его шарде; в основной БД их удаляет каскад внешнего ключа
+    static void killOf(final int movieId) throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        if (shards != null) {
+            ScheduleModel.DELETE_OF.execute(shards.node(movieId).dslContext(), movieId);
+        }
+    }
+
+    // удаление записи из БД по заданному идентификатору, возвращает признак того, что запись была удалена
+    public static boolean kill(final int id) throws SQLException {
+        final Integer movieId = ScheduleModel.deleteAndGetMovieId(id);
+
+        ScheduleModel.CACHE.invalidate(id);
+
+        if (movieId == null) {
+            return false;
+        }
+
+        CounterRegistry.scheduleKilled(movieId);
+        VersionRegistry.scheduleChanged(id, movieId);
+        return true;
+    }
+
+    // запрос на добавление данной записи в БД
+    private Query insertQuery() {
+        return ScheduleModel.INSERT.query(
+            this.movieId,
+            this.dateAndTime,
+            this.auditorium
+        );
+    }
+
+    // пакетное сохранение новых записей в БД в одной транзакции, возвращает идентификаторы созданных записей
+    public static int[] saveAll(final List<ScheduleModel> schedules) throws SQLException {
+        if (CommonModel.shards != null) {
+            return ScheduleModel.saveAll(CommonModel.shards, schedules);
+        }
+
+        final List<Query> queries = new ArrayList<>(schedules.size());
+        for (final ScheduleModel schedule : schedules) {
+            queries.add(schedule.insertQuery());
+        }
+
+        final int[] ids = CommonModel.insertAndGetIds(queries);
+        ScheduleModel.created(schedules, ids);
+
+        return ids;
+    }
+
+    // пакетное сохранение новых записей на шардах: записи каждого шарда -- в одной транзакции на нём;
+    // при ошибке на одном из шардов записи, уже сохранённые на других, остаются и учитываются
+    private static int[] saveAll(final ShardRouter shards, final List<ScheduleModel> schedules) throws SQLException {
+        final Map<ShardRouter.Node, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < schedules.size(); ++i) {
+            groups.computeIfAbsent(shards.node(schedules.get(i).movieId), (node) -> new ArrayList<>()).add(i);
+        }
+
+        final int[] ids = new int[schedules.size()];
+        try {
+            for (final Map.Entry<ShardRouter.Node, List<Integer>> group : groups.entrySet()) {
+                final List<Query> queries = new ArrayList<>(group.getValue().size());
+                for (final int i : group.getValue()) {
+                    queries.add(schedules.get(i).insertQuery());
+                }
+
+                final int[] created = CommonModel.insertAndGetIds(group.getKey().dslContext(), queries);
+                for (int j = 0; j < created.length; ++j) {
+                    ids[group.getValue().get(j)] = created[j];
+                }
+            }
+        } finally {
+            ScheduleModel.created(schedules, ids);
+        }
+
+        return ids;
+    }
+
+    // учёт созданных записей в индексе идентификаторов, счётчиках и версиях
+    private static void created(final List<ScheduleModel> schedules, final int[] ids) {
+        for (int i = 0; i < ids.length; ++i) {
+            if (ids[i] != 0) {
+                CounterRegistry.scheduleCreated(schedules.get(i).movieId);
+                VersionRegistry.scheduleChanged(ids[i], schedules.get(i).movieId);
+            }
+        }
+    }
+
+    // сохранение данной записи в БД, возвращает идентификатор созданной или изменённой записи (0 -- записи нет)
+    public int save() throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+
+        if (this.id == 0) { // создание новой
+            int id = shards == null
+                ? ScheduleModel.INSERT.insert(this.movieId, this.dateAndTime, this.auditorium)
+                : ScheduleModel.INSERT.insert(shards.node(this.movieId).dslContext(), this.movieId, this.dateAndTime, this.auditorium);
+
+            if (id != 0) {
+                CounterRegistry.scheduleCreated(this.movieId);
+                VersionRegistry.scheduleChanged(id, this.movieId);
+            }
+            return id;
+        } else if (shards != null) { // изменение ранее созданной на шарде
+            return this.update(shards);
+        } else { // изменение ранее созданной
+            // обычно сеанс остаётся за тем же фильмом -- тогда хватает одного запроса и счётчики не меняются
+            int cnt = ScheduleModel.UPDATE_SAME_MOVIE.execute(
+                this.movieId,
+                this.dateAndTime,
+                this.auditorium,
+                this.id
+            );
+
+            // записи нет либо сеанс переносится к другому фильму
+            if (cnt == 0) {
+                final Integer oldMovieId = ScheduleModel.movieIdOf(this.id);
+
+                if (oldMovieId != null) {
+                    cnt = ScheduleModel.UPDATE.execute(
+                        this.movieId,
+                        this.dateAndTime,
+                        this.auditorium,
+                        this.id
+                    );
+                }
+
+                if (cnt != 0) {
+                    CounterRegistry.scheduleMoved(oldMovieId, this.movieId);
+                    VersionRegistry.schedulesChanged(oldMovieId);
+                }
+            }
+
+            ScheduleModel.CACHE.invalidate(this.id);
+
+            if (cnt != 0) {
+                VersionRegistry.scheduleChanged(this.id, this.movieId);
+            }
+
+            return cnt != 0 ? this.id : 0;
+        }
+    }
+
+    // изменение ранее созданной записи на шардах, возвращает её идентификатор (0 -- записи нет); запись,
+    // переносимая к фильму с другого шарда, переносится на его шард с тем же идентификатором
+    private int update(final ShardRouter shards) throws SQLException {
+        final ShardRouter.Node target = shards.node(this.movieId);
+
+        // обычно сеанс остаётся за тем же фильмом и хранится на его шарде -- тогда хватает одного запроса
+        int cnt = ScheduleModel.UPDATE_SAME_MOVIE.execute(
+            target.dslContext(),
+            this.movieId,
+            this.dateAndTime,
+            this.auditorium,
+            this.id
+        );
+
+        // записи нет, сеанс переносится к другому фильму либо хранится не на шарде своего фильма
+        if (cnt == 0) {
+            for (final ShardRouter.Node node : shards.candidates(this.id)) {
+                final Integer oldMovieId = ScheduleModel.MOVIE_ID.fetchValue(node.dslContext(), Integer.class, this.id);
+                if (oldMovieId == null) {
+                    continue;
+                }
+
+                if (node == target) {
+                    cnt = ScheduleModel.UPDATE.execute(
+                        node.dslContext(),
+                        this.movieId,
+                        this.dateAndTime,
+                        this.auditorium,
+                        this.id
+                    );
+                } else {
+                    cnt = this.move(shards, node, target) ? 1 : 0;
+                }
+
+                if (cnt != 0 && oldMovieId != this.movieId) {
+                    CounterRegistry.scheduleMoved(oldMovieId, this.movieId);
+                    VersionRegistry.schedulesChanged(oldMovieId);
+                }
+                break;
+            }
+        }
+
+        ScheduleModel.CACHE.invalidate(this.id);
+
+        if (cnt != 0) {
+            VersionRegistry.scheduleChanged(this.id, this.movieId);
+        }
+
+        return cnt != 0 ? this.id : 0;
+    }
+
+    // перенос данной записи с шарда на шард с сохранением идентификатора, возвращает признак переноса
+    // (false -- запись удалена до переноса); копия вставляется на целевой шард в одной транзакции
+    // с удалением копии, оставшейся от прерванного переноса, затем запись удаляется с исходного шарда,
+    // а если это не удалось -- копия удаляется с целевого
+    private boolean move(
+        final ShardRouter      shards,
+        final ShardRouter.Node source,
+        final ShardRouter.Node target
+    ) throws SQLException {
+        ScheduleModel.reserveId(shards, target, this.id);
+
+        target.dslContext().transaction((cfg) -> {
+            final DSLContext dsl = DSL.using(cfg);
+
+            ScheduleModel.DELETE.execute(dsl, this.id);
+            ScheduleModel.INSERT_WITH_ID.execute(dsl, this.id, this.movieId, this.dateAndTime, this.auditorium);
+        });
+
+        final int cnt;
+        try {
+            cnt = ScheduleModel.DELETE.execute(source.dslContext(), this.id);
+        } catch (SQLException | RuntimeException exc) {
+            ScheduleModel.DELETE.execute(target.dslContext(), this.id);
+            throw exc;
+        }
+
+        if (cnt == 0) {
+            ScheduleModel.DELETE.execute(target.dslContext(), this.id);
+        }
+        return cnt != 0;
+    }
+
+    // подготовка шарда к вставке записи с заданным идентификатором: H2 переводит счётчик идентификаторов
+    // на вставленный идентификатор, если тот больше последнего выданного, и счётчик теряет остаток номера
+    // шарда, поэтому в таком случае счётчик заранее переводится так, чтобы последним выданным считался
+    // идентификатор не меньше вставляемого, с сохранением остатка; PostgreSQL явные идентификаторы
+    // не учитывает, MySQL сохраняет остаток сам
+    private static void reserveId(final ShardRouter shards, final ShardRouter.Node node, final int id) throws SQLException {
+        final DSLContext dsl = node.dslContext();
+
+        if (dsl.dialect().family() != SQLDialect.H2) {
+            return;
+        }
+
+        final Record2<Long, Long> seq = dsl
+            .select(
+                field(name("CURRENT_VALUE"), Long.class),
+                field(name("INCREMENT"),     Long.class)
+            )
+            .from(table(name("INFORMATION_SCHEMA", "SEQUENCES")))
             .where(
-                field(name("id"), int.class).equal(id)
+                field(name("SEQUENCE_NAME"), String.class).equal(
+                    dsl
+                        .select(field(name("SEQUENCE_NAME"), String.class))
+                        .from(table(name("INFORMATION_SCHEMA", "COLUMNS")))
+                        .where(
+                            field(name("TABLE_NAME")).equal(inline(ScheduleModel.tableName()))
+                                .and(field(name("COLUMN_NAME")).equal(inline("id")))
+                        )
+                )
             )
-            .execute();
+            .fetchOne();
+
+        if (seq != null && seq.value1() < id) {
+            ScheduleModel.restartIdentity(dsl, shards.nextId(node.slot, id + shards.stride() - 1));
+        }
     }
 
-    // сохранение данной записи в БД
-    public void save() throws SQLException {
-        if (this.id == 0) { // создание новой
-            CommonModel.dslContext
-                .insertInto(
-                    ScheduleModel.TABLE_SCHEDULES,
+    // перевод счётчика идентификаторов таблицы шарда на заданное значение
+    private static void restartIdentity(final DSLContext dsl, final long next) {
+        if (dsl.dialect().family() == SQLDialect.MYSQL) {
+            dsl.execute("alter table {0} auto_increment = " + next, ScheduleModel.TABLE_SCHEDULES);
+        } else {
+            dsl.execute("alter table {0} alter column {1} restart with " + next, ScheduleModel.TABLE_SCHEDULES, name("id"));
+        }
+    }
+
+    // перенос записей на шарды их фильмов: после изменения карты шардов, а также из основной БД
+    // при включении шардов; выполняется при остановленном приложении, возвращает количество
+    // перенесённых записей; идентификаторы записей сохраняются
+    public static int rebalance() throws SQLException {
+        final ShardRouter shards = CommonModel.shards;
+        if (shards == null) {
+            throw new SQLException();
+        }
+
+        int moved = ScheduleModel.rebalance(shards, CommonModel.dslContext, null);
+        for (final ShardRouter.Node node : shards.nodes()) {
+            moved += ScheduleModel.rebalance(shards, node.dslContext(), node);
+        }
+
+        // после вставки с явными идентификаторами счётчики идентификаторов шардов переводятся за
+        // наибольший существующий идентификатор с сохранением остатка номера шарда
+        int max = 0;
+        for (final ShardRouter.Node node : shards.nodes()) {
+            final Integer top = node.dslContext()
+                .select(max(field(name("id"), Integer.class)))
+                .from(ScheduleModel.TABLE_SCHEDULES)
+                .fetchOne(0, Integer.class);
+            max = top != null ? Math.max(max, top) : max;
+        }
+
+        for (final ShardRouter.Node node : shards.nodes()) {
+            ScheduleModel.restartIdentity(node.dslContext(), shards.nextId(node.slot, max));
+        }
+
+        return moved;
+    }
+
+    // перенос записей из заданной БД (null -- основной) на шарды их фильмов, возвращает количество
+    // перенесённых записей; записи фильма вставляются на шард в одной транзакции вместе с удалением
+    // их копий, оставшихся от прерванного переноса, и лишь затем удаляются из исходной БД
+    private static int rebalance(final ShardRouter shards, final DSLContext src, final ShardRouter.Node source) throws SQLException {
+        final List<Integer> movieIds = src
+            .selectDistinct(field(name("movie_id"), int.class))
+            .from(ScheduleModel.TABLE_SCHEDULES)
+            .fetch(0, int.class);
+
+        int moved = 0;
+        for (final int movieId : movieIds) {
+            final ShardRouter.Node target = shards.node(movieId);
+            if (target == source) {
+                continue;
+            }
+
+            final Result<Record4<Integer, Integer, LocalDateTime, Byte>> rows = src
+                .select(
+                    field(name("id"),         int.class),
                     field(name("movie_id"),   int.class),
-                    field(name("date_time"),  String.class),
+                    field(name("date_time"),  SQLDataType.LOCALDATETIME),
                     field(name("auditorium"), byte.class)
                 )
-                .values(
-                    this.movieId,
-                    this.dateAndTime,
-                    this.auditorium
+                .from(ScheduleModel.TABLE_SCHEDULES)
+                .where(
+                    field(name("movie_id"), int.class).equal(movieId)
                 )
-                .execute();
-        } else { // изменение ранее созданной
-            CommonModel.dslContext
-                .update(ScheduleModel.TABLE_SCHEDULES)
-                .set(field(name("movie_id"),   int.class),    this.movieId)
-                .set(field(name("date_time"),  String.class), this.dateAndTime)
-                .set(field(name("auditorium"), byte.class),   this.auditorium)
+                .fetch();
+
+            target.dslContext().transaction((cfg) -> {
+                DSL.using(cfg)
+                    .deleteFrom(ScheduleModel.TABLE_SCHEDULES)
+                    .where(
+                        field(name("id"), int.class).in(rows.getValues(0, int.class))
+                    )
+                    .execute();
+
+                InsertValuesStep4<Record, Integer, Integer, LocalDateTime, Byte> insert = DSL.using(cfg)
+                    .insertInto(
+                        ScheduleModel.TABLE_SCHEDULES,
+                        field(name("id"),         int.class),
+                        field(name("movie_id"),   int.class),
+                        field(name("date_time"),  SQLDataType.LOCALDATETIME),
+                        field(name("auditorium"), byte.class)
+                    );
+                for (final Record4<Integer, Integer, LocalDateTime, Byte> row : rows) {
+                    insert = insert.values(row.value1(), row.value2(), row.value3(), row.value4());
+                }
+                insert.execute();
+            });
+
+            src
+                .deleteFrom(ScheduleModel.TABLE_SCHEDULES)
                 .where(
-                    field(name("id"), int.class).equal(this.id)
+                    field(name("movie_id"), int.class).equal(movieId)
                 )
                 .execute();
-        };
+
+            moved += rows.size();
+        }
+
+        return moved;
+    }
+
+    // неблокирующие варианты операций модели через R2DBC; счётчики и кэш записей
+    // поддерживаются так же, как в блокирующих операциях
+    public static final class Reactive {
+        // конструктор закрыт
+        private Reactive() {}
+
+        // проверка существования записи с заданным идентификатором
+        public static Mono<Boolean> exists(final int id) {
+            return ScheduleModel.EXISTS
+                .publishValue(Integer.class, id)
+                .map((cnt) -> cnt != 0);
+        }
+
+        // чтение записи по заданному идентификатору через кэш (пусто -- записи нет); прочитанная запись
+        // помещается в кэш, только если за время чтения записи модели не сбрасывались
+        public static Mono<ScheduleModel> find(final int id) {
+            final ScheduleModel cached = ScheduleModel.CACHE.peek(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+
+            return Mono.defer(() -> {
+                final long generation = ScheduleModel.CACHE.generation();
+
+                return ScheduleModel.LOAD
+                    .publishOneInto(ScheduleModel.class, id)
+                    .doOnNext((schedule) -> ScheduleModel.CACHE.put(id, schedule, generation));
+            });
+        }
+
+        // получить список записей из БД с постраничным выводом
+        public static Flux<ScheduleModel> list(
+            final int movieId,
+            final int page,
+            final int numb
+        ) {
+            return ScheduleModel.LIST.publishInto(ScheduleModel.class, movieId, numb, (page - 1) * numb);
+        }
+
+        // получить список записей из БД, следующих за заданным курсором (null -- с начала)
+        public static Flux<ScheduleModel> seek(
+            final int        movieId,
+            final PageCursor after,
+            final int        numb
+        ) {
+            if (after != null && ScheduleModel.parseDateTime(after.key) == null) {
+                return Flux.error(new IllegalArgumentException());
+            }
+
+            return after == null
+                ? ScheduleModel.SEEK_FIRST.publishInto(ScheduleModel.class, movieId, numb)
+                : ScheduleModel.SEEK_AFTER.publishInto(ScheduleModel.class, movieId, after.key, after.id, numb);
+        }
+
+        // удаление записи из БД по заданному идентификатору, возвращает признак того, что запись была удалена
+        public static Mono<Boolean> kill(final int id) {
+            final Mono<Integer> movieId;
+
+            switch (CommonModel.dslContext.dialect().family()) {
+                case H2:
+                case POSTGRES:
+                    movieId = ScheduleModel.DELETE_RETURNING.publishValue(Integer.class, id);
+                    break;
+
+                default:
+                    movieId = ScheduleModel.MOVIE_ID
+                        .publishValue(Integer.class, id)
+                        .flatMap((mid) -> ScheduleModel.DELETE
+                            .publishUpdate(id)
+                            .filter((cnt) -> cnt != 0)
+                            .map((cnt) -> mid)
+                        );
+            }
+
+            return movieId
+                .doOnNext((mid) -> CounterRegistry.scheduleKilled(mid))
+                .doOnSuccess((mid) -> {
+                    ScheduleModel.CACHE.invalidate(id);
+
+                    if (mid != null) {
+                        VersionRegistry.scheduleChanged(id, mid);
+                    }
+                })
+                .map((mid) -> true)
+                .defaultIfEmpty(false);
+        }
+
+        // сохранение записи в БД, возвращает идентификатор созданной или изменённой записи (0 -- записи нет)
+        public static Mono<Integer> save(final ScheduleModel schedule) {
+            if (schedule.id == 0) { // создание новой
+                return ScheduleModel.INSERT
+                    .publishInsert(schedule.movieId, schedule.dateAndTime, schedule.auditorium)
+                    .doOnNext((id) -> {
+                        if (id != 0) {
+                            CounterRegistry.scheduleCreated(schedule.movieId);
+                            VersionRegistry.scheduleChanged(id, schedule.movieId);
+                        }
+                    });
+            }
+
+            // изменение ранее созданной: обычно сеанс остаётся за тем же фильмом -- тогда хватает одного запроса
+            return ScheduleModel.UPDATE_SAME_MOVIE
+                .publishUpdate(schedule.movieId, schedule.dateAndTime, schedule.auditorium, schedule.id)
+                .flatMap((cnt) -> cnt != 0
+                    ? Mono.just(cnt)
+                    : ScheduleModel.MOVIE_ID // записи нет либо сеанс переносится к другому фильму
+                        .publishValue(Integer.class, schedule.id)
+                        .flatMap((oldMovieId) -> ScheduleModel.UPDATE
+                            .publishUpdate(schedule.movieId, schedule.dateAndTime, schedule.auditorium, schedule.id)
+                            .doOnNext((moved) -> {
+                                if (moved != 0) {
+                                    CounterRegistry.scheduleMoved(oldMovieId, schedule.movieId);
+                                    VersionRegistry.schedulesChanged(oldMovieId);
+                                }
+                            })
+                        )
+                        .defaultIfEmpty(0)
+                )
+                .map((cnt) -> {
+                    ScheduleModel.CACHE.invalidate(schedule.id);
+
+                    if (cnt != 0) {
+                        VersionRegistry.scheduleChanged(schedule.id, schedule.movieId);
+                    }
+
+                    return cnt != 0 ? schedule.id : 0;
+                });
+        }
     }
 }
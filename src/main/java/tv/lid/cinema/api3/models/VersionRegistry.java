@@ -0,0 +1,193 @@
+package tv.lid.cinema.api3.models;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+// класс реестра версий данных для условных HTTP-запросов: версия каждой записи и каждого списка
+// меняется методами save()/kill() моделей, так что актуальность данных у клиента проверяется
+// без обращения к БД; номера версий берутся из одной последовательности, начатой с времени
+// запуска, поэтому после перезапуска сервера версии не повторяются; версия записи меняется после
+// изменения БД и сброса кэша, иначе ответ с новой версией мог бы содержать устаревшие данные
+public final class VersionRegistry {
+    // версия данных
+    public static final class Version {
+        public final long tag;      // номер версии
+        public final long modified; // время изменения, мс
+
+        // конструктор
+        private Version(final long tag, final long modified) {
+            this.tag      = tag;
+            this.modified = modified;
+        }
+
+        // значение заголовка ETag; слабое, т.к. тело ответа может передаваться в разных кодировках
+        public String etag() {
+            return "W/\"" + Long.toString(this.tag, 36) + "\"";
+        }
+
+        // значение заголовка Last-Modified
+        public String lastModified() {
+            return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(this.modified).atOffset(ZoneOffset.UTC)
+            );
+        }
+
+        // более поздняя из двух версий
+        private static Version max(final Version a, final Version b) {
+            return a.tag >= b.tag ? a : b;
+        }
+    }
+
+    // версии записей одного вида по идентификатору: хранятся версии не более чем заданного количества
+    // записей, версия вытесненной записи поднимает нижнюю границу -- версию всех записей, версии которых
+    // не хранятся, так что после вытеснения клиент проверяет данные заново, а не получает ответ 304
+    static final class Versions {
+        // нижняя граница версий; поднимается до удаления вытесненной записи из кэша
+        private final AtomicReference<Version> floor = new AtomicReference<>(VersionRegistry.INITIAL);
+
+        // версии записей
+        private final Cache<Integer, Version> cache;
+
+        // конструктор
+        Versions(final long maxSize) {
+            // вытеснение -- в потоке записи, чтобы количество версий не превышало заданного
+            this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .writer(new CacheWriter<Integer, Version>() {
+                    @Override
+                    public void write(final Integer id, final Version ver) {}
+
+                    @Override
+                    public void delete(final Integer id, final Version ver, final RemovalCause cause) {
+                        if (cause.wasEvicted()) {
+                            Versions.this.floor.accumulateAndGet(ver, Version::max);
+                        }
+                    }
+                })
+                .build();
+        }
+
+        // версия записи
+        Version get(final int id) {
+            final Version ver = this.cache.getIfPresent(id);
+            return ver != null ? Version.max(ver, this.floor.get()) : this.floor.get();
+        }
+
+        // новая версия записи
+        void put(final int id, final Version ver) {
+            this.cache.put(id, ver);
+        }
+
+        // сброс версий всех записей и нижней границы
+        void clear() {
+            this.cache.invalidateAll();
+            this.floor.set(VersionRegistry.INITIAL);
+        }
+    }
+
+    // наибольшее количество хранимых версий записей каждого вида
+    private static final long MAX_VERSIONS = 100000;
+
+    // последовательность номеров версий
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis());
+
+    // версия данных, не менявшихся с момента запуска
+    private static final Version INITIAL = new Version(VersionRegistry.SEQUENCE.get(), System.currentTimeMillis());
+
+    // версия списка фильмов
+    private static volatile Version movies = VersionRegistry.INITIAL;
+
+    // версии фильмов по идентификатору
+    private static final Versions MOVIE = new Versions(VersionRegistry.MAX_VERSIONS);
+
+    // версии списков сеансов по идентификатору фильма
+    private static final Versions SCHEDULES = new Versions(VersionRegistry.MAX_VERSIONS);
+
+    // версии сеансов по идентификатору
+    private static final Versions SCHEDULE = new Versions(VersionRegistry.MAX_VERSIONS);
+
+    // общая версия сеансов -- меняется, когда удалены сеансы с неизвестными идентификаторами
+    private static volatile Version schedule = VersionRegistry.INITIAL;
+
+    // конструктор -- экземпляры не создаются
+    private VersionRegistry() {}
+
+    // версия списка фильмов
+    public static Version movies() {
+        return VersionRegistry.movies;
+    }
+
+    // версия фильма
+    public static Version movie(final int id) {
+        return VersionRegistry.MOVIE.get(id);
+    }
+
+    // версия списка сеансов заданного фильма
+    public static Version schedules(final int movieId) {
+        return VersionRegistry.SCHEDULES.get(movieId);
+    }
+
+    // версия сеанса
+    public static Version schedule(final int id) {
+        return Version.max(
+            VersionRegistry.SCHEDULE.get(id),
+            VersionRegistry.schedule
+        );
+    }
+
+    // новая версия
+    static Version next() {
+        return new Version(VersionRegistry.SEQUENCE.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    // создан или изменён фильм
+    static void movieChanged(final int id) {
+        final Version ver = VersionRegistry.next();
+
+        VersionRegistry.MOVIE.put(id, ver);
+        VersionRegistry.movies = ver;
+    }
+
+    // удалён фильм вместе с его сеансами; идентификаторы сеансов неизвестны, поэтому меняется общая
+    // версия сеансов; версия удалённой записи сохраняется, иначе клиент с версией, полученной
+    // до первого изменения, получил бы ответ 304
+    static void movieKilled(final int id) {
+        final Version ver = VersionRegistry.next();
+
+        VersionRegistry.MOVIE.put(id, ver);
+        VersionRegistry.SCHEDULES.put(id, ver);
+        VersionRegistry.movies   = ver;
+        VersionRegistry.schedule = ver;
+    }
+
+    // создан, изменён или удалён сеанс заданного фильма
+    static void scheduleChanged(final int id, final int movieId) {
+        final Version ver = VersionRegistry.next();
+
+        VersionRegistry.SCHEDULE.put(id, ver);
+        VersionRegistry.SCHEDULES.put(movieId, ver);
+    }
+
+    // изменён список сеансов заданного фильма (сеанс перенесён на другой фильм)
+    static void schedulesChanged(final int movieId) {
+        VersionRegistry.SCHEDULES.put(movieId, VersionRegistry.next());
+    }
+
+    // сброс реестра: все данные считаются не менявшимися с момента запуска; номера версий не повторяются
+    static void reset() {
+        VersionRegistry.MOVIE.clear();
+        VersionRegistry.SCHEDULES.clear();
+        VersionRegistry.SCHEDULE.clear();
+        VersionRegistry.movies   = VersionRegistry.INITIAL;
+        VersionRegistry.schedule = VersionRegistry.INITIAL;
+    }
+}
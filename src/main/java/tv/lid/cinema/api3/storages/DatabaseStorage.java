@@ -3,6 +3,9 @@ package tv.lid.cinema.api3.storages;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
 import org.jooq.DSLContext;
 
 import tv.lid.cinema.api3.config.Config;
@@ -15,6 +18,20 @@ public abstract class DatabaseStorage {
                                DB_TYPE_POSTGRES   = "postgres",   // PostgreSQL, вариант 1
                                DB_TYPE_POSTGRESQL = "postgresql"; // PostgreSQL, вариант 2
 
+    // параметры пула соединений
+    private final Config.Pool cfgPool;
+
+    // статистика пула соединений
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    // пул соединений
+    private HikariDataSource pool = null;
+
+    // конструктор
+    protected DatabaseStorage(final Config.Pool cfgPool) {
+        this.cfgPool = cfgPool;
+    }
+
     // инициализация DatabaseStorage по заданной конфигурации
     public static DatabaseStorage initialize(final Config.Database cfgDb) throws SQLException {
         final DatabaseStorage dbs;
@@ -33,6 +50,64 @@ public abstract class DatabaseStorage {
         return dbs;
     }
 
+    // создание пула соединений поверх заданного data source
+    protected final void openPool(final DataSource ds, final String name) throws SQLException {
+        final HikariConfig cfg = new HikariConfig();
+
+        cfg.setDataSource(ds);
+        cfg.setPoolName(name);
+        cfg.setMinimumIdle(this.cfgPool.minIdle);
+        cfg.setMaximumPoolSize(this.cfgPool.maxSize);
+        cfg.setConnectionTimeout(this.cfgPool.acquireTimeout);
+        cfg.setIdleTimeout(this.cfgPool.idleTimeout);
+        cfg.setMaxLifetime(this.cfgPool.maxLifetime);
+        cfg.setValidationTimeout(this.cfgPool.validationTimeout);
+        cfg.setLeakDetectionThreshold(this.cfgPool.leakDetection);
+        cfg.setMetricsTrackerFactory(this.metrics);
+
+        if (!this.cfgPool.testQuery.isEmpty()) {
+            cfg.setConnectionTestQuery(this.cfgPool.testQuery);
+        }
+
+        try {
+            this.pool = new HikariDataSource(cfg);
+        } catch (RuntimeException exc) {
+            throw new SQLException(exc);
+        }
+    }
+
+    // размер кэша подготовленных выражений драйвера на каждое соединение (0 -- отключено);
+    // пул закрывает выражения при возврате соединения, поэтому кэшировать их должен драйвер
+    protected final int statementCache() {
+        return this.cfgPool.statementCache;
+    }
+
+    // закрытие пула соединений
+    protected final void closePool() {
+        if (this.pool != null) {
+            this.pool.close();
+            this.pool = null;
+        }
+    }
+
+    // пул соединений как data source
+    protected final DataSource pooled() throws SQLException {
+        if (this.pool != null) {
+            return this.pool;
+        } else {
+            throw new SQLException();
+        }
+    }
+
+    // статистика пула соединений
+    public final PoolMetrics.Snapshot poolStats() throws SQLException {
+        if (this.pool != null) {
+            return this.metrics.snapshot(this.pool.getHikariPoolMXBean());
+        } else {
+            throw new SQLException();
+        }
+    }
+
     // установление соединения с базой данных
     public abstract void connect() throws SQLException;
 
@@ -31,6 +31,9 @@ public final class H2Storage extends DatabaseStorage {
     private final String dbUsername;
     private final String dbPassword;
 
+    // параметры режима работы
+    private final Config.H2 cfgH2;
+
     // экземпляр сервера БД
     private Server srv = null;
 
@@ -44,14 +47,19 @@ public final class H2Storage extends DatabaseStorage {
         String dbHome,
         String dbFile,
         String dbUsername,
-        String dbPassword
+        String dbPassword,
+        Config.Pool cfgPool,
+        Config.H2 cfgH2
     ) {
+        super(cfgPool);
+
         this.dbPort     = dbPort;
         this.dbHost     = dbHost;
         this.dbHome     = dbHome;
         this.dbFile     = dbFile;
         this.dbUsername = dbUsername;
         this.dbPassword = dbPassword;
+        this.cfgH2      = cfgH2;
     }
 
     // конструктор #2
@@ -62,7 +70,9 @@ public final class H2Storage extends DatabaseStorage {
             H2Storage.DEFAULT_DB_HOME,
             H2Storage.DEFAULT_DB_FILE,
             H2Storage.DEFAULT_DB_USERNAME,
-            H2Storage.DEFAULT_DB_PASSWORD
+            H2Storage.DEFAULT_DB_PASSWORD,
+            new Config.Pool(),
+            new Config.H2()
         );
     }
 
@@ -74,32 +84,50 @@ public final class H2Storage extends DatabaseStorage {
             cfgDb.home,
             cfgDb.file,
             cfgDb.user,
-            cfgDb.pass
+            cfgDb.pass,
+            cfgDb.pool,
+            cfgDb.h2
         );
     }
 
+    // путь к файлу БД относительно рабочего каталога -- одинаковый в обоих режимах
+    private String dbPath() {
+        return "." + (this.dbHome.startsWith("/") ? this.dbHome : "/" + this.dbHome) + "/" + this.dbFile;
+    }
+
     // установление соединения с базой данных
     public void connect() throws SQLException {
         try {
-            // запуск сервера H2
             Class.forName("org.h2.Driver");
-            this.srv = Server.createTcpServer(
-                "-ifNotExists",
-                "-tcpDaemon",
-                "-tcpAllowOthers",
-                "-tcpPort",
-                String.valueOf(this.dbPort)
-            ).start();
+
+            // запуск сервера H2: в режиме сервера -- всегда, во встроенном -- только по требованию,
+            // чтобы к работающей БД могли подключаться внешние инструменты
+            if (!this.cfgH2.isEmbedded() || this.cfgH2.tcpServer) {
+                this.srv = Server.createTcpServer(
+                    "-ifNotExists",
+                    "-tcpDaemon",
+                    "-tcpAllowOthers",
+                    "-tcpPort",
+                    String.valueOf(this.dbPort)
+                ).start();
+            }
 
             // создание data source
             this.ds = new JdbcDataSource();
-            this.ds.setURL(
-                "jdbc:h2:tcp://" + this.dbHost + ":" + this.dbPort + "/." + (this.dbHome.startsWith("/")
-                    ? this.dbHome
-                    : "/" + this.dbHome) + "/" + this.dbFile
+            this.ds.setURL(this.cfgH2.isEmbedded()
+                ? "jdbc:h2:" + this.dbPath() +
+                    ";CACHE_SIZE="   + this.cfgH2.cacheSize +
+                    ";WRITE_DELAY="  + this.cfgH2.writeDelay +
+                    ";LOCK_TIMEOUT=" + this.cfgH2.lockTimeout +
+                    ";QUERY_CACHE_SIZE=" + this.statementCache()
+                : "jdbc:h2:tcp://" + this.dbHost + ":" + this.dbPort + "/" + this.dbPath() +
+                    ";QUERY_CACHE_SIZE=" + this.statementCache()
             );
             this.ds.setUser(this.dbUsername);
             this.ds.setPassword(this.dbPassword);
+
+            // создание пула соединений
+            this.openPool(this.ds, "h2");
         } catch (Exception exc) {
             throw new SQLException();
         }
@@ -108,7 +136,11 @@ public final class H2Storage extends DatabaseStorage {
     // разрыв соединения с базой данных
     public void disconnect() throws SQLException {
         try {
-            this.srv.stop();
+            this.closePool();
+
+            if (this.srv != null) {
+                this.srv.stop();
+            }
         } catch (Exception exc) {
             throw new SQLException();
         }
@@ -117,7 +149,7 @@ public final class H2Storage extends DatabaseStorage {
     // получить DSL context
     public DSLContext dslContext() throws SQLException {
         if (this.ds != null) {
-            return DSL.using(this.ds, SQLDialect.H2);
+            return DSL.using(this.pooled(), SQLDialect.H2);
         } else {
             throw new SQLException();
         }
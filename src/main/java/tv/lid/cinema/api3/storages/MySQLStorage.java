@@ -21,6 +21,9 @@ public final class MySQLStorage extends DatabaseStorage {
                                 DEFAULT_DB_USERNAME = "root",      // дефолтное имя пользователя БД
                                 DEFAULT_DB_PASSWORD = "";          // дефолтный пароль пользователя БД
 
+    // максимальная длина SQL кэшируемого подготовленного выражения
+    private static final int    STATEMENT_SQL_LIMIT = 2048;
+
     // параметры подключения к базе данных
     private final int    dbPort;
     private final String dbHost;
@@ -37,8 +40,11 @@ public final class MySQLStorage extends DatabaseStorage {
         String dbHost,
         String dbName,
         String dbUsername,
-        String dbPassword
+        String dbPassword,
+        Config.Pool cfgPool
     ) {
+        super(cfgPool);
+
         this.dbPort     = dbPort;
         this.dbHost     = dbHost;
         this.dbName     = dbName;
@@ -53,7 +59,8 @@ public final class MySQLStorage extends DatabaseStorage {
             MySQLStorage.DEFAULT_DB_HOST,
             MySQLStorage.DEFAULT_DB_NAME,
             MySQLStorage.DEFAULT_DB_USERNAME,
-            MySQLStorage.DEFAULT_DB_PASSWORD
+            MySQLStorage.DEFAULT_DB_PASSWORD,
+            new Config.Pool()
         );
     }
 
@@ -64,7 +71,8 @@ public final class MySQLStorage extends DatabaseStorage {
             cfgDb.host,
             cfgDb.name,
             cfgDb.user,
-            cfgDb.pass
+            cfgDb.pass,
+            cfgDb.pool
         );
     }
 
@@ -76,11 +84,23 @@ public final class MySQLStorage extends DatabaseStorage {
         this.ds.setDatabaseName(this.dbName);
         this.ds.setUser(this.dbUsername);
         this.ds.setPassword(this.dbPassword);
+
+        // кэш подготовленных выражений на стороне сервера
+        if (this.statementCache() > 0) {
+            this.ds.setCachePrepStmts(true);
+            this.ds.setPrepStmtCacheSize(this.statementCache());
+            this.ds.setPrepStmtCacheSqlLimit(MySQLStorage.STATEMENT_SQL_LIMIT);
+            this.ds.setUseServerPrepStmts(true);
+        }
+
+        // создание пула соединений
+        this.openPool(this.ds, "mysql");
     }
 
     // разрыв соединения с базой данных
     public void disconnect() throws SQLException {
         if (this.ds != null) {
+            this.closePool();
             this.ds = null;
         } else {
             throw new SQLException();
@@ -90,7 +110,7 @@ public final class MySQLStorage extends DatabaseStorage {
     // получить DSL context
     public DSLContext dslContext() throws SQLException {
         if (this.ds != null) {
-            return DSL.using(this.ds, SQLDialect.MYSQL);
+            return DSL.using(this.pooled(), SQLDialect.MYSQL);
         } else {
             throw new SQLException();
         }
@@ -0,0 +1,86 @@
+package tv.lid.cinema.api3.storages;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import tv.lid.cinema.api3.utils.Histogram;
+
+// класс сбора статистики пула соединений
+public final class PoolMetrics implements MetricsTrackerFactory {
+    // время получения соединения из пула, мкс
+    private final Histogram acquire = new Histogram();
+
+    // время использования соединения, мс
+    private final Histogram usage = new Histogram();
+
+    // количество отказов по таймауту получения соединения
+    private final LongAdder timeouts = new LongAdder();
+
+    // срез состояния пула
+    public static final class Snapshot {
+        @JsonProperty("total")
+        public final int total; // всего соединений
+
+        @JsonProperty("active")
+        public final int active; // выданных соединений
+
+        @JsonProperty("idle")
+        public final int idle; // простаивающих соединений
+
+        @JsonProperty("waiting")
+        public final int waiting; // потоков в ожидании соединения
+
+        @JsonProperty("timeouts")
+        public final long timeouts; // отказов по таймауту
+
+        @JsonProperty("acquireMicros")
+        public final Histogram.Snapshot acquire; // время получения соединения, мкс
+
+        @JsonProperty("usageMillis")
+        public final Histogram.Snapshot usage; // время использования соединения, мс
+
+        // конструктор
+        private Snapshot(final PoolMetrics metrics, final HikariPoolMXBean bean) {
+            this.total    = bean.getTotalConnections();
+            this.active   = bean.getActiveConnections();
+            this.idle     = bean.getIdleConnections();
+            this.waiting  = bean.getThreadsAwaitingConnection();
+            this.timeouts = metrics.timeouts.sum();
+            this.acquire  = metrics.acquire.snapshot();
+            this.usage    = metrics.usage.snapshot();
+        }
+    }
+
+    // создание трекера для пула
+    @Override
+    public IMetricsTracker create(final String poolName, final PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(final long elapsedAcquiredNanos) {
+                PoolMetrics.this.acquire.record(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(final long elapsedBorrowedMillis) {
+                PoolMetrics.this.usage.record(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                PoolMetrics.this.timeouts.increment();
+            }
+        };
+    }
+
+    // срез состояния пула
+    public PoolMetrics.Snapshot snapshot(final HikariPoolMXBean bean) {
+        return new PoolMetrics.Snapshot(this, bean);
+    }
+}
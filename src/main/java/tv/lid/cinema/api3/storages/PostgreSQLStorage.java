@@ -37,8 +37,11 @@ public final class PostgreSQLStorage extends DatabaseStorage {
         String dbHost,
         String dbName,
         String dbUsername,
-        String dbPassword
+        String dbPassword,
+        Config.Pool cfgPool
     ) {
+        super(cfgPool);
+
         this.dbPort     = dbPort;
         this.dbHost     = dbHost;
         this.dbName     = dbName;
@@ -53,7 +56,8 @@ public final class PostgreSQLStorage extends DatabaseStorage {
             PostgreSQLStorage.DEFAULT_DB_HOST,
             PostgreSQLStorage.DEFAULT_DB_NAME,
             PostgreSQLStorage.DEFAULT_DB_USERNAME,
-            PostgreSQLStorage.DEFAULT_DB_PASSWORD
+            PostgreSQLStorage.DEFAULT_DB_PASSWORD,
+            new Config.Pool()
         );
     }
 
@@ -64,7 +68,8 @@ public final class PostgreSQLStorage extends DatabaseStorage {
             cfgDb.host,
             cfgDb.name,
             cfgDb.user,
-            cfgDb.pass
+            cfgDb.pass,
+            cfgDb.pool
         );
     }
 
@@ -76,11 +81,18 @@ public final class PostgreSQLStorage extends DatabaseStorage {
         this.ds.setDatabaseName(this.dbName);
         this.ds.setUser(this.dbUsername);
         this.ds.setPassword(this.dbPassword);
+
+        // кэш подготовленных выражений (0 -- отключён)
+        this.ds.setPreparedStatementCacheQueries(this.statementCache());
+
+        // создание пула соединений
+        this.openPool(this.ds, "postgresql");
     }
 
     // разрыв соединения с базой данных
     public void disconnect() throws SQLException {
         if (this.ds != null) {
+            this.closePool();
             this.ds = null;
         } else {
             throw new SQLException();
@@ -90,7 +102,7 @@ public final class PostgreSQLStorage extends DatabaseStorage {
     // получить DSL context
     public DSLContext dslContext() throws SQLException {
         if (this.ds != null) {
-            return DSL.using(this.ds, SQLDialect.POSTGRES);
+            return DSL.using(this.pooled(), SQLDialect.POSTGRES);
         } else {
             throw new SQLException();
         }
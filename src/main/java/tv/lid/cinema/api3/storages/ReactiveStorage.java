@@ -0,0 +1,101 @@
+package tv.lid.cinema.api3.storages;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+
+import static io.r2dbc.spi.ConnectionFactoryOptions.*;
+
+import reactor.core.publisher.Mono;
+
+import tv.lid.cinema.api3.config.Config;
+
+// класс неблокирующего доступа к базе данных через R2DBC; работает рядом с DatabaseStorage,
+// который по-прежнему нужен для миграций, пакетных запросов и загрузки счётчиков
+public final class ReactiveStorage {
+    // конфигурация базы данных
+    private final Config.Database cfgDb;
+
+    // пул соединений
+    private ConnectionPool pool = null;
+
+    // конструктор
+    public ReactiveStorage(final Config.Database cfgDb) {
+        this.cfgDb = cfgDb;
+    }
+
+    // параметры подключения драйвера R2DBC для заданного типа базы данных
+    private ConnectionFactoryOptions options() throws SQLException {
+        final String type = this.cfgDb.type;
+
+        if (type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_H2)) {
+            // та же БД, что открывает H2Storage: в пределах процесса H2 использует её совместно
+            return ConnectionFactoryOptions.builder()
+                .option(DRIVER,   "h2")
+                .option(PROTOCOL, "file")
+                .option(DATABASE, "." + (this.cfgDb.home.startsWith("/") ? this.cfgDb.home : "/" + this.cfgDb.home) + "/" + this.cfgDb.file)
+                .option(USER,     this.cfgDb.user)
+                .option(PASSWORD, this.cfgDb.pass)
+                .build();
+        } else if (type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_MYSQL) ||
+                   type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_POSTGRES) ||
+                   type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_POSTGRESQL)) {
+            return ConnectionFactoryOptions.builder()
+                .option(DRIVER,   type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_MYSQL) ? "mysql" : "postgresql")
+                .option(HOST,     this.cfgDb.host)
+                .option(PORT,     this.cfgDb.port)
+                .option(DATABASE, this.cfgDb.name)
+                .option(USER,     this.cfgDb.user)
+                .option(PASSWORD, this.cfgDb.pass)
+                .build();
+        } else {
+            throw new SQLException();
+        }
+    }
+
+    // установление соединения с базой данных
+    public void connect() throws SQLException {
+        final Config.Pool cfgPool = this.cfgDb.pool;
+
+        try {
+            final ConnectionPoolConfiguration.Builder cfg = ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(this.options()))
+                .name("r2dbc")
+                .initialSize(cfgPool.minIdle)
+                .maxSize(cfgPool.maxSize)
+                .maxAcquireTime(Duration.ofMillis(cfgPool.acquireTimeout))
+                .maxIdleTime(Duration.ofMillis(cfgPool.idleTimeout))
+                .maxLifeTime(Duration.ofMillis(cfgPool.maxLifetime));
+
+            if (!cfgPool.testQuery.isEmpty()) {
+                cfg.validationQuery(cfgPool.testQuery);
+            }
+
+            this.pool = new ConnectionPool(cfg.build());
+        } catch (RuntimeException exc) {
+            throw new SQLException(exc);
+        }
+    }
+
+    // разрыв соединения с базой данных
+    public void disconnect() throws SQLException {
+        if (this.pool != null) {
+            this.pool.dispose();
+            this.pool = null;
+        } else {
+            throw new SQLException();
+        }
+    }
+
+    // соединение из пула; должно быть закрыто после использования, чтобы вернуться в пул
+    public Mono<? extends Connection> connection() {
+        final ConnectionPool pool = this.pool;
+
+        return pool != null ? pool.create() : Mono.error(new SQLException());
+    }
+}
@@ -0,0 +1,272 @@
+package tv.lid.cinema.api3.storages;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.jooq.DSLContext;
+
+import tv.lid.cinema.api3.config.Config;
+
+// класс маршрутизации чтения по репликам БД: запросы моделей на чтение выполняются на одной из реплик,
+// изменения -- всегда в основной БД; в течение окна после изменения данные читаются из основной БД
+// клиентом, который их изменил (чтение своих изменений), а также всеми, если читаемые записи
+// или списки изменились, -- иначе устаревшие данные реплики попали бы в общие кэши
+public final class ReplicaRouter {
+    // максимальное количество клиентов, изменения которых отслеживаются
+    private static final long MAX_CLIENTS = 100000;
+
+    // доля нового значения в скользящей средней задержки
+    private static final double ALPHA = 0.2;
+
+    // задержка, приписываемая реплике после ошибки, мкс -- реплика временно перестаёт выбираться по задержке
+    private static final double ERROR_PENALTY = 1000000;
+
+    // время действия штрафа после ошибки, мс; затем реплика снова выбирается по своей задержке,
+    // и первое же чтение проверяет, восстановилась ли она
+    private static final long PENALTY_PERIOD = 5000;
+
+    // реплика
+    public static final class Node {
+        // имя для статистики
+        final String name;
+
+        // хранилище
+        final DatabaseStorage storage;
+
+        // DSL context
+        private DSLContext dsl = null;
+
+        // количество чтений и ошибок
+        final LongAdder reads  = new LongAdder(),
+                        errors = new LongAdder();
+
+        // скользящая средняя задержка, мкс (биты double -- для атомарного обновления из разных потоков)
+        private final AtomicLong latency = new AtomicLong(Double.doubleToLongBits(0));
+
+        // момент окончания штрафа после последней ошибки, мс
+        private volatile long penalized = 0;
+
+        // конструктор
+        private Node(final Config.Database cfg) throws SQLException {
+            this.name    = cfg.type + ":" + (cfg.type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_H2) && cfg.h2.isEmbedded()
+                ? cfg.home + "/" + cfg.file
+                : cfg.host + ":" + cfg.port + "/" + cfg.name);
+            this.storage = DatabaseStorage.initialize(cfg);
+        }
+
+        // DSL context реплики
+        public DSLContext dslContext() {
+            return this.dsl;
+        }
+
+        // учёт успешного чтения, начатого в заданный момент System.nanoTime()
+        public void succeeded(final long start) {
+            final double sample = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            this.reads.increment();
+            this.latency.getAndUpdate((final long bits) -> {
+                final double value = Double.longBitsToDouble(bits);
+                return Double.doubleToLongBits(value + ReplicaRouter.ALPHA * (sample - value));
+            });
+        }
+
+        // учёт ошибки чтения -- запрос повторяется в основной БД
+        public void failed() {
+            this.errors.increment();
+            this.penalized = System.currentTimeMillis() + ReplicaRouter.PENALTY_PERIOD;
+        }
+
+        // скользящая средняя задержка, мкс
+        double latency() {
+            return Double.longBitsToDouble(this.latency.get());
+        }
+
+        // задержка для выбора реплики в заданный момент, мс: во время штрафа -- не меньше штрафной
+        double latency(final long now) {
+            return now < this.penalized
+                ? Math.max(this.latency(), ReplicaRouter.ERROR_PENALTY)
+                : this.latency();
+        }
+    }
+
+    // срез статистики реплики
+    public static final class NodeSnapshot {
+        @JsonProperty("name")
+        public final String name; // имя
+
+        @JsonProperty("reads")
+        public final long reads; // чтений
+
+        @JsonProperty("errors")
+        public final long errors; // ошибок
+
+        @JsonProperty("latencyMicros")
+        public final long latency; // скользящая средняя задержка, мкс
+
+        // конструктор
+        private NodeSnapshot(final ReplicaRouter.Node node) {
+            this.name    = node.name;
+            this.reads   = node.reads.sum();
+            this.errors  = node.errors.sum();
+            this.latency = Math.round(node.latency());
+        }
+    }
+
+    // срез статистики маршрутизации
+    public static final class Snapshot {
+        @JsonProperty("routing")
+        public final String routing; // способ выбора реплики
+
+        @JsonProperty("window")
+        public final long window; // окно чтения своих изменений, мс
+
+        @JsonProperty("ownWrites")
+        public final long ownWrites; // чтений из основной БД после изменений клиента
+
+        @JsonProperty("recentChanges")
+        public final long recentChanges; // чтений из основной БД недавно изменённых данных
+
+        @JsonProperty("fallbacks")
+        public final long fallbacks; // чтений из основной БД после ошибки реплики
+
+        @JsonProperty("nodes")
+        public final List<ReplicaRouter.NodeSnapshot> nodes; // реплики
+
+        // конструктор
+        private Snapshot(final ReplicaRouter router) {
+            this.routing       = router.cfg.routing;
+            this.window        = router.cfg.window;
+            this.ownWrites     = router.ownWrites.sum();
+            this.recentChanges = router.recentChanges.sum();
+            this.fallbacks     = router.fallbacks.sum();
+            this.nodes         = new ArrayList<>(router.nodes.size());
+
+            for (final ReplicaRouter.Node node : router.nodes) {
+                this.nodes.add(new ReplicaRouter.NodeSnapshot(node));
+            }
+        }
+    }
+
+    // клиент, запрос которого выполняется в текущем потоке (null -- неизвестен)
+    private static final ThreadLocal<String> CLIENT = new ThreadLocal<>();
+
+    // конфигурация
+    private final Config.Replicas cfg;
+
+    // реплики
+    private final List<ReplicaRouter.Node> nodes = new ArrayList<>();
+
+    // номер следующей реплики при выборе по очереди
+    private final AtomicInteger next = new AtomicInteger();
+
+    // моменты последних изменений по клиентам, мс; записи старше окна удаляются
+    private final Cache<String, Long> writes;
+
+    // количество чтений, направленных в основную БД, по причинам
+    private final LongAdder ownWrites     = new LongAdder(),
+                            recentChanges = new LongAdder(),
+                            fallbacks     = new LongAdder();
+
+    // конструктор
+    public ReplicaRouter(final Config.Replicas cfg) throws SQLException {
+        this.cfg    = cfg;
+        this.writes = Caffeine.newBuilder()
+            .expireAfterWrite(cfg.window, TimeUnit.MILLISECONDS)
+            .maximumSize(ReplicaRouter.MAX_CLIENTS)
+            .build();
+
+        for (final Config.Database node : cfg.nodes) {
+            this.nodes.add(new ReplicaRouter.Node(node));
+        }
+    }
+
+    // подключение к репликам
+    public void connect() throws SQLException {
+        for (final ReplicaRouter.Node node : this.nodes) {
+            node.storage.connect();
+            node.dsl = node.storage.dslContext();
+        }
+    }
+
+    // отключение от реплик
+    public void disconnect() throws SQLException {
+        for (final ReplicaRouter.Node node : this.nodes) {
+            node.storage.disconnect();
+        }
+    }
+
+    // начало обработки запроса заданного клиента в текущем потоке
+    public static void enter(final String client) {
+        ReplicaRouter.CLIENT.set(client);
+    }
+
+    // окончание обработки запроса в текущем потоке
+    public static void leave() {
+        ReplicaRouter.CLIENT.remove();
+    }
+
+    // клиент изменил данные
+    public void written(final String client) {
+        if (client != null) {
+            this.writes.put(client, System.currentTimeMillis());
+        }
+    }
+
+    // реплика для чтения данных, изменённых в заданный момент, мс (null -- читать из основной БД)
+    public ReplicaRouter.Node reader(final long modified) {
+        if (this.nodes.isEmpty()) {
+            return null;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        // клиент недавно изменял данные -- читает свои изменения
+        final String client = ReplicaRouter.CLIENT.get();
+        if (client != null && this.writes.getIfPresent(client) != null) {
+            this.ownWrites.increment();
+            return null;
+        }
+
+        // данные изменились недавно -- реплика может их ещё не получить
+        if (now - modified < this.cfg.window) {
+            this.recentChanges.increment();
+            return null;
+        }
+
+        final int size = this.nodes.size();
+
+        if (!this.cfg.isLeastLatency() || size == 1) {
+            return this.nodes.get(Math.floorMod(this.next.getAndIncrement(), size));
+        }
+
+        // из двух случайных реплик -- с меньшей задержкой, чтобы все запросы не уходили на одну
+        final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+
+        final int a = rnd.nextInt(size),
+                  b = (a + 1 + rnd.nextInt(size - 1)) % size;
+
+        final ReplicaRouter.Node na = this.nodes.get(a),
+                                 nb = this.nodes.get(b);
+        return na.latency(now) <= nb.latency(now) ? na : nb;
+    }
+
+    // учёт чтения из основной БД после ошибки реплики
+    public void fallback() {
+        this.fallbacks.increment();
+    }
+
+    // статистика маршрутизации
+    public ReplicaRouter.Snapshot stats() {
+        return new ReplicaRouter.Snapshot(this);
+    }
+}
@@ -0,0 +1,354 @@
+package tv.lid.cinema.api3.storages;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+
+import tv.lid.cinema.api3.config.Config;
+
+// класс маршрутизации сеансов по шардам: сеансы фильма хранятся на шарде, выбранном согласованным
+// хэшированием идентификатора фильма, поэтому при добавлении шарда переносятся сеансы лишь
+// части фильмов; идентификатор сеанса указывает на шард, где сеанс создан, а запросы
+// по всем фильмам выполняются на всех шардах параллельно
+public final class ShardRouter {
+    // размер кольца согласованного хэширования
+    private static final long RING_SIZE = 1L << 32;
+
+    // операция над шардом
+    @FunctionalInterface
+    public interface Lookup<T> {
+        T apply(final ShardRouter.Node node) throws SQLException;
+    }
+
+    // шард
+    public static final class Node {
+        // номер
+        public final int slot;
+
+        // вес
+        final int weight;
+
+        // имя для статистики
+        final String name;
+
+        // хранилище
+        final DatabaseStorage storage;
+
+        // размер пула соединений
+        final int connections;
+
+        // DSL context
+        private DSLContext dsl = null;
+
+        // количество обращений
+        final LongAdder hits = new LongAdder();
+
+        // конструктор
+        private Node(final Config.Shard cfg) throws SQLException {
+            this.slot        = cfg.slot;
+            this.weight      = cfg.weight;
+            this.name        = cfg.database.type + ":" + (cfg.database.type.equalsIgnoreCase(DatabaseStorage.DB_TYPE_H2) && cfg.database.h2.isEmbedded()
+                ? cfg.database.home + "/" + cfg.database.file
+                : cfg.database.host + ":" + cfg.database.port + "/" + cfg.database.name);
+            this.storage     = DatabaseStorage.initialize(cfg.database);
+            this.connections = cfg.database.pool.maxSize;
+        }
+
+        // DSL context шарда
+        public DSLContext dslContext() {
+            this.hits.increment();
+            return this.dsl;
+        }
+    }
+
+    // срез статистики шарда
+    public static final class NodeSnapshot {
+        @JsonProperty("slot")
+        public final int slot; // номер
+
+        @JsonProperty("name")
+        public final String name; // имя
+
+        @JsonProperty("weight")
+        public final int weight; // вес
+
+        @JsonProperty("share")
+        public final double share; // доля кольца -- ожидаемая доля фильмов
+
+        @JsonProperty("hits")
+        public final long hits; // обращений
+
+        // конструктор
+        private NodeSnapshot(final ShardRouter.Node node, final double share) {
+            this.slot   = node.slot;
+            this.name   = node.name;
+            this.weight = node.weight;
+            this.share  = Math.round(share * 10000) / 10000.0;
+            this.hits   = node.hits.sum();
+        }
+    }
+
+    // срез статистики маршрутизации
+    public static final class Snapshot {
+        @JsonProperty("stride")
+        public final int stride; // шаг идентификаторов сеансов
+
+        @JsonProperty("scatters")
+        public final long scatters; // запросов, выполненных на всех шардах
+
+        @JsonProperty("misses")
+        public final long misses; // сеансов, не найденных на шарде из их идентификатора
+
+        @JsonProperty("nodes")
+        public final List<ShardRouter.NodeSnapshot> nodes; // шарды
+
+        // конструктор
+        private Snapshot(final ShardRouter router) {
+            this.stride   = router.cfg.stride;
+            this.scatters = router.scatters.sum();
+            this.misses   = router.misses.sum();
+            this.nodes    = new ArrayList<>(router.nodes.size());
+
+            // доля шарда -- сумма дуг кольца, заканчивающихся его точками
+            final Map<ShardRouter.Node, Long> arcs = new HashMap<>();
+            long prev = router.ring.lastKey() - ShardRouter.RING_SIZE;
+            for (final Map.Entry<Long, ShardRouter.Node> point : router.ring.entrySet()) {
+                arcs.merge(point.getValue(), point.getKey() - prev, Long::sum);
+                prev = point.getKey();
+            }
+
+            for (final ShardRouter.Node node : router.nodes) {
+                this.nodes.add(new ShardRouter.NodeSnapshot(
+                    node,
+                    (double) arcs.getOrDefault(node, 0L) / ShardRouter.RING_SIZE
+                ));
+            }
+        }
+    }
+
+    // конфигурация
+    private final Config.Shards cfg;
+
+    // шарды
+    private final List<ShardRouter.Node> nodes = new ArrayList<>();
+
+    // шарды по номерам
+    private final Map<Integer, ShardRouter.Node> slots = new HashMap<>();
+
+    // кольцо согласованного хэширования: точка -- шард, которому принадлежит дуга до неё
+    private final TreeMap<Long, ShardRouter.Node> ring = new TreeMap<>();
+
+    // пул потоков для запросов на всех шардах (null -- до подключения)
+    private ExecutorService executor = null;
+
+    // количество запросов на всех шардах и сеансов, не найденных на шарде из их идентификатора
+    private final LongAdder scatters = new LongAdder(),
+                            misses   = new LongAdder();
+
+    // конструктор
+    public ShardRouter(final Config.Shards cfg) throws SQLException {
+        this.cfg = cfg;
+
+        if (cfg.nodes.isEmpty() || cfg.stride <= 0 || cfg.virtualNodes <= 0) {
+            throw new SQLException("The shard map is empty or invalid!");
+        }
+
+        for (final Config.Shard shard : cfg.nodes) {
+            if (shard.slot < 0 || shard.slot >= cfg.stride || shard.weight <= 0 || this.slots.containsKey(shard.slot)) {
+                throw new SQLException("Invalid or duplicate shard #" + shard.slot + "!");
+            }
+
+            final ShardRouter.Node node = new ShardRouter.Node(shard);
+            this.nodes.add(node);
+            this.slots.put(node.slot, node);
+
+            // точки шарда зависят только от его номера, поэтому не сдвигаются при изменении карты;
+            // старшая половина ключа не нулевая, чтобы точки не совпадали с хэшами идентификаторов фильмов
+            for (int i = 0; i < cfg.virtualNodes * shard.weight; ++i) {
+                this.ring.put(ShardRouter.hash(((long) (shard.slot + 1) << 32) | i), node);
+            }
+        }
+    }
+
+    // перемешивание ключа (финализатор SplitMix64), результат -- точка кольца
+    private static long hash(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return (h ^ (h >>> 31)) >>> 32;
+    }
+
+    // подключение к шардам; SQL шаблонов моделей выводится один раз в диалекте основной БД, поэтому
+    // тип БД каждого шарда должен совпадать с основной; в MySQL шаг и смещение идентификаторов задаются
+    // переменными сервера и проверяются здесь, в H2 и PostgreSQL -- при создании таблицы шарда
+    public void connect(final SQLDialect dialect) throws SQLException {
+        int threads = 0;
+
+        for (final ShardRouter.Node node : this.nodes) {
+            node.storage.connect();
+            node.dsl = node.storage.dslContext();
+
+            if (node.dsl.dialect().family() != dialect.family()) {
+                throw new SQLException(
+                    "Shard #" + node.slot + " is " + node.dsl.dialect().family() +
+                    ", but the primary database is " + dialect.family() + "!"
+                );
+            }
+
+            if (node.dsl.dialect().family() == SQLDialect.MYSQL) {
+                final Record vars = node.dsl.fetchOne("select @@auto_increment_increment, @@auto_increment_offset");
+
+                if (vars.get(0, int.class) != this.cfg.stride || vars.get(1, int.class) != node.slot + 1) {
+                    throw new SQLException(
+                        "MySQL shard #" + node.slot + " requires auto_increment_increment = " + this.cfg.stride +
+                        " and auto_increment_offset = " + (node.slot + 1) + "!"
+                    );
+                }
+            }
+
+            threads += node.connections;
+        }
+
+        // больше одновременных запросов, чем соединений во всех пулах, не выполнить
+        final AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, (Runnable task) -> {
+            final Thread thread = new Thread(task, "api3-shard-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // отключение от шардов
+    public void disconnect() throws SQLException {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor = null;
+        }
+
+        for (final ShardRouter.Node node : this.nodes) {
+            node.storage.disconnect();
+        }
+    }
+
+    // шаг идентификаторов сеансов
+    public int stride() {
+        return this.cfg.stride;
+    }
+
+    // наименьший идентификатор сеанса, создаваемого на шарде с заданным номером, больший заданного
+    public long nextId(final int slot, final long after) {
+        return after + 1 + Math.floorMod(slot - after, (long) this.cfg.stride);
+    }
+
+    // все шарды
+    public List<ShardRouter.Node> nodes() {
+        return this.nodes;
+    }
+
+    // шард, на котором хранятся сеансы заданного фильма
+    public ShardRouter.Node node(final int movieId) {
+        final Map.Entry<Long, ShardRouter.Node> point = this.ring.ceilingEntry(ShardRouter.hash(movieId));
+        return (point != null ? point : this.ring.firstEntry()).getValue();
+    }
+
+    // шарды, на которых может храниться сеанс с заданным идентификатором: сначала тот, где он создан,
+    // затем остальные -- туда сеанс мог попасть при перераспределении
+    public List<ShardRouter.Node> candidates(final int id) {
+        final ShardRouter.Node home = this.slots.get(Math.floorMod(id - 1, this.cfg.stride));
+        if (home == null) {
+            return this.nodes;
+        }
+
+        final List<ShardRouter.Node> result = new ArrayList<>(this.nodes.size());
+        result.add(home);
+        for (final ShardRouter.Node node : this.nodes) {
+            if (node != home) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    // первый непустой результат операции над сеансом с заданным идентификатором (null -- сеанса нет нигде)
+    public <T> T find(final int id, final ShardRouter.Lookup<T> lookup) throws SQLException {
+        boolean home = true;
+
+        for (final ShardRouter.Node node : this.candidates(id)) {
+            final T result = lookup.apply(node);
+            if (result != null) {
+                if (!home) {
+                    this.misses.increment();
+                }
+                return result;
+            }
+            home = false;
+        }
+        return null;
+    }
+
+    // результаты операции, выполненной на всех шардах параллельно, в порядке шардов;
+    // при ошибке на любом шарде успешные результаты передаются на освобождение
+    public <T> List<T> gather(final ShardRouter.Lookup<T> lookup, final Consumer<T> discard) throws SQLException {
+        this.scatters.increment();
+
+        final List<Future<T>> futures = new ArrayList<>(this.nodes.size());
+        for (final ShardRouter.Node node : this.nodes) {
+            futures.add(this.executor.submit(() -> lookup.apply(node)));
+        }
+
+        final List<T> result  = new ArrayList<>(futures.size());
+        Throwable     failure = null;
+
+        for (final Future<T> future : futures) {
+            try {
+                result.add(future.get());
+            } catch (ExecutionException exc) {
+                failure = failure != null ? failure : exc.getCause();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                failure = failure != null ? failure : exc;
+            }
+        }
+
+        if (failure != null) {
+            if (discard != null) {
+                result.forEach(discard);
+            }
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else {
+                throw new SQLException(failure);
+            }
+        }
+
+        return result;
+    }
+
+    // результаты операции, выполненной на всех шардах параллельно, в порядке шардов
+    public <T> List<T> gather(final ShardRouter.Lookup<T> lookup) throws SQLException {
+        return this.gather(lookup, null);
+    }
+
+    // статистика маршрутизации
+    public ShardRouter.Snapshot stats() {
+        return new ShardRouter.Snapshot(this);
+    }
+}
@@ -0,0 +1,131 @@
+package tv.lid.cinema.api3.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// неблокирующая гистограмма с интервалами по степеням двойки
+public final class Histogram {
+    // количество интервалов -- по одному на каждый разряд значения типа long
+    private static final int BUCKETS = 64;
+
+    // счётчики попаданий в интервалы
+    private final AtomicLongArray buckets = new AtomicLongArray(Histogram.BUCKETS);
+
+    // общее количество и сумма значений
+    private final LongAdder count = new LongAdder(),
+                            total = new LongAdder();
+
+    // максимальное значение
+    private final AtomicLong max = new AtomicLong();
+
+    // срез состояния гистограммы
+    public static final class Snapshot {
+        @JsonProperty("count")
+        public final long count; // количество значений
+
+        @JsonProperty("mean")
+        public final long mean; // среднее значение
+
+        @JsonProperty("max")
+        public final long max; // максимальное значение
+
+        @JsonProperty("p50")
+        public final long p50; // медиана
+
+        @JsonProperty("p90")
+        public final long p90; // 90-й перцентиль
+
+        @JsonProperty("p99")
+        public final long p99; // 99-й перцентиль
+
+        @JsonProperty("buckets")
+        public final Map<Long, Long> buckets; // непустые интервалы: верхняя граница -> количество
+
+        // конструктор
+        private Snapshot(final Histogram hist) {
+            final long[] counts = new long[Histogram.BUCKETS];
+            long num = 0;
+
+            for (int i = 0; i < Histogram.BUCKETS; ++i) {
+                counts[i] = hist.buckets.get(i);
+                num += counts[i];
+            }
+
+            this.count   = num;
+            this.mean    = num != 0 ? hist.total.sum() / num : 0;
+            this.max     = hist.max.get();
+            this.p50     = Histogram.percentile(counts, num, 0.50);
+            this.p90     = Histogram.percentile(counts, num, 0.90);
+            this.p99     = Histogram.percentile(counts, num, 0.99);
+            this.buckets = new LinkedHashMap<>();
+
+            for (int i = 0; i < Histogram.BUCKETS; ++i) {
+                if (counts[i] != 0) {
+                    this.buckets.put(Histogram.upperBound(i), counts[i]);
+                }
+            }
+        }
+    }
+
+    // верхняя граница интервала с заданным номером
+    public static long upperBound(final int bucket) {
+        return bucket < Histogram.BUCKETS - 1 ? (1L << bucket) - 1 : Long.MAX_VALUE;
+    }
+
+    // номер интервала для заданного значения
+    private static int bucketOf(final long value) {
+        return value > 0 ? Math.min(Long.SIZE - Long.numberOfLeadingZeros(value), Histogram.BUCKETS - 1) : 0;
+    }
+
+    // оценка перцентиля по верхней границе интервала
+    private static long percentile(final long[] counts, final long num, final double p) {
+        final long rank = (long) Math.ceil(num * p);
+        long acc = 0;
+
+        for (int i = 0; i < Histogram.BUCKETS; ++i) {
+            acc += counts[i];
+            if (acc != 0 && acc >= rank) {
+                return Histogram.upperBound(i);
+            }
+        }
+
+        return 0;
+    }
+
+    // учесть значение
+    public void record(final long value) {
+        final long val = Math.max(value, 0);
+
+        this.buckets.incrementAndGet(Histogram.bucketOf(val));
+        this.count.increment();
+        this.total.add(val);
+
+        long cur;
+        while (val > (cur = this.max.get()) && !this.max.compareAndSet(cur, val));
+    }
+
+    // количество учтённых значений
+    public long count() {
+        return this.count.sum();
+    }
+
+    // сумма учтённых значений
+    public long sum() {
+        return this.total.sum();
+    }
+
+    // количество значений в интервале с заданным номером
+    public long bucket(final int bucket) {
+        return this.buckets.get(bucket);
+    }
+
+    // срез состояния
+    public Histogram.Snapshot snapshot() {
+        return new Histogram.Snapshot(this);
+    }
+}
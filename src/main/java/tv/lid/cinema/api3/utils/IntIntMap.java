@@ -0,0 +1,145 @@
+package tv.lid.cinema.api3.utils;
+
+import java.util.Arrays;
+
+// ассоциативный массив с ключами и значениями типа int (открытая адресация, линейное пробирование);
+// не потокобезопасен, синхронизация -- на стороне вызывающего кода
+public final class IntIntMap {
+    // начальная ёмкость и максимальная заполненность таблицы
+    private static final int   DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR      = 0.5f;
+
+    // ключи, значения и признаки занятости ячеек
+    private int[]     keys;
+    private int[]     values;
+    private boolean[] used;
+
+    // количество элементов
+    private int size = 0;
+
+    // конструктор #1
+    public IntIntMap(final int capacity) {
+        final int cap = Integer.highestOneBit(Math.max(capacity, IntIntMap.DEFAULT_CAPACITY) - 1) << 1;
+
+        this.keys   = new int[cap];
+        this.values = new int[cap];
+        this.used   = new boolean[cap];
+    }
+
+    // конструктор #2
+    public IntIntMap() {
+        this(IntIntMap.DEFAULT_CAPACITY);
+    }
+
+    // перемешивание битов ключа для равномерного распределения по таблице
+    private static int hash(final int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // номер ячейки с заданным ключом либо первой свободной ячейки по пути пробирования
+    private int slot(final int key) {
+        final int mask = this.keys.length - 1;
+        int idx = IntIntMap.hash(key) & mask;
+
+        while (this.used[idx] && this.keys[idx] != key) {
+            idx = (idx + 1) & mask;
+        }
+
+        return idx;
+    }
+
+    // увеличение таблицы вдвое
+    private void grow() {
+        final int[]     oldKeys   = this.keys;
+        final int[]     oldValues = this.values;
+        final boolean[] oldUsed   = this.used;
+
+        this.keys   = new int[oldKeys.length << 1];
+        this.values = new int[oldKeys.length << 1];
+        this.used   = new boolean[oldKeys.length << 1];
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                final int idx = this.slot(oldKeys[i]);
+
+                this.keys[idx]   = oldKeys[i];
+                this.values[idx] = oldValues[i];
+                this.used[idx]   = true;
+            }
+        }
+    }
+
+    // количество элементов
+    public int size() {
+        return this.size;
+    }
+
+    // проверка наличия ключа
+    public boolean containsKey(final int key) {
+        return this.used[this.slot(key)];
+    }
+
+    // значение по ключу либо значение по умолчанию
+    public int get(final int key, final int defaultValue) {
+        final int idx = this.slot(key);
+        return this.used[idx] ? this.values[idx] : defaultValue;
+    }
+
+    // установка значения по ключу
+    public void put(final int key, final int value) {
+        final int idx = this.slot(key);
+
+        if (!this.used[idx]) {
+            this.keys[idx] = key;
+            this.used[idx] = true;
+
+            if (++this.size > this.keys.length * IntIntMap.LOAD_FACTOR) {
+                this.values[idx] = value;
+                this.grow();
+                return;
+            }
+        }
+
+        this.values[idx] = value;
+    }
+
+    // прибавление к значению по ключу (отсутствующий ключ считается равным нулю), возвращает новое значение
+    public int add(final int key, final int delta) {
+        final int value = this.get(key, 0) + delta;
+        this.put(key, value);
+        return value;
+    }
+
+    // удаление ключа со сдвигом последующих элементов цепочки пробирования
+    public void remove(final int key) {
+        final int mask = this.keys.length - 1;
+        int idx = this.slot(key);
+
+        if (!this.used[idx]) {
+            return;
+        }
+
+        this.used[idx] = false;
+        --this.size;
+
+        for (int next = (idx + 1) & mask; this.used[next]; next = (next + 1) & mask) {
+            final int home = IntIntMap.hash(this.keys[next]) & mask;
+
+            // элемент можно переместить в освободившуюся ячейку, если она лежит на его пути пробирования
+            if (((next - home) & mask) >= ((next - idx) & mask)) {
+                this.keys[idx]   = this.keys[next];
+                this.values[idx] = this.values[next];
+                this.used[idx]   = true;
+                this.used[next]  = false;
+                idx = next;
+            }
+        }
+    }
+
+    // удаление всех элементов
+    public void clear() {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+}
@@ -0,0 +1,201 @@
+package tv.lid.cinema.api3.utils;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// класс реестра метрик приложения: гистограммы задержек маршрутов, запросов моделей и кодека,
+// счётчики ответов по кодам, а также состояние JVM; учёт значений не блокируется (Histogram,
+// LongAdder), а метрики выводятся в текстовом формате Prometheus
+public final class Metrics {
+    // количество выводимых интервалов гистограммы: верхняя граница последнего -- 2^26 мкс (~67 с),
+    // более длительные значения попадают только в +Inf
+    private static final int BUCKETS = 27;
+
+    // верхние границы выводимых интервалов, с
+    private static final String[] LE = new String[Metrics.BUCKETS];
+
+    static {
+        for (int i = 0; i < Metrics.BUCKETS; ++i) {
+            Metrics.LE[i] = BigDecimal.valueOf(Histogram.upperBound(i), 6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // задержка обработки запросов по маршрутам, мкс
+    private static final ConcurrentMap<String, Histogram> ROUTES = new ConcurrentHashMap<>();
+
+    // количество ответов по маршрутам и кодам
+    private static final ConcurrentMap<String, LongAdder> RESPONSES = new ConcurrentHashMap<>();
+
+    // задержка выполнения запросов моделей к БД по шаблонам, мкс
+    private static final ConcurrentMap<String, Histogram> QUERIES = new ConcurrentHashMap<>();
+
+    // задержка кодирования и декодирования JSON, мкс
+    private static final ConcurrentMap<String, Histogram> CODEC = new ConcurrentHashMap<>();
+
+    // конструктор -- экземпляры не создаются
+    private Metrics() {}
+
+    // время, прошедшее с заданного момента System.nanoTime(), мкс
+    public static long micros(final long start) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    // гистограмма задержки маршрута
+    public static Histogram route(final String method, final String pattern) {
+        return Metrics.ROUTES.computeIfAbsent(
+            Metrics.label("method", method) + "," + Metrics.label("route", pattern),
+            (key) -> new Histogram()
+        );
+    }
+
+    // счётчик ответов маршрута с заданным кодом
+    public static LongAdder responses(final String method, final String pattern, final int code) {
+        return Metrics.RESPONSES.computeIfAbsent(
+            Metrics.label("method", method) + "," + Metrics.label("route", pattern) + "," + Metrics.label("code", String.valueOf(code)),
+            (key) -> new LongAdder()
+        );
+    }
+
+    // гистограмма задержки запроса модели
+    public static Histogram query(final String name) {
+        return Metrics.QUERIES.computeIfAbsent(Metrics.label("query", name), (key) -> new Histogram());
+    }
+
+    // гистограмма задержки операции кодека
+    public static Histogram codec(final String operation) {
+        return Metrics.CODEC.computeIfAbsent(Metrics.label("operation", operation), (key) -> new Histogram());
+    }
+
+    // метка в формате Prometheus
+    private static String label(final String name, final String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    // вывод всех метрик в текстовом формате Prometheus
+    public static String prometheus() {
+        final StringBuilder out = new StringBuilder(16384);
+
+        Metrics.histograms(out, "api3_http_request_duration_seconds", "Время обработки запроса маршрутом.", Metrics.ROUTES);
+
+        Metrics.header(out, "api3_http_responses_total", "counter", "Количество ответов по маршрутам и кодам результата.");
+        for (final Map.Entry<String, LongAdder> entry : new TreeMap<>(Metrics.RESPONSES).entrySet()) {
+            Metrics.sample(out, "api3_http_responses_total", entry.getKey(), entry.getValue().sum());
+        }
+
+        Metrics.histograms(out, "api3_db_query_duration_seconds", "Время выполнения запроса модели к БД.", Metrics.QUERIES);
+        Metrics.histograms(out, "api3_json_codec_duration_seconds", "Время кодирования и декодирования JSON.", Metrics.CODEC);
+
+        Metrics.jvm(out);
+
+        return out.toString();
+    }
+
+    // строки HELP и TYPE метрики
+    private static void header(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // одно значение метрики
+    private static void sample(final StringBuilder out, final String name, final String labels, final Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    // семейство гистограмм: накопительные интервалы в секундах, сумма и количество
+    private static void histograms(
+        final StringBuilder                  out,
+        final String                         name,
+        final String                         help,
+        final Map<String, Histogram>         series
+    ) {
+        Metrics.header(out, name, "histogram", help);
+
+        for (final Map.Entry<String, Histogram> entry : new TreeMap<>(series).entrySet()) {
+            final String    labels = entry.getKey();
+            final Histogram hist   = entry.getValue();
+
+            long acc = 0;
+            for (int i = 0; i < Metrics.BUCKETS; ++i) {
+                acc += hist.bucket(i);
+                Metrics.sample(out, name + "_bucket", labels + ",le=\"" + Metrics.LE[i] + "\"", acc);
+            }
+            for (int i = Metrics.BUCKETS; i < 64; ++i) {
+                acc += hist.bucket(i);
+            }
+
+            Metrics.sample(out, name + "_bucket", labels + ",le=\"+Inf\"", acc);
+            Metrics.sample(out, name + "_sum",    labels, hist.sum() / 1e6);
+            Metrics.sample(out, name + "_count",  labels, acc);
+        }
+    }
+
+    // состояние JVM: память, сборка мусора, потоки, классы, время работы
+    private static void jvm(final StringBuilder out) {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        Metrics.header(out, "jvm_memory_bytes_used", "gauge", "Занятая память по областям.");
+        Metrics.sample(out, "jvm_memory_bytes_used", Metrics.label("area", "heap"),    memory.getHeapMemoryUsage().getUsed());
+        Metrics.sample(out, "jvm_memory_bytes_used", Metrics.label("area", "nonheap"), memory.getNonHeapMemoryUsage().getUsed());
+
+        Metrics.header(out, "jvm_memory_bytes_committed", "gauge", "Выделенная память по областям.");
+        Metrics.sample(out, "jvm_memory_bytes_committed", Metrics.label("area", "heap"),    memory.getHeapMemoryUsage().getCommitted());
+        Metrics.sample(out, "jvm_memory_bytes_committed", Metrics.label("area", "nonheap"), memory.getNonHeapMemoryUsage().getCommitted());
+
+        Metrics.header(out, "jvm_memory_bytes_max", "gauge", "Максимальная память по областям (-1 -- не ограничена).");
+        Metrics.sample(out, "jvm_memory_bytes_max", Metrics.label("area", "heap"),    memory.getHeapMemoryUsage().getMax());
+        Metrics.sample(out, "jvm_memory_bytes_max", Metrics.label("area", "nonheap"), memory.getNonHeapMemoryUsage().getMax());
+
+        Metrics.header(out, "jvm_memory_pool_bytes_used", "gauge", "Занятая память по пулам.");
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getUsage();
+            if (usage != null) {
+                Metrics.sample(out, "jvm_memory_pool_bytes_used", Metrics.label("pool", pool.getName()), usage.getUsed());
+            }
+        }
+
+        Metrics.header(out, "jvm_gc_collections_total", "counter", "Количество сборок мусора по сборщикам.");
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Metrics.sample(out, "jvm_gc_collections_total", Metrics.label("gc", gc.getName()), Math.max(gc.getCollectionCount(), 0));
+        }
+
+        Metrics.header(out, "jvm_gc_collection_seconds_total", "counter", "Суммарное время сборок мусора по сборщикам.");
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Metrics.sample(out, "jvm_gc_collection_seconds_total", Metrics.label("gc", gc.getName()), Math.max(gc.getCollectionTime(), 0) / 1e3);
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        Metrics.header(out, "jvm_threads_current", "gauge", "Количество потоков.");
+        Metrics.sample(out, "jvm_threads_current", "", threads.getThreadCount());
+
+        Metrics.header(out, "jvm_threads_daemon", "gauge", "Количество потоков-демонов.");
+        Metrics.sample(out, "jvm_threads_daemon", "", threads.getDaemonThreadCount());
+
+        Metrics.header(out, "jvm_threads_peak", "gauge", "Наибольшее количество потоков.");
+        Metrics.sample(out, "jvm_threads_peak", "", threads.getPeakThreadCount());
+
+        final ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+
+        Metrics.header(out, "jvm_classes_loaded", "gauge", "Количество загруженных классов.");
+        Metrics.sample(out, "jvm_classes_loaded", "", classes.getLoadedClassCount());
+
+        Metrics.header(out, "process_uptime_seconds", "gauge", "Время работы процесса.");
+        Metrics.sample(out, "process_uptime_seconds", "", ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+}
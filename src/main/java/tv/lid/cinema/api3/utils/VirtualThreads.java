@@ -0,0 +1,53 @@
+package tv.lid.cinema.api3.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// класс доступа к виртуальным потокам; проект собирается под Java 8, поэтому API JDK 21
+// вызывается через reflection, а при его отсутствии возвращается null
+public final class VirtualThreads {
+    // системное свойство JDK, включающее вывод стека при закреплении виртуального потока
+    private static final String PROP_TRACE_PINNED = "jdk.tracePinnedThreads";
+
+    // конструктор закрыт
+    private VirtualThreads() {}
+
+    // признак поддержки виртуальных потоков текущей JVM
+    public static boolean available() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException exc) {
+            return false;
+        }
+    }
+
+    // включение вывода стека виртуального потока, блокирующегося с закреплением за потоком-носителем
+    // (synchronized, нативные вызовы); свойство читается JDK при создании первого виртуального
+    // потока, поэтому вызывать нужно до executor()
+    public static void tracePinning(final String mode) {
+        if (mode != null && !mode.isEmpty() && System.getProperty(PROP_TRACE_PINNED) == null) {
+            System.setProperty(PROP_TRACE_PINNED, mode);
+        }
+    }
+
+    // executor, запускающий каждую задачу в новом виртуальном потоке с заданным префиксом имени
+    // (null -- виртуальные потоки недоступны, например JDK без них либо без --enable-preview)
+    public static ExecutorService executor(final String prefix) {
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+
+            Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            ofVirtual = builder.getMethod("name", String.class, long.class).invoke(ofVirtual, prefix, 0L);
+
+            final ThreadFactory factory = (ThreadFactory) builder.getMethod("factory").invoke(ofVirtual);
+            final Method        create  = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+            return (ExecutorService) create.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException exc) {
+            return null;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import io.jooby.StatusCode;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 public class UnitTest {
   @Test
@@ -17,4 +18,10 @@ public class UnitTest {
     });
     */
   }
+
+  @Test
+  public void constructsWithoutLoadedConfig() {
+    // конфигурация считывается только в main(); без неё приложение строится с параметрами по умолчанию
+    assertNotNull(new App());
+  }
 }
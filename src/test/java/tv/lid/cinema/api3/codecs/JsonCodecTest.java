@@ -0,0 +1,134 @@
+package tv.lid.cinema.api3.codecs;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import tv.lid.cinema.api3.controllers.ScheduleController;
+import tv.lid.cinema.api3.models.MovieModel;
+import tv.lid.cinema.api3.models.ScheduleModel;
+
+public class JsonCodecTest {
+    private final JsonCodec codec = new JsonCodec(new Class<?>[0], new Class<?>[0]);
+
+    private final ScheduleController controller = new ScheduleController();
+
+    // сеансы всех фильмов выводятся вместе с идентификатором фильма
+    @Test
+    public void streamIncludesMovieId() throws Exception {
+        final Stream<ScheduleModel> stream = Stream.of(
+            new ScheduleModel(11, 7, "2031-01-01 10:00:00", (byte) 1),
+            new ScheduleModel(12, 9, "2031-01-01 11:00:00", (byte) 2)
+        );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.codec.stream(out, this.controller.ok(null), this.controller.new StreamWrapper(
+            stream,
+            ScheduleModel.class,
+            ScheduleModel.WithMovieId.class
+        ));
+
+        final JsonNode data = new ObjectMapper().readTree(out.toByteArray()).get("data");
+        assertEquals(2, data.get("total").asInt());
+        assertEquals(7, data.get("list").get(0).get("movieId").asInt());
+        assertEquals(9, data.get("list").get(1).get("movieId").asInt());
+        assertEquals(12, data.get("list").get(1).get("id").asInt());
+    }
+
+    // значения разных типов, выводимые с одной примесью, выводятся каждое своим writer'ом
+    @Test
+    public void mixInIsSharedAcrossTypes() throws Exception {
+        final JsonNode schedules = this.stream(
+            Stream.of(new ScheduleModel(11, 7, "2031-01-01 10:00:00", (byte) 1)),
+            ScheduleModel.class
+        );
+        final JsonNode movies = this.stream(
+            Stream.of(new MovieModel(5, "Title", (short) 90, (short) 2001)),
+            MovieModel.class
+        );
+
+        assertEquals(7, schedules.get(0).get("movieId").asInt());
+        assertEquals("Title", movies.get(0).get("title").asText());
+        assertFalse(movies.get(0).has("movieId"));
+
+        // повторный вывод первого типа не затронут выводом второго
+        assertEquals(
+            9,
+            this.stream(Stream.of(new ScheduleModel(12, 9, "2031-01-01 11:00:00", (byte) 2)), ScheduleModel.class)
+                .get(0).get("movieId").asInt()
+        );
+    }
+
+    // список, выведенный потоком с примесью для сеансов всех фильмов
+    private JsonNode stream(final Stream<?> stream, final Class<?> type) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.codec.stream(out, this.controller.ok(null), this.controller.new StreamWrapper(
+            stream,
+            type,
+            ScheduleModel.WithMovieId.class
+        ));
+
+        return new ObjectMapper().readTree(out.toByteArray()).get("data").get("list");
+    }
+
+    // в списке сеансов одного фильма идентификатор фильма не выводится
+    @Test
+    public void listOmitsMovieId() throws Exception {
+        final byte[] body = this.codec.bytes(this.controller.ok(this.controller.new ListWrapper(
+            Arrays.asList(new ScheduleModel(11, 7, "2031-01-01 10:00:00", (byte) 1)),
+            1,
+            1
+        )));
+
+        final JsonNode item = new ObjectMapper().readTree(body).get("data").get("list").get(0);
+        assertEquals(11, item.get("id").asInt());
+        assertFalse(item.has("movieId"), new String(body, StandardCharsets.UTF_8));
+    }
+
+    // ошибка чтения посреди потока оставляет ответ некорректным JSON
+    @Test
+    public void failedStreamIsNotValidJson() throws Exception {
+        final Iterator<ScheduleModel> items = new Iterator<ScheduleModel>() {
+            private int left = 2;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public ScheduleModel next() {
+                if (this.left-- == 0) {
+                    throw new IllegalStateException("cursor failed");
+                }
+                return new ScheduleModel(this.left, 7, "2031-01-01 10:00:00", (byte) 1);
+            }
+        };
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(IllegalStateException.class, () -> this.codec.stream(
+            out,
+            this.controller.ok(null),
+            this.controller.new StreamWrapper(StreamSupport.stream(Spliterators.spliteratorUnknownSize(items, 0), false))
+        ));
+
+        final String body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("{\"code\":200,\"data\":{\"list\":[{"), body);
+        assertThrows(JsonProcessingException.class, () -> new ObjectMapper().readTree(body));
+    }
+}
@@ -0,0 +1,47 @@
+package tv.lid.cinema.api3.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ResponseCompressorTest {
+    // без заголовка или без поддерживаемых кодировок ответ не сжимается
+    @Test
+    public void noSupportedEncoding() {
+        assertNull(ResponseCompressor.negotiate(null));
+        assertNull(ResponseCompressor.negotiate(""));
+        assertNull(ResponseCompressor.negotiate("identity"));
+        assertNull(ResponseCompressor.negotiate("br, identity;q=0.5"));
+    }
+
+    // выбирается кодировка с наибольшим весом, при равных весах -- gzip
+    @Test
+    public void highestWeightWins() {
+        assertEquals("gzip",    ResponseCompressor.negotiate("gzip, deflate"));
+        assertEquals("gzip",    ResponseCompressor.negotiate("deflate, gzip"));
+        assertEquals("gzip",    ResponseCompressor.negotiate("x-gzip"));
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", ResponseCompressor.negotiate(" GZIP ; q=0.2 , Deflate ; q=0.8 "));
+        assertEquals("gzip",    ResponseCompressor.negotiate("deflate;q=0.5, gzip;q=0.5"));
+    }
+
+    // нулевой или некорректный вес запрещает кодировку
+    @Test
+    public void zeroWeightForbids() {
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0, deflate"));
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=abc, deflate;q=0.1"));
+        assertNull(ResponseCompressor.negotiate("gzip;q=0, deflate;q=0"));
+    }
+
+    // кодировки, не названные явно, получают вес "*"
+    @Test
+    public void wildcard() {
+        assertEquals("gzip",    ResponseCompressor.negotiate("*"));
+        assertEquals("gzip",    ResponseCompressor.negotiate("br, *;q=0.1"));
+        assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0, *"));
+        assertEquals("deflate", ResponseCompressor.negotiate("*;q=0.3, gzip;q=0.2"));
+        assertEquals("gzip",    ResponseCompressor.negotiate("gzip;q=0.2, *;q=0"));
+        assertNull(ResponseCompressor.negotiate("*;q=0"));
+    }
+}
@@ -0,0 +1,86 @@
+package tv.lid.cinema.api3.models;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.jooq.impl.DSL.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class CounterRegistryTest {
+    // БД
+    private static H2Fixture db;
+
+    // создание БД
+    @BeforeAll
+    public static void setUp() throws Exception {
+        CounterRegistryTest.db = new H2Fixture("counters");
+    }
+
+    // удаление БД и восстановление состояния моделей
+    @AfterAll
+    public static void tearDown() throws Exception {
+        CounterRegistryTest.db.close();
+    }
+
+    // расхождение счётчика с БД устраняется сверкой, даже если во время её запросов идёт запись
+    @Test
+    public void reconcileAppliesDespiteConcurrentWrites() throws Exception {
+        final int drifted = new MovieModel("Drifted", (short) 90, (short) 2001).save(),
+                  busy    = new MovieModel("Busy",    (short) 90, (short) 2002).save();
+
+        new ScheduleModel(drifted, "2031-01-01 10:00", (byte) 1).save();
+        new ScheduleModel(busy,    "2031-01-01 12:00", (byte) 1).save();
+        CounterRegistry.reconcile();
+        assertEquals(1, CounterRegistry.schedules(drifted));
+
+        // сеансы, созданные в обход модели, счётчиком не учтены
+        final DSLContext plain = CounterRegistryTest.db.dslContext();
+        for (int i = 0; i < 3; ++i) {
+            plain
+                .insertInto(table(name("api3_schedules")), field(name("movie_id")), field(name("date_time")), field(name("auditorium")))
+                .values(drifted, LocalDateTime.of(2031, 1, 2 + i, 10, 0), (byte) 1)
+                .execute();
+        }
+        assertEquals(1, CounterRegistry.schedules(drifted));
+
+        // сразу после запроса количества сеансов создаются фильм и сеанс -- в результат сверки они не попадают
+        final AtomicBoolean armed = new AtomicBoolean(true);
+        CommonModel.initialize(DSL.using(plain.configuration().derive(new DefaultExecuteListenerProvider(
+            new DefaultExecuteListener() {
+                @Override
+                public void executeEnd(final ExecuteContext ctx) {
+                    if (ctx.sql().toLowerCase().contains("group by") && armed.getAndSet(false)) {
+                        try {
+                            new MovieModel("Late", (short) 90, (short) 2003).save();
+                            new ScheduleModel(busy, "2031-02-01 10:00", (byte) 1).save();
+                        } catch (Exception exc) {
+                            throw new IllegalStateException(exc);
+                        }
+                    }
+                }
+            }
+        ))));
+
+        try {
+            CounterRegistry.reconcile();
+        } finally {
+            CommonModel.initialize(plain);
+        }
+        assertFalse(armed.get());
+
+        assertEquals(4, CounterRegistry.schedules(drifted));
+        assertEquals(ScheduleModel.count(busy), CounterRegistry.schedules(busy));
+        assertEquals(MovieModel.count(), CounterRegistry.movies());
+    }
+}
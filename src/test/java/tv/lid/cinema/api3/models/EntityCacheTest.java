@@ -0,0 +1,34 @@
+package tv.lid.cinema.api3.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class EntityCacheTest {
+    // запись, прочитанная до сброса, в кэш не попадает
+    @Test
+    public void stalePutIsDropped() {
+        final EntityCache<MovieModel> cache = new EntityCache<>();
+        cache.resize(10, 0);
+
+        final long generation = cache.generation();
+        cache.invalidate(1);
+        cache.put(1, new MovieModel("Old", (short) 90, (short) 2000), generation);
+
+        assertNull(cache.peek(1));
+    }
+
+    // запись, прочитанная после последнего сброса, кэшируется
+    @Test
+    public void freshPutIsKept() {
+        final EntityCache<MovieModel> cache = new EntityCache<>();
+        cache.resize(10, 0);
+        cache.invalidate(1);
+
+        final MovieModel movie = new MovieModel("New", (short) 90, (short) 2000);
+        cache.put(1, movie, cache.generation());
+
+        assertSame(movie, cache.peek(1));
+    }
+}
@@ -0,0 +1,97 @@
+package tv.lid.cinema.api3.models;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jooq.DSLContext;
+
+import tv.lid.cinema.api3.config.Config;
+import tv.lid.cinema.api3.migrations.MigrationRunner;
+import tv.lid.cinema.api3.storages.DatabaseStorage;
+import tv.lid.cinema.api3.storages.ShardRouter;
+
+// встроенная БД H2 во временных файлах для тестов моделей: основная БД и, при необходимости, шарды;
+// при закрытии БД удаляются, а статическое состояние моделей восстанавливается
+final class H2Fixture implements AutoCloseable {
+    // каталог файлов БД
+    private static final String HOME = "build/tmp/h2-test";
+
+    // префикс имён файлов БД
+    private final String file;
+
+    // основная БД
+    private final DatabaseStorage storage;
+
+    // шарды (null -- не подключены)
+    private ShardRouter shards = null;
+
+    // конструктор: создание основной БД и подключение к ней моделей
+    H2Fixture(final String name) throws Exception {
+        this.file    = name + "-" + System.nanoTime();
+        this.storage = DatabaseStorage.initialize(this.database("main"));
+        this.storage.connect();
+
+        CommonModel.initialize(this.storage.dslContext());
+        new MigrationRunner(this.storage.dslContext()).migrate();
+    }
+
+    // конфигурация БД с заданным именем
+    private Config.Database database(final String name) {
+        return new Config.Database(
+            "h2", "", H2Fixture.HOME, this.file + "-" + name, "localhost", 0, "sa", "sa",
+            null, new Config.H2(Config.H2.MODE_EMBEDDED, null, null, null, null), null
+        );
+    }
+
+    // DSL context основной БД
+    DSLContext dslContext() throws SQLException {
+        return this.storage.dslContext();
+    }
+
+    // подключение моделей к заданному количеству шардов с созданием их таблиц; ранее подключённые
+    // шарды отключаются, но их БД сохраняются, так что шард с тем же номером получает те же данные
+    ShardRouter shards(final int count, final int stride) throws Exception {
+        final List<Config.Shard> nodes = new ArrayList<>();
+        for (int slot = 0; slot < count; ++slot) {
+            nodes.add(new Config.Shard(slot, null, this.database("s" + slot)));
+        }
+
+        if (this.shards != null) {
+            this.shards.disconnect();
+        }
+
+        this.shards = new ShardRouter(new Config.Shards(stride, null, nodes));
+        this.shards.connect(this.storage.dslContext().dialect());
+        for (final ShardRouter.Node node : this.shards.nodes()) {
+            MigrationRunner.shard(node.dslContext(), node.slot, stride).migrate();
+        }
+
+        CommonModel.initializeShards(this.shards);
+        return this.shards;
+    }
+
+    // восстановление статического состояния моделей, отключение от БД и удаление их файлов
+    @Override
+    public void close() throws Exception {
+        CommonModel.initializeShards(null);
+        CommonModel.initialize(null);
+        MovieModel.CACHE.resize(0, 0);
+        ScheduleModel.CACHE.resize(0, 0);
+        VersionRegistry.reset();
+        CounterRegistry.reset();
+
+        if (this.shards != null) {
+            this.shards.disconnect();
+        }
+        this.storage.disconnect();
+
+        final File[] files = new File(H2Fixture.HOME).listFiles((dir, name) -> name.startsWith(this.file));
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
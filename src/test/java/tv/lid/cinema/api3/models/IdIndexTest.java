@@ -0,0 +1,39 @@
+package tv.lid.cinema.api3.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IdIndexTest {
+    // до загрузки индекс ответа не даёт
+    @Test
+    public void unknownBeforeLoad() {
+        final IdIndex index = new IdIndex();
+        index.add(1);
+
+        assertNull(index.contains(1));
+        assertEquals(Boolean.FALSE, index.contains(0));
+    }
+
+    // отсутствие идентификатора не окончательно: запись могла быть создана в обход индекса
+    @Test
+    public void missIsUnknown() throws Exception {
+        final IdIndex index = new IdIndex();
+        index.reload((consumer) -> {
+            consumer.accept(1);
+            consumer.accept(3);
+        });
+
+        assertEquals(Boolean.TRUE, index.contains(3));
+        assertNull(index.contains(2));
+        assertNull(index.contains(100));
+        assertEquals(Boolean.FALSE, index.contains(-1));
+
+        index.add(2);
+        index.remove(3);
+
+        assertEquals(Boolean.TRUE, index.contains(2));
+        assertNull(index.contains(3));
+    }
+}
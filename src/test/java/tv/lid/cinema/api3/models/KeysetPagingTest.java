@@ -0,0 +1,115 @@
+package tv.lid.cinema.api3.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeysetPagingTest {
+    // размер страницы
+    private static final int NUMB = 3;
+
+    // БД
+    private static H2Fixture db;
+
+    // фильм, сеансы которого перебираются
+    private static int movieId;
+
+    // идентификаторы созданных записей
+    private static final List<Integer> movies    = new ArrayList<>(),
+                                       schedules = new ArrayList<>();
+
+    // создание БД с записями, у части которых совпадают ключи сортировки
+    @BeforeAll
+    public static void setUp() throws Exception {
+        KeysetPagingTest.db = new H2Fixture("keyset");
+
+        for (int i = 0; i < 8; ++i) {
+            KeysetPagingTest.movies.add(new MovieModel("Movie " + i, (short) 90, (short) (2000 + i % 3)).save());
+        }
+
+        KeysetPagingTest.movieId = KeysetPagingTest.movies.get(0);
+        for (int i = 0; i < 10; ++i) {
+            KeysetPagingTest.schedules.add(new ScheduleModel(
+                KeysetPagingTest.movieId, "2031-01-0" + (1 + i % 4) + " 10:00", (byte) 1
+            ).save());
+        }
+    }
+
+    // удаление БД и восстановление состояния моделей
+    @AfterAll
+    public static void tearDown() throws Exception {
+        KeysetPagingTest.db.close();
+    }
+
+    // постраничный перебор фильмов выдаёт каждую запись ровно один раз в порядке убывания (года, идентификатора)
+    @Test
+    public void moviesArePagedWithoutGapsOrDuplicates() throws Exception {
+        final List<MovieModel> seen = new ArrayList<>();
+
+        PageCursor after = null;
+        List<MovieModel> page;
+        do {
+            page = MovieModel.seek(after, KeysetPagingTest.NUMB);
+            assertTrue(page.size() <= KeysetPagingTest.NUMB);
+            seen.addAll(page);
+
+            // курсор проходит через клиента в закодированном виде
+            if (!page.isEmpty()) {
+                after = PageCursor.decode(page.get(page.size() - 1).cursor().encode());
+            }
+        } while (page.size() == KeysetPagingTest.NUMB);
+
+        assertEquals(KeysetPagingTest.movies.size(), seen.size());
+        assertEquals(KeysetPagingTest.movies.size(), seen.stream().mapToInt((movie) -> movie.id).distinct().count());
+        for (int i = 1; i < seen.size(); ++i) {
+            final MovieModel prev = seen.get(i - 1), next = seen.get(i);
+            assertTrue(prev.year > next.year || prev.year == next.year && prev.id > next.id);
+        }
+    }
+
+    // постраничный перебор сеансов фильма выдаёт каждый сеанс ровно один раз в порядке убывания (времени, идентификатора)
+    @Test
+    public void schedulesArePagedWithoutGapsOrDuplicates() throws Exception {
+        final List<ScheduleModel> seen = new ArrayList<>();
+
+        PageCursor after = null;
+        List<ScheduleModel> page;
+        do {
+            page = ScheduleModel.seek(KeysetPagingTest.movieId, after, KeysetPagingTest.NUMB);
+            assertTrue(page.size() <= KeysetPagingTest.NUMB);
+            seen.addAll(page);
+
+            if (!page.isEmpty()) {
+                after = PageCursor.decode(page.get(page.size() - 1).cursor().encode());
+            }
+        } while (page.size() == KeysetPagingTest.NUMB);
+
+        assertEquals(KeysetPagingTest.schedules.size(), seen.size());
+        assertEquals(KeysetPagingTest.schedules.size(), seen.stream().mapToInt((schedule) -> schedule.id).distinct().count());
+        for (int i = 1; i < seen.size(); ++i) {
+            final ScheduleModel prev = seen.get(i - 1), next = seen.get(i);
+            final int order = prev.dateAndTime.compareTo(next.dateAndTime);
+            assertTrue(order > 0 || order == 0 && prev.id > next.id);
+        }
+    }
+
+    // курсор с подменённым ключом отвергается до обращения к БД
+    @Test
+    public void tamperedKeyIsRejected() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ScheduleModel.seek(KeysetPagingTest.movieId, new PageCursor("2031-01-01'; --", 1), KeysetPagingTest.NUMB)
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> MovieModel.seek(new PageCursor("20x0", 1), KeysetPagingTest.NUMB)
+        );
+    }
+}
@@ -0,0 +1,43 @@
+package tv.lid.cinema.api3.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PageCursorTest {
+    // закодированный курсор раскодируется в исходные ключ и идентификатор
+    @Test
+    public void roundTrip() {
+        final PageCursor cursor = PageCursor.decode(new PageCursor("2031-01-01 10:00", 42).encode());
+
+        assertEquals("2031-01-01 10:00", cursor.key);
+        assertEquals(42, cursor.id);
+    }
+
+    // разделитель внутри ключа не мешает раскодированию
+    @Test
+    public void separatorInKey() {
+        final PageCursor cursor = PageCursor.decode(new PageCursor("a|b", 7).encode());
+
+        assertEquals("a|b", cursor.key);
+        assertEquals(7, cursor.id);
+    }
+
+    // испорченный курсор отвергается
+    @Test
+    public void tamperedTokenIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(PageCursorTest.token("2000")));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(PageCursorTest.token("2000|x")));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(PageCursorTest.token("2000|")));
+    }
+
+    // кодирование произвольной строки так же, как это делает курсор
+    private static String token(final String str) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(str.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,94 @@
+package tv.lid.cinema.api3.models;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jooq.Query;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.jooq.impl.DSL.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ScheduleBatchTest {
+    // БД
+    private static H2Fixture db;
+
+    // создание БД
+    @BeforeAll
+    public static void setUp() throws Exception {
+        ScheduleBatchTest.db = new H2Fixture("batch");
+    }
+
+    // удаление БД и восстановление состояния моделей
+    @AfterAll
+    public static void tearDown() throws Exception {
+        ScheduleBatchTest.db.close();
+    }
+
+    // параметры запроса передаются драйверу в типе столбца БД, а не в типе модели
+    @Test
+    public void bindConvertsToColumnType() throws Exception {
+        final Query query = DSL.using(SQLDialect.POSTGRES)
+            .insertInto(
+                table(name("api3_schedules")),
+                field(name("movie_id"),   int.class),
+                field(name("date_time"),  ScheduleModel.DATE_TIME),
+                field(name("auditorium"), byte.class)
+            )
+            .values(val(7), val("2031-01-01 10:00", ScheduleModel.DATE_TIME), inline((byte) 3));
+
+        final List<Object> bound = new ArrayList<>();
+        final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("setObject")) {
+                    assertEquals(bound.size() + 1, args[0]);
+                    bound.add(args[1]);
+                }
+                return null;
+            }
+        );
+
+        CommonModel.bind(stmt, query);
+
+        assertEquals(Arrays.asList(7, LocalDateTime.of(2031, 1, 1, 10, 0)), bound);
+    }
+
+    // пакетно созданные сеансы хранятся в столбце типа TIMESTAMP и читаются в формате модели
+    @Test
+    public void batchStoresTimestamps() throws Exception {
+        final int movieId = new MovieModel("Batch", (short) 90, (short) 2005).save();
+
+        final int[] ids = ScheduleModel.saveAll(Arrays.asList(
+            new ScheduleModel(movieId, "2031-06-01 10:00",    (byte) 1),
+            new ScheduleModel(movieId, "2031-06-01T12:30:15", (byte) 2)
+        ));
+
+        assertEquals(2, ids.length);
+        assertEquals("2031-06-01 10:00:00", ScheduleModel.find(ids[0]).dateAndTime);
+        assertEquals("2031-06-01 12:30:15", ScheduleModel.find(ids[1]).dateAndTime);
+
+        ScheduleBatchTest.db.dslContext().connection((conn) -> {
+            try (
+                Statement stmt = conn.createStatement();
+                ResultSet rs   = stmt.executeQuery("select \"date_time\" from \"api3_schedules\" where \"id\" = " + ids[1])
+            ) {
+                assertEquals(Types.TIMESTAMP, rs.getMetaData().getColumnType(1));
+                rs.next();
+                assertEquals(LocalDateTime.of(2031, 6, 1, 12, 30, 15), rs.getObject(1, LocalDateTime.class));
+            }
+        });
+    }
+}
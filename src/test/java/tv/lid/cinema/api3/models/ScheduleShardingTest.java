@@ -0,0 +1,121 @@
+package tv.lid.cinema.api3.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import tv.lid.cinema.api3.storages.ShardRouter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScheduleShardingTest {
+    // шаг идентификаторов сеансов
+    private static final int STRIDE = 8;
+
+    // БД
+    private static H2Fixture db;
+
+    // текущий маршрутизатор по шардам
+    private static ShardRouter router;
+
+    // идентификаторы сеансов, хранящихся на шарде
+    private static List<Integer> ids(final ShardRouter.Node node) {
+        return node.dslContext().fetch("select \"id\" from \"api3_schedules\" order by 1").getValues(0, Integer.class);
+    }
+
+    // создание основной БД и двух шардов
+    @BeforeAll
+    public static void setUp() throws Exception {
+        ScheduleShardingTest.db     = new H2Fixture("shards");
+        ScheduleShardingTest.router = ScheduleShardingTest.db.shards(2, ScheduleShardingTest.STRIDE);
+    }
+
+    // удаление БД и восстановление состояния моделей
+    @AfterAll
+    public static void tearDown() throws Exception {
+        ScheduleShardingTest.db.close();
+    }
+
+    // сеанс, перенесённый к фильму на другом шарде, сохраняет идентификатор, а следующие сеансы
+    // целевого шарда получают идентификаторы с его остатком, не пересекающиеся с перенесённым
+    @Test
+    public void crossShardMoveKeepsId() throws Exception {
+        final ShardRouter router = ScheduleShardingTest.router;
+
+        // фильмы, сеансы которых хранятся на разных шардах
+        final int source = new MovieModel("Source", (short) 90, (short) 2001).save();
+        int target;
+        do {
+            target = new MovieModel("Target", (short) 90, (short) 2002).save();
+        } while (router.node(target) == router.node(source));
+
+        final ShardRouter.Node from = router.node(source), to = router.node(target);
+
+        // идентификатор переносимого сеанса больше следующего идентификатора целевого шарда
+        int id = 0;
+        for (int i = 0; i < 5; ++i) {
+            id = new ScheduleModel(source, "2031-01-01 1" + i + ":00", (byte) 1).save();
+        }
+        assertEquals(from.slot, Math.floorMod(id - 1, ScheduleShardingTest.STRIDE));
+
+        assertEquals(id, new ScheduleModel(id, target, "2031-02-01 10:00", (byte) 2).save());
+
+        final ScheduleModel moved = ScheduleModel.find(id);
+        assertNotNull(moved);
+        assertEquals(target, moved.movieId);
+        assertEquals(2, moved.auditorium);
+        assertTrue(ScheduleShardingTest.ids(to).contains(id));
+        assertFalse(ScheduleShardingTest.ids(from).contains(id));
+        assertEquals(4, ScheduleModel.count(source));
+        assertEquals(1, ScheduleModel.count(target));
+
+        // новый сеанс целевого шарда -- с его остатком и больше перенесённого
+        final int fresh = new ScheduleModel(target, "2031-02-02 10:00", (byte) 3).save();
+        assertEquals(to.slot, Math.floorMod(fresh - 1, ScheduleShardingTest.STRIDE));
+        assertTrue(fresh > id);
+
+        // перенос несуществующего сеанса ничего не создаёт
+        assertEquals(0, new ScheduleModel(99999, source, "2031-03-01 10:00", (byte) 1).save());
+        assertNull(ScheduleModel.find(99999));
+    }
+
+    // после добавления шарда перераспределение переносит сеансы на шард их фильма, а новые
+    // сеансы каждого шарда получают идентификаторы с его остатком, большие перенесённых
+    @Test
+    public void rebalanceRestartsIdentity() throws Exception {
+        final List<Integer> movies = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+            final int movieId = new MovieModel("Movie " + i, (short) 90, (short) 2003).save();
+            movies.add(movieId);
+            new ScheduleModel(movieId, "2031-04-01 10:00", (byte) 1).save();
+            new ScheduleModel(movieId, "2031-04-02 10:00", (byte) 1).save();
+        }
+
+        ScheduleShardingTest.router = ScheduleShardingTest.db.shards(3, ScheduleShardingTest.STRIDE);
+        final ShardRouter after = ScheduleShardingTest.router;
+
+        assertTrue(ScheduleModel.rebalance() > 0);
+
+        int max = 0;
+        for (final ShardRouter.Node node : after.nodes()) {
+            for (final int id : ScheduleShardingTest.ids(node)) {
+                max = Math.max(max, id);
+            }
+        }
+
+        for (final int movieId : movies) {
+            assertEquals(2, ScheduleModel.count(movieId));
+
+            final int fresh = new ScheduleModel(movieId, "2031-05-01 10:00", (byte) 1).save();
+            assertEquals(after.node(movieId).slot, Math.floorMod(fresh - 1, ScheduleShardingTest.STRIDE));
+            assertTrue(fresh > max);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package tv.lid.cinema.api3.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VersionRegistryTest {
+    // хранится не больше заданного количества версий, а версия вытесненной записи не становится старее
+    @Test
+    public void evictedVersionIsNeverOlder() throws Exception {
+        final VersionRegistry.Versions versions = new VersionRegistry.Versions(10);
+        final VersionRegistry.Version  initial  = versions.get(1);
+
+        final VersionRegistry.Version[] put = new VersionRegistry.Version[1000];
+        for (int id = 0; id < put.length; ++id) {
+            put[id] = VersionRegistry.next();
+            versions.put(id, put[id]);
+        }
+
+        int kept = 0;
+        for (int id = 0; id < put.length; ++id) {
+            final VersionRegistry.Version ver = versions.get(id);
+
+            assertTrue(ver.tag >= put[id].tag);
+            kept += ver == put[id] ? 1 : 0;
+        }
+        assertTrue(kept <= 10, "kept " + kept);
+
+        // запись без сохранённой версии получает нижнюю границу, а не начальную версию
+        assertTrue(versions.get(-1).tag > initial.tag);
+
+        versions.clear();
+        assertSame(initial, versions.get(1));
+    }
+
+    // версия, обновлённая после вытеснения, возвращается как есть
+    @Test
+    public void freshVersionWins() {
+        final VersionRegistry.Versions versions = new VersionRegistry.Versions(1);
+
+        for (int id = 0; id < 100; ++id) {
+            versions.put(id, VersionRegistry.next());
+        }
+
+        final VersionRegistry.Version ver = VersionRegistry.next();
+        versions.put(5, ver);
+        assertEquals(ver.tag, versions.get(5).tag);
+    }
+}
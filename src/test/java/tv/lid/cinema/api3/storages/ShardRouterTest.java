@@ -0,0 +1,158 @@
+package tv.lid.cinema.api3.storages;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jooq.SQLDialect;
+import org.junit.jupiter.api.Test;
+
+import tv.lid.cinema.api3.config.Config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardRouterTest {
+    // шаг идентификаторов сеансов
+    private static final int STRIDE = 8;
+
+    // количество фильмов, распределяемых по кольцу
+    private static final int MOVIES = 100000;
+
+    // маршрутизатор по шардам с заданными весами (без подключения к БД)
+    private static ShardRouter router(final int... weights) throws Exception {
+        final List<Config.Shard> nodes = new ArrayList<>();
+        for (int slot = 0; slot < weights.length; ++slot) {
+            nodes.add(new Config.Shard(slot, weights[slot], new Config.Database(
+                "h2", "", "data", "shard" + slot, "localhost", 0, "sa", "sa",
+                null, new Config.H2(Config.H2.MODE_EMBEDDED, null, null, null, null), null
+            )));
+        }
+        return new ShardRouter(new Config.Shards(ShardRouterTest.STRIDE, 128, nodes));
+    }
+
+    // количество фильмов на каждом шарде
+    private static int[] spread(final ShardRouter router) {
+        final int[] result = new int[ShardRouterTest.STRIDE];
+        for (int movieId = 1; movieId <= ShardRouterTest.MOVIES; ++movieId) {
+            ++result[router.node(movieId).slot];
+        }
+        return result;
+    }
+
+    // некорректная карта шардов отвергается
+    @Test
+    public void invalidMapIsRejected() {
+        assertThrows(SQLException.class, () -> ShardRouterTest.router());
+        assertThrows(SQLException.class, () -> ShardRouterTest.router(1, 1, 1, 1, 1, 1, 1, 1, 1));
+    }
+
+    // шард с типом БД, отличным от основной, отвергается при подключении
+    @Test
+    public void dialectMismatchIsRejected() throws Exception {
+        final String file = "dialect-" + System.nanoTime();
+
+        final ShardRouter router = new ShardRouter(new Config.Shards(ShardRouterTest.STRIDE, 128, Collections.singletonList(
+            new Config.Shard(0, null, new Config.Database(
+                "h2", "", "build/tmp/h2-test", file, "localhost", 0, "sa", "sa",
+                null, new Config.H2(Config.H2.MODE_EMBEDDED, null, null, null, null), null
+            ))
+        )));
+
+        try {
+            assertThrows(SQLException.class, () -> router.connect(SQLDialect.POSTGRES));
+        } finally {
+            router.disconnect();
+
+            final File[] files = new File("build/tmp/h2-test").listFiles((dir, name) -> name.startsWith(file));
+            if (files != null) {
+                for (final File f : files) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    // фильмы распределяются по шардам пропорционально весам и одинаково при каждом запуске
+    @Test
+    public void ringIsDeterministicAndBalanced() throws Exception {
+        final ShardRouter router = ShardRouterTest.router(1, 1, 2);
+        final int[]       spread = ShardRouterTest.spread(router);
+
+        final ShardRouter other = ShardRouterTest.router(1, 1, 2);
+        for (int movieId = 1; movieId <= 1000; ++movieId) {
+            assertEquals(router.node(movieId).slot, other.node(movieId).slot);
+        }
+
+        final double quarter = ShardRouterTest.MOVIES / 4.0;
+        assertEquals(quarter,     spread[0], quarter * 0.25);
+        assertEquals(quarter,     spread[1], quarter * 0.25);
+        assertEquals(quarter * 2, spread[2], quarter * 0.25);
+
+        double share = 0;
+        for (final ShardRouter.NodeSnapshot node : router.stats().nodes) {
+            share += node.share;
+        }
+        assertEquals(1.0, share, 0.001);
+    }
+
+    // при добавлении шарда на него переносятся фильмы только с других шардов, примерно 1/N всех
+    @Test
+    public void addingShardMovesOnlyItsShare() throws Exception {
+        final ShardRouter before = ShardRouterTest.router(1, 1, 1, 1),
+                          after  = ShardRouterTest.router(1, 1, 1, 1, 1);
+
+        int moved = 0;
+        for (int movieId = 1; movieId <= ShardRouterTest.MOVIES; ++movieId) {
+            final int from = before.node(movieId).slot, to = after.node(movieId).slot;
+            if (from != to) {
+                assertEquals(4, to);
+                ++moved;
+            }
+        }
+
+        assertEquals(ShardRouterTest.MOVIES / 5.0, moved, ShardRouterTest.MOVIES / 5.0 * 0.25);
+    }
+
+    // первым кандидатом сеанса идёт шард, где он создан: остаток (id - 1) от деления на шаг
+    @Test
+    public void candidatesStartAtHomeSlot() throws Exception {
+        final ShardRouter router = ShardRouterTest.router(1, 1, 1);
+
+        assertEquals(0, router.candidates(1).get(0).slot);
+        assertEquals(2, router.candidates(3).get(0).slot);
+        assertEquals(1, router.candidates(ShardRouterTest.STRIDE * 5 + 2).get(0).slot);
+
+        // шард, на котором создан сеанс, удалён из карты -- искать на всех
+        assertSame(router.nodes(), router.candidates(ShardRouterTest.STRIDE));
+
+        for (int id = 1; id <= ShardRouterTest.STRIDE * 2; ++id) {
+            assertEquals(3, router.candidates(id).size());
+        }
+    }
+
+    // следующий идентификатор шарда -- наименьший больший заданного с остатком номер + 1
+    @Test
+    public void nextIdKeepsResidue() throws Exception {
+        final ShardRouter router = ShardRouterTest.router(1, 1, 1);
+
+        assertEquals(1,  router.nextId(0, 0));
+        assertEquals(9,  router.nextId(0, 1));
+        assertEquals(3,  router.nextId(2, 0));
+        assertEquals(11, router.nextId(2, 3));
+        assertEquals(8,  router.nextId(7, 7));
+        assertEquals(16, router.nextId(7, 8));
+
+        for (int slot = 0; slot < ShardRouterTest.STRIDE; ++slot) {
+            for (long after = 0; after < 100; ++after) {
+                final long next = router.nextId(slot, after);
+                assertEquals(slot, Math.floorMod(next - 1, ShardRouterTest.STRIDE));
+                assertTrue(next > after && next - after <= ShardRouterTest.STRIDE);
+            }
+        }
+    }
+}
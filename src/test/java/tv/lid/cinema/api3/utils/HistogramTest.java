@@ -0,0 +1,85 @@
+package tv.lid.cinema.api3.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+    // интервал с номером i содержит значения с i значащими битами: [2^(i-1), 2^i - 1]
+    @Test
+    public void bucketBounds() {
+        assertEquals(0,              Histogram.upperBound(0));
+        assertEquals(1,              Histogram.upperBound(1));
+        assertEquals(1023,           Histogram.upperBound(10));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(63));
+
+        final Histogram hist = new Histogram();
+        for (final long value : new long[] {-5, 0, 1, 2, 3, 1023, 1024, Long.MAX_VALUE}) {
+            hist.record(value);
+        }
+
+        assertEquals(2, hist.bucket(0));  // -5 (учитывается как 0) и 0
+        assertEquals(1, hist.bucket(1));  // 1
+        assertEquals(2, hist.bucket(2));  // 2 и 3
+        assertEquals(1, hist.bucket(10)); // 1023
+        assertEquals(1, hist.bucket(11)); // 1024
+        assertEquals(1, hist.bucket(63)); // Long.MAX_VALUE
+        assertEquals(8, hist.count());
+    }
+
+    // перцентили оцениваются верхней границей интервала
+    @Test
+    public void snapshotPercentiles() {
+        final Histogram hist = new Histogram();
+        for (int i = 0; i < 90; ++i) {
+            hist.record(100);
+        }
+        for (int i = 0; i < 10; ++i) {
+            hist.record(5000);
+        }
+
+        final Histogram.Snapshot snapshot = hist.snapshot();
+        assertEquals(100,  snapshot.count);
+        assertEquals(590,  snapshot.mean);
+        assertEquals(5000, snapshot.max);
+        assertEquals(127,  snapshot.p50);
+        assertEquals(127,  snapshot.p90);
+        assertEquals(8191, snapshot.p99);
+        assertEquals(2,    snapshot.buckets.size());
+        assertEquals(90L,  snapshot.buckets.get(127L).longValue());
+    }
+
+    // интервалы выводятся накопительно с границами в секундах, значения сверх 2^26 мкс -- только в +Inf
+    @Test
+    public void prometheusBuckets() {
+        final Histogram hist = Metrics.route("GET", "/histogram-test");
+        hist.record(0);
+        hist.record(1000);
+        hist.record(1000000);
+        hist.record(100000000);
+
+        final List<String> lines = new ArrayList<>();
+        for (final String line : Metrics.prometheus().split("\n")) {
+            if (line.contains("route=\"/histogram-test\"")) {
+                lines.add(line);
+            }
+        }
+
+        final String prefix = "api3_http_request_duration_seconds_bucket{method=\"GET\",route=\"/histogram-test\",le=";
+        assertTrue(lines.contains(prefix + "\"0\"} 1"));
+        assertTrue(lines.contains(prefix + "\"0.000001\"} 1"));
+        assertTrue(lines.contains(prefix + "\"0.001023\"} 2"));
+        assertTrue(lines.contains(prefix + "\"1.048575\"} 3"));
+        assertTrue(lines.contains(prefix + "\"67.108863\"} 3"));
+        assertTrue(lines.contains(prefix + "\"+Inf\"} 4"));
+        assertTrue(lines.contains("api3_http_request_duration_seconds_count{method=\"GET\",route=\"/histogram-test\"} 4"));
+        assertTrue(lines.contains("api3_http_request_duration_seconds_sum{method=\"GET\",route=\"/histogram-test\"} 101.001"));
+
+        // 27 интервалов, +Inf, сумма и количество
+        assertEquals(30, lines.size());
+    }
+}
@@ -0,0 +1,79 @@
+package tv.lid.cinema.api3.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class IntIntMapTest {
+    // при росте таблицы ни один элемент не теряется
+    @Test
+    public void keepsEntriesOnResize() {
+        final IntIntMap map = new IntIntMap(2);
+
+        for (int key = -500; key < 500; ++key) {
+            map.put(key, key * 3);
+        }
+
+        assertEquals(1000, map.size());
+        for (int key = -500; key < 500; ++key) {
+            assertEquals(key * 3, map.get(key, Integer.MIN_VALUE));
+        }
+        assertFalse(map.containsKey(500));
+    }
+
+    // после удаления остальные ключи цепочки пробирования остаются доступными
+    @Test
+    public void removeKeepsProbeChains() {
+        final IntIntMap map = new IntIntMap();
+
+        for (int key = 1; key <= 7; ++key) {
+            map.put(key, key);
+        }
+        for (int key = 1; key <= 7; key += 2) {
+            map.remove(key);
+        }
+        map.remove(100);
+
+        assertEquals(3, map.size());
+        for (int key = 1; key <= 7; ++key) {
+            assertEquals(key % 2 == 0, map.containsKey(key));
+        }
+        assertEquals(6, map.get(6, 0));
+        assertEquals(5, map.add(6, -1));
+        assertEquals(2, map.add(9, 2));
+    }
+
+    // случайная последовательность операций даёт тот же результат, что и HashMap
+    @Test
+    public void matchesHashMap() {
+        final Random                random = new Random(42);
+        final IntIntMap             map    = new IntIntMap();
+        final Map<Integer, Integer> ref    = new HashMap<>();
+
+        for (int i = 0; i < 100000; ++i) {
+            final int key = random.nextInt(2000) - 1000;
+
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                ref.remove(key);
+            } else {
+                map.put(key, i);
+                ref.put(key, i);
+            }
+        }
+
+        assertEquals(ref.size(), map.size());
+        for (int key = -1000; key < 1000; ++key) {
+            assertEquals(ref.getOrDefault(key, -1).intValue(), map.get(key, -1));
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0));
+    }
+}